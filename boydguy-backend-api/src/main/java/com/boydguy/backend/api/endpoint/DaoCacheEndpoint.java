@@ -0,0 +1,64 @@
+package com.boydguy.backend.api.endpoint;
+
+import com.boydguy.backend.dao.aspect.CacheExpiryEventQueue;
+import com.boydguy.backend.dao.aspect.CacheKeyRegistry;
+import com.boydguy.backend.dao.aspect.CacheLoadCoalescer;
+import com.boydguy.backend.dao.aspect.DaoCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator端点/actuator/daocache：按方法查看缓存的命中情况、查询数据库与端到端的耗时、缓存数据的大小，
+ * 以及登记表、请求合并与过期事件队列的状态，用于调整缓存的过期时间与容量
+ */
+@Component
+@Endpoint(id = "daocache")
+public class DaoCacheEndpoint {
+
+    private DaoCacheMetrics metrics;
+    private CacheKeyRegistry registry;
+    private CacheLoadCoalescer loadCoalescer;
+    private CacheExpiryEventQueue expiryEventQueue;
+
+    @Autowired
+    public DaoCacheEndpoint(DaoCacheMetrics metrics,
+                            CacheKeyRegistry registry,
+                            CacheLoadCoalescer loadCoalescer,
+                            CacheExpiryEventQueue expiryEventQueue) {
+        this.metrics = metrics;
+        this.registry = registry;
+        this.loadCoalescer = loadCoalescer;
+        this.expiryEventQueue = expiryEventQueue;
+    }
+
+    @ReadOperation
+    public Map<String, Object> daoCache() {
+        Map<String, Object> registryInfo = new LinkedHashMap<>();
+        registryInfo.put("entries", registry.size());
+        registryInfo.put("estimatedBytes", registry.getEstimatedBytes());
+        registryInfo.put("evictions", registry.getEvictions());
+
+        Map<String, Object> coalesceInfo = new LinkedHashMap<>();
+        coalesceInfo.put("leaderLoads", loadCoalescer.getLeaderLoads());
+        coalesceInfo.put("coalescedHits", loadCoalescer.getCoalescedHits());
+        coalesceInfo.put("waitTimeouts", loadCoalescer.getWaitTimeouts());
+        coalesceInfo.put("inFlight", loadCoalescer.getInFlight());
+
+        Map<String, Object> expiryInfo = new LinkedHashMap<>();
+        expiryInfo.put("dropped", expiryEventQueue.getDropped());
+        expiryInfo.put("lagMillis", expiryEventQueue.getLagMillis());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("methods", metrics.snapshot());
+        result.put("registry", registryInfo);
+        result.put("coalesce", coalesceInfo);
+        result.put("expiry", expiryInfo);
+        return result;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.boydguy.backend.api.endpoint;
+
+import com.boydguy.backend.dao.aspect.L1Warmup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * 一级缓存预热的健康检查/actuator/health(daoCacheWarmup)：预热完成前报告OUT_OF_SERVICE(HTTP 503)，
+ * 负载均衡器的就绪检查在预热完成后才把流量转发到新节点；存活检查不要使用该端点
+ */
+@Component
+public class DaoCacheWarmupHealthIndicator extends AbstractHealthIndicator {
+
+    private L1Warmup warmup;
+
+    @Autowired
+    public DaoCacheWarmupHealthIndicator(L1Warmup warmup) {
+        super("一级缓存预热状态检查失败");
+        this.warmup = warmup;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        builder.status(warmup.isReady() ? Status.UP : Status.OUT_OF_SERVICE)
+                .withDetail("enabled", warmup.isEnabled())
+                .withDetail("target", warmup.getTarget())
+                .withDetail("warmed", warmup.getWarmed())
+                .withDetail("staged", warmup.getStaged())
+                .withDetail("stagedBytes", warmup.getStagedBytes())
+                .withDetail("hits", warmup.getHits());
+    }
+
+}
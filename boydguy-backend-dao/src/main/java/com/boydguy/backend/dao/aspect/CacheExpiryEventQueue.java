@@ -0,0 +1,143 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.ComUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Redis key过期事件的有界缓冲：监听线程只负责入队，专用线程按evictBatchSize批量处理
+ * 队列已满时丢弃事件：一级缓存的过期时间不超过二级缓存的剩余时间，丢弃事件不会读到过期数据
+ */
+@Slf4j
+@Component
+public class CacheExpiryEventQueue implements MeterBinder, DisposableBean {
+
+    private final BlockingQueue<ExpiredKey> queue;
+    private final ExecutorService worker;
+    private final int batchSize;
+    private volatile Consumer<List<String>> batchConsumer = keys -> {
+    };
+    /**
+     * 收到的过期事件数量
+     */
+    private final AtomicLong received = new AtomicLong();
+    /**
+     * 队列已满被丢弃的过期事件数量
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * 已处理的过期事件数量
+     */
+    private final AtomicLong processed = new AtomicLong();
+
+    @Autowired
+    public CacheExpiryEventQueue(DaoCacheProperties properties) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(properties.getExpiryQueueCapacity(), 1));
+        this.batchSize = Math.max(properties.getEvictBatchSize(), 1);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dao-cache-expiry-");
+        threadFactory.setDaemon(true);
+        this.worker = Executors.newSingleThreadExecutor(threadFactory);
+        this.worker.execute(this::drainLoop);
+    }
+
+    /**
+     * 注册批量处理过期cache key的方法
+     */
+    public void onBatch(Consumer<List<String>> batchConsumer) {
+        this.batchConsumer = batchConsumer;
+    }
+
+    /**
+     * 过期的cache key入队，不阻塞监听线程
+     */
+    public void offer(String cacheKey) {
+        received.incrementAndGet();
+        if (!queue.offer(new ExpiredKey(cacheKey, System.nanoTime()))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void drainLoop() {
+        List<ExpiredKey> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                List<String> cacheKeys = new ArrayList<>(batch.size());
+                for (ExpiredKey item : batch) {
+                    cacheKeys.add(item.cacheKey);
+                }
+                batchConsumer.accept(cacheKeys);
+                processed.addAndGet(batch.size());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (Exception ex) {
+                log.error("处理过期的cache key时发生异常：{}", ComUtils.printException(ex));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 队列中最早的事件已等待的时间，单位：毫秒
+     */
+    public double getLagMillis() {
+        ExpiredKey head = queue.peek();
+        return head == null ? 0 : (System.nanoTime() - head.enqueuedAt) / 1e6;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("dao.cache.expiry.received", received, AtomicLong::get)
+                .description("收到的过期事件数量")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.expiry.dropped", dropped, AtomicLong::get)
+                .description("队列已满被丢弃的过期事件数量")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.expiry.processed", processed, AtomicLong::get)
+                .description("已处理的过期事件数量")
+                .register(registry);
+        Gauge.builder("dao.cache.expiry.queued", queue, BlockingQueue::size)
+                .description("等待处理的过期事件数量")
+                .register(registry);
+        Gauge.builder("dao.cache.expiry.lag", this, CacheExpiryEventQueue::getLagMillis)
+                .description("队列中最早的过期事件已等待的时间")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        worker.shutdownNow();
+    }
+
+    private static class ExpiredKey {
+        private final String cacheKey;
+        private final long enqueuedAt;
+
+        private ExpiredKey(String cacheKey, long enqueuedAt) {
+            this.cacheKey = cacheKey;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+}
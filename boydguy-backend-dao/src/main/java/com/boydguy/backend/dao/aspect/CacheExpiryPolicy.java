@@ -0,0 +1,94 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.cache.L1CacheEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓存过期时间的计算：
+ * 1、随机抖动：同一个cache key在所有应用节点上抖动相同，不同的cache key抖动不同，过期时间被均摊开
+ * 2、分层错开：一级缓存总是比二级缓存提前过期，避免一级缓存中保留二级缓存已过期的数据
+ * 3、滑动过期：命中率高的数据在过期前延长过期时间，最长不超过二级缓存过期时间的slidingMaxLifetimeFactor倍
+ */
+@Component
+public class CacheExpiryPolicy {
+
+    private DaoCacheProperties properties;
+
+    @Autowired
+    public CacheExpiryPolicy(DaoCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 二级缓存Redis的过期时间，单位：秒
+     */
+    public int redisTimeout(MethodCacheDescriptor descriptor, String cacheKey) {
+        return jitter(descriptor.getRedisHardTimeout(), jitterRatio(descriptor), cacheKey);
+    }
+
+    /**
+     * 一级缓存Ehcache的过期时间，单位：秒
+     *
+     * @param redisExpireMillis 二级缓存剩余的过期时间，单位：毫秒；小于0表示未知
+     */
+    public int ehcacheTimeout(MethodCacheDescriptor descriptor, String cacheKey, long redisExpireMillis) {
+        int timeout = jitter(descriptor.getEhcacheHardTimeout(), jitterRatio(descriptor), cacheKey);
+        if (redisExpireMillis >= 0) {
+            timeout = (int) Math.min(timeout, redisExpireMillis / 1000 - properties.getTierStaggerSeconds());
+        }
+        return Math.max(timeout, 1);
+    }
+
+    /**
+     * 防止Redis穿透的${null}数据的过期时间，单位：秒
+     */
+    public int nullTimeout(String cacheKey) {
+        return jitter(60, properties.getJitterRatio(), cacheKey);
+    }
+
+    /**
+     * 滑动过期：数据进入后半段生命周期且命中率达到阈值时，延长一级缓存的过期时间
+     * 启用异步刷新的方法按软过期时间刷新，不参与滑动过期
+     *
+     * @return 需要延长的二级缓存过期时间，单位：秒；不需要延长时返回0
+     */
+    public int slide(L1CacheEntry l1Entry, MethodCacheDescriptor descriptor, String cacheKey) {
+        if (descriptor.getSlidingHitsPerMinute() <= 0 || descriptor.isRefreshAhead()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long age = now - l1Entry.getCreationTime();
+        long remaining = l1Entry.getExpirationTime() - now;
+        if (remaining > l1Entry.getTimeToLive() * 500L) {
+            return 0;
+        }
+        if (age >= descriptor.getRedisTimeout() * 1000L * properties.getSlidingMaxLifetimeFactor()) {
+            return 0;
+        }
+        double hitsPerMinute = l1Entry.getHitCount() * 60000.0 / Math.max(age, 1);
+        if (hitsPerMinute < descriptor.getSlidingHitsPerMinute()) {
+            return 0;
+        }
+        int redisTimeout = redisTimeout(descriptor, cacheKey);
+        int ehcacheTimeout = ehcacheTimeout(descriptor, cacheKey, redisTimeout * 1000L);
+        l1Entry.setTimeToLive((int) (age / 1000) + ehcacheTimeout);
+        return redisTimeout;
+    }
+
+    private double jitterRatio(MethodCacheDescriptor descriptor) {
+        return descriptor.getJitterRatio() >= 0 ? descriptor.getJitterRatio() : properties.getJitterRatio();
+    }
+
+    /**
+     * 按cache key的哈希值在[timeout, timeout * (1 + ratio)]之间取值
+     */
+    private int jitter(int timeout, double ratio, String cacheKey) {
+        if (ratio <= 0 || timeout <= 0) {
+            return timeout;
+        }
+        double fraction = (cacheKey.hashCode() & 0x7fffffff) / (double) Integer.MAX_VALUE;
+        return timeout + (int) (timeout * ratio * fraction);
+    }
+
+}
@@ -0,0 +1,182 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.ComUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 一级缓存的跨节点同步：当前节点清除的cache key与更新的数据版本号先在本地去重，
+ * 每invalidationFlushMillis毫秒合并为一条消息广播到其它节点，其它节点清除本地的一级缓存
+ * 消息格式：第一行为节点ID，其余每行为 k:cache key、g:数据版本号名称 或 i:新增的实体主键；节点忽略自己发出的消息
+ */
+@Slf4j
+@Component
+public class CacheInvalidationBus implements SmartInitializingSingleton, DisposableBean {
+
+    private static final String KEY_PREFIX = "k:";
+    private static final String GENERATION_PREFIX = "g:";
+    private static final String INSERTED_PREFIX = "i:";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Object lock = new Object();
+    private Set<String> pendingLines = new LinkedHashSet<>();
+    private DaoCacheProperties properties;
+    private EntityGenerations generations;
+    private CacheInvalidationTransport transport;
+    private ScheduledExecutorService scheduler;
+    private volatile Consumer<List<String>> keyConsumer = keys -> {
+    };
+    private volatile Consumer<List<String>> insertedConsumer = primaryKeys -> {
+    };
+
+    @Autowired
+    public CacheInvalidationBus(DaoCacheProperties properties,
+                                EntityGenerations generations,
+                                List<CacheInvalidationTransport> transports) {
+        this.properties = properties;
+        this.generations = generations;
+        if (properties.isInvalidationEnabled()) {
+            this.transport = transports.stream()
+                    .filter(item -> item.getName().equalsIgnoreCase(properties.getInvalidationTransport()))
+                    .findFirst().orElse(null);
+            if (this.transport == null) {
+                log.warn("未找到一级缓存同步通道 {}，跨节点同步已关闭", properties.getInvalidationTransport());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return transport != null;
+    }
+
+    /**
+     * 注册收到其它节点清除cache key消息时的处理
+     */
+    public void onKeysEvicted(Consumer<List<String>> keyConsumer) {
+        this.keyConsumer = keyConsumer;
+    }
+
+    /**
+     * 注册收到其它节点新增数据的主键时的处理
+     */
+    public void onPrimaryKeysInserted(Consumer<List<String>> insertedConsumer) {
+        this.insertedConsumer = insertedConsumer;
+    }
+
+    /**
+     * 广播被清除的cache key
+     */
+    public void publishEvictions(Collection<String> cacheKeys) {
+        enqueue(KEY_PREFIX, cacheKeys);
+    }
+
+    /**
+     * 广播新增数据的实体主键，其它节点清除布隆过滤器判断该主键不存在时保存在一级缓存中的空结果
+     */
+    public void publishInsertedPrimaryKeys(Collection<String> primaryKeys) {
+        enqueue(INSERTED_PREFIX, primaryKeys);
+    }
+
+    /**
+     * 广播数据版本号已更新的实体，其它节点立即丢弃本地缓存的旧版本号
+     */
+    public void publishGeneration(String generationName) {
+        enqueue(GENERATION_PREFIX, Collections.singletonList(generationName));
+    }
+
+    private void enqueue(String prefix, Collection<String> values) {
+        if (!isEnabled() || values.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            for (String value : values) {
+                pendingLines.add(prefix + value);
+            }
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!isEnabled()) {
+            return;
+        }
+        transport.subscribe(this::receive);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dao-cache-invalidation-");
+        threadFactory.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        long flushMillis = Math.max(properties.getInvalidationFlushMillis(), 1);
+        scheduler.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        log.info("一级缓存跨节点同步已开启，通道：{}，节点ID：{}", transport.getName(), nodeId);
+    }
+
+    /**
+     * 将去重后的待广播内容按evictBatchSize行拆分为多条消息发送
+     */
+    private void flush() {
+        List<String> lines;
+        synchronized (lock) {
+            if (pendingLines.isEmpty()) {
+                return;
+            }
+            lines = new ArrayList<>(pendingLines);
+            pendingLines = new LinkedHashSet<>();
+        }
+        int batchSize = Math.max(properties.getEvictBatchSize(), 1);
+        for (int from = 0; from < lines.size(); from += batchSize) {
+            List<String> batch = lines.subList(from, Math.min(from + batchSize, lines.size()));
+            try {
+                transport.publish(nodeId + "\n" + String.join("\n", batch));
+            } catch (Exception ex) {
+                log.error("广播一级缓存清除消息时发生异常：{}", ComUtils.printException(ex));
+            }
+        }
+    }
+
+    private void receive(String message) {
+        String[] lines = message.split("\n");
+        if (lines.length < 2 || nodeId.equals(lines[0])) {
+            return;
+        }
+        try {
+            List<String> cacheKeys = new ArrayList<>(lines.length - 1);
+            List<String> primaryKeys = new ArrayList<>();
+            for (int i = 1; i < lines.length; i++) {
+                if (lines[i].startsWith(KEY_PREFIX)) {
+                    cacheKeys.add(lines[i].substring(KEY_PREFIX.length()));
+                } else if (lines[i].startsWith(GENERATION_PREFIX)) {
+                    generations.expire(lines[i].substring(GENERATION_PREFIX.length()));
+                } else if (lines[i].startsWith(INSERTED_PREFIX)) {
+                    primaryKeys.add(lines[i].substring(INSERTED_PREFIX.length()));
+                }
+            }
+            if (!cacheKeys.isEmpty()) {
+                keyConsumer.accept(cacheKeys);
+            }
+            if (!primaryKeys.isEmpty()) {
+                insertedConsumer.accept(primaryKeys);
+            }
+            log.debug("收到节点 {} 的一级缓存清除消息，cache key数量：{}", lines[0], cacheKeys.size());
+        } catch (Exception ex) {
+            log.error("处理一级缓存清除消息时发生异常：{}", ComUtils.printException(ex));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            flush();
+        }
+    }
+
+}
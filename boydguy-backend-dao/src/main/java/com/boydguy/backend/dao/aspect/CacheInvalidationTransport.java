@@ -0,0 +1,25 @@
+package com.boydguy.backend.dao.aspect;
+
+import java.util.function.Consumer;
+
+/**
+ * 跨节点广播缓存清除消息的通道：Redis发布订阅或RabbitMQ扇形交换机
+ */
+public interface CacheInvalidationTransport {
+
+    /**
+     * 通道名称，对应配置项boydguy.dao-cache.invalidation-transport
+     */
+    String getName();
+
+    /**
+     * 广播一条消息
+     */
+    void publish(String message);
+
+    /**
+     * 订阅消息，每个节点都会收到全部消息，包括自己发出的消息
+     */
+    void subscribe(Consumer<String> consumer);
+
+}
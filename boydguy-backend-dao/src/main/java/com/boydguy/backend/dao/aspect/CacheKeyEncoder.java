@@ -0,0 +1,34 @@
+package com.boydguy.backend.dao.aspect;
+
+/**
+ * 根据被代理的方法与参数列表生成缓存的cache key
+ * 同一个方法、相同的参数必须得到相同的cache key，并且在不同的应用节点上保持一致
+ * cache key的格式必须为命名空间 + 32位十六进制(128位)，登记表以128位的值保存cache key
+ */
+public interface CacheKeyEncoder {
+
+    /**
+     * cache key的命名空间前缀，Redis过期事件只处理该前缀的key
+     */
+    String KEY_NAMESPACE = "daoCache:";
+
+    /**
+     * 生成cache key
+     *
+     * @param descriptor 被代理方法的预编译描述
+     * @param args       被代理方法的参数列表
+     */
+    default String encode(MethodCacheDescriptor descriptor, Object[] args) {
+        return encode(descriptor, args, 0);
+    }
+
+    /**
+     * 生成包含数据版本号的cache key：版本号改变后，旧版本的cache key不再被访问
+     *
+     * @param descriptor 被代理方法的预编译描述
+     * @param args       被代理方法的参数列表
+     * @param generation 实体的数据版本号，不使用版本号时为0
+     */
+    String encode(MethodCacheDescriptor descriptor, Object[] args, long generation);
+
+}
@@ -0,0 +1,72 @@
+package com.boydguy.backend.dao.aspect;
+
+/**
+ * 128位的cache key：登记表中以两个long代替"daoCache:" + 32位十六进制的字符串
+ */
+final class CacheKeyId {
+
+    private static final int HEX_LENGTH = 32;
+
+    private final long high;
+    private final long low;
+
+    private CacheKeyId(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * 解析cache key，不是命名空间 + 32位十六进制的格式时返回null
+     */
+    static CacheKeyId parse(String cacheKey) {
+        int offset = CacheKeyEncoder.KEY_NAMESPACE.length();
+        if (cacheKey == null || cacheKey.length() != offset + HEX_LENGTH || !cacheKey.startsWith(CacheKeyEncoder.KEY_NAMESPACE)) {
+            return null;
+        }
+        try {
+            return new CacheKeyId(Long.parseUnsignedLong(cacheKey.substring(offset, offset + 16), 16),
+                    Long.parseUnsignedLong(cacheKey.substring(offset + 16), 16));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * cache key所在的分桶：cache key本身是均匀的哈希值，直接取低64位的余数
+     */
+    int bucket(int buckets) {
+        return (int) Long.remainderUnsigned(low, buckets);
+    }
+
+    String toCacheKey() {
+        return CacheKeyEncoder.KEY_NAMESPACE + toHex(high) + toHex(low);
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        return hex.length() == 16 ? hex : "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CacheKeyId)) {
+            return false;
+        }
+        CacheKeyId other = (CacheKeyId) obj;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (low ^ (low >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return toCacheKey();
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.boydguy.backend.dao.aspect;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 按方法明文描述排序的方法索引，用于@ClearAppCache.patterns()的通配符清除
+ * 明文描述的格式：BaseDao<Product>.selectByExample(Example)，类名与参数类型省略包名
+ * 通配符中第一个*之前的部分作为前缀在有序索引中查找，找到的方法再从登记表中取出各自的cache key，
+ * 耗时与匹配的数量成正比，不需要扫描Redis
+ */
+@Component
+public class CacheKeyPatternIndex {
+
+    private static final Pattern PACKAGE_PATTERN = Pattern.compile("\\b(?:[a-z_$][\\w$]*\\.)+");
+    /**
+     * 明文描述与方法ID之间的分隔符，不会出现在明文描述中
+     */
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * 明文描述 + 分隔符 + 方法ID -> 方法
+     */
+    private final ConcurrentSkipListMap<String, RegisteredMethod> patternMap = new ConcurrentSkipListMap<>();
+
+    /**
+     * 生成方法的明文描述，例如：BaseDao<Product>.selectByExample(Example)
+     */
+    public static String describe(MethodDescription methodDesc) {
+        String params = methodDesc.getMethodParams() == null ? "" : methodDesc.getMethodParams().stream()
+                .map(MethodParams::getParamType)
+                .map(CacheKeyPatternIndex::simplify)
+                .collect(Collectors.joining(","));
+        return simplify(methodDesc.getClassFullPath()) + "." + methodDesc.getMethodName() + "(" + params + ")";
+    }
+
+    public void add(RegisteredMethod method) {
+        patternMap.put(method.getDescription() + SEPARATOR + method.getMethodIdHex(), method);
+    }
+
+    /**
+     * 查找明文描述符合通配符的方法，*匹配任意字符；没有*时明文描述必须完全相同
+     */
+    public List<RegisteredMethod> match(String pattern) {
+        int wildcardIndex = pattern.indexOf('*');
+        String prefix = wildcardIndex < 0 ? pattern + SEPARATOR : pattern.substring(0, wildcardIndex);
+        List<RegisteredMethod> methods = new ArrayList<>();
+        if (wildcardIndex < 0 || wildcardIndex == pattern.length() - 1) {
+            // 只有末尾的*时，前缀范围内的全部数据都符合
+            methods.addAll(patternMap.subMap(prefix, prefix + Character.MAX_VALUE).values());
+            return methods;
+        }
+        Pattern regex = toRegex(pattern);
+        patternMap.subMap(prefix, prefix + Character.MAX_VALUE).values().forEach(method -> {
+            if (regex.matcher(method.getDescription()).matches()) {
+                methods.add(method);
+            }
+        });
+        return methods;
+    }
+
+    /**
+     * 判断单个方法的明文描述是否符合通配符
+     */
+    public static boolean matches(String pattern, RegisteredMethod method) {
+        return toRegex(pattern).matcher(method.getDescription()).matches();
+    }
+
+    public int size() {
+        return patternMap.size();
+    }
+
+    private static String simplify(String typeName) {
+        return typeName == null ? "" : PACKAGE_PATTERN.matcher(typeName).replaceAll("");
+    }
+
+    private static Pattern toRegex(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : pattern.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+}
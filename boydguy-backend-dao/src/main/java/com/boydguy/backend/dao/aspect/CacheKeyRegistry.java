@@ -0,0 +1,403 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.ComUtils;
+import com.boydguy.generate.utils.RedisUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 应用节点的cache key登记表：以128位的cache key为键，只保存共享的方法与编码后的参数(截断到registryMaxArgBytes)
+ * 登记数量超过registryMaxEntries时，在后台线程中按抽样淘汰最早过期的登记，并清除对应的一级缓存与二级缓存，
+ * 保证不会出现未登记、因此无法被清除的缓存数据；抽样从上次淘汰停止的位置继续，轮流覆盖整个登记表
+ * Redis中的登记同样只保存 方法ID:参数，方法描述单独保存在方法表中
+ */
+@Slf4j
+@Component
+public class CacheKeyRegistry implements MeterBinder {
+
+    static final String METHOD_KEY = "daoCacheMethodMap";
+    /**
+     * Redis中登记有数据的cache key的哈希，按分桶拆分为 daoCacheKeyMap:{分桶}
+     */
+    static final String APP_CACHE_KEY = "daoCacheKeyMap";
+    /**
+     * Redis中登记结果为null的cache key的哈希，按分桶拆分为 nullCacheKeyMap:{分桶}
+     */
+    static final String NULL_CACHE_KEY = "nullCacheKeyMap";
+    /**
+     * 每条登记的固定内存开销估算值：哈希表节点、CacheKeyId、Entry以及方法中cache key集合的节点，单位：字节
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    /**
+     * 淘汰时每次抽样的登记数量
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final ConcurrentHashMap<Long, RegisteredMethod> methodMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CacheKeyId, Entry> entryMap = new ConcurrentHashMap<>();
+    private final AtomicLong estimatedBytes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    /**
+     * 淘汰抽样的位置，只在持有trimming的淘汰线程中访问；遍历到末尾后从头开始
+     */
+    private Iterator<Map.Entry<CacheKeyId, Entry>> sampleIterator = Collections.emptyIterator();
+    private DaoCacheProperties properties;
+    private CacheKeyPatternIndex patternIndex;
+    private DaoCacheExecutor executor;
+    private volatile Consumer<List<String>> overflowConsumer = keys -> {
+    };
+
+    @Autowired
+    public CacheKeyRegistry(DaoCacheProperties properties, CacheKeyPatternIndex patternIndex, DaoCacheExecutor executor) {
+        this.properties = properties;
+        this.patternIndex = patternIndex;
+        this.executor = executor;
+    }
+
+    /**
+     * 注册登记数量超过上限时被淘汰的cache key的处理：清除一级缓存与二级缓存
+     */
+    public void onOverflow(Consumer<List<String>> overflowConsumer) {
+        this.overflowConsumer = overflowConsumer;
+    }
+
+    /**
+     * 获取被代理方法在登记表中的共享描述，第一次使用时写入Redis的方法表
+     */
+    public RegisteredMethod method(MethodCacheDescriptor descriptor) {
+        RegisteredMethod method = methodMap.get(descriptor.getMethodId());
+        if (method != null) {
+            return method;
+        }
+        List<MethodParams> methodParams = new ArrayList<>();
+        for (String paramTypeName : descriptor.getParamTypeNames()) {
+            MethodParams methodParam = new MethodParams();
+            methodParam.setParamType(paramTypeName);
+            methodParams.add(methodParam);
+        }
+        MethodDescription template = new MethodDescription();
+        template.setModifier(descriptor.getModifier());
+        template.setClassFullPath(descriptor.getClassFullPath());
+        template.setMethodName(descriptor.getMethodName());
+        template.setReturnType(descriptor.getReturnTypeName());
+        template.setMethodParams(methodParams);
+        RegisteredMethod registered = method(descriptor.getMethodId(), template);
+        try {
+            RedisUtils.putHash(METHOD_KEY, registered.getMethodIdHex(), template);
+        } catch (Exception ex) {
+            log.error("写入方法表时发生异常：{}", ComUtils.printException(ex));
+        }
+        return registered;
+    }
+
+    /**
+     * 获取方法在登记表中的共享描述，用于加载Redis中的登记
+     */
+    public RegisteredMethod method(long methodId, MethodDescription template) {
+        return methodMap.computeIfAbsent(methodId, id -> {
+            RegisteredMethod method = new RegisteredMethod(id, template);
+            patternIndex.add(method);
+            return method;
+        });
+    }
+
+    public RegisteredMethod findMethod(long methodId) {
+        return methodMap.get(methodId);
+    }
+
+    /**
+     * 登记cache key
+     *
+     * @param args         编码后的参数
+     * @param expireMillis 二级缓存的过期时间，单位：毫秒
+     * @param overwrite    已登记时是否覆盖
+     * @return 是否登记成功
+     */
+    public boolean register(String cacheKey, RegisteredMethod method, byte[] args, long expireMillis, boolean overwrite) {
+        CacheKeyId cacheKeyId = CacheKeyId.parse(cacheKey);
+        if (cacheKeyId == null) {
+            log.warn("cache key {} 不是128位的格式，无法登记", cacheKey);
+            return false;
+        }
+        Entry entry = new Entry(method, args, System.currentTimeMillis() + expireMillis);
+        Entry oldEntry = overwrite ? entryMap.put(cacheKeyId, entry) : entryMap.putIfAbsent(cacheKeyId, entry);
+        if (oldEntry != null && !overwrite) {
+            return false;
+        }
+        if (oldEntry != null) {
+            estimatedBytes.addAndGet(-oldEntry.bytes());
+            if (oldEntry.method != method) {
+                oldEntry.method.cacheKeys.remove(cacheKeyId);
+            }
+        }
+        method.cacheKeys.add(cacheKeyId);
+        estimatedBytes.addAndGet(entry.bytes());
+        if (entryMap.size() > properties.getRegistryMaxEntries()) {
+            scheduleTrim();
+        }
+        return true;
+    }
+
+    /**
+     * 延长已登记的cache key的过期时间(热点数据滑动过期)，未登记时不处理
+     *
+     * @param expireMillis 从当前时间开始的二级缓存过期时间，单位：毫秒
+     */
+    public void extend(String cacheKey, long expireMillis) {
+        CacheKeyId cacheKeyId = CacheKeyId.parse(cacheKey);
+        if (cacheKeyId == null) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + expireMillis;
+        entryMap.computeIfPresent(cacheKeyId,
+                (key, entry) -> entry.expiresAt >= expiresAt ? entry : new Entry(entry.method, entry.args, expiresAt));
+    }
+
+    public void unregister(String cacheKey) {
+        CacheKeyId cacheKeyId = CacheKeyId.parse(cacheKey);
+        if (cacheKeyId != null) {
+            unregister(cacheKeyId);
+        }
+    }
+
+    private void unregister(CacheKeyId cacheKeyId) {
+        Entry entry = entryMap.remove(cacheKeyId);
+        if (entry != null) {
+            removed(cacheKeyId, entry);
+        }
+    }
+
+    /**
+     * 只在登记仍然是entry时删除，返回是否删除
+     */
+    private boolean unregister(CacheKeyId cacheKeyId, Entry entry) {
+        if (!entryMap.remove(cacheKeyId, entry)) {
+            return false;
+        }
+        removed(cacheKeyId, entry);
+        return true;
+    }
+
+    private void removed(CacheKeyId cacheKeyId, Entry entry) {
+        entry.method.cacheKeys.remove(cacheKeyId);
+        estimatedBytes.addAndGet(-entry.bytes());
+    }
+
+    /**
+     * 获取cache key登记的方法，未登记时返回null
+     */
+    public RegisteredMethod methodOf(String cacheKey) {
+        CacheKeyId cacheKeyId = CacheKeyId.parse(cacheKey);
+        Entry entry = cacheKeyId == null ? null : entryMap.get(cacheKeyId);
+        return entry == null ? null : entry.method;
+    }
+
+    public boolean contains(String cacheKey) {
+        CacheKeyId cacheKeyId = CacheKeyId.parse(cacheKey);
+        return cacheKeyId != null && entryMap.containsKey(cacheKeyId);
+    }
+
+    /**
+     * 获取多个方法已登记的全部cache key
+     */
+    public List<String> keysOf(Collection<RegisteredMethod> methods) {
+        List<String> cacheKeys = new ArrayList<>();
+        for (RegisteredMethod method : methods) {
+            for (CacheKeyId cacheKeyId : method.cacheKeys) {
+                cacheKeys.add(cacheKeyId.toCacheKey());
+            }
+        }
+        return cacheKeys;
+    }
+
+    /**
+     * 获取类中全部已登记的方法
+     */
+    public List<RegisteredMethod> methodsOf(String classFullPath) {
+        List<RegisteredMethod> methods = new ArrayList<>();
+        for (RegisteredMethod method : methodMap.values()) {
+            if (classFullPath.equals(method.getClassFullPath())) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    public int getBuckets() {
+        return Math.max(properties.getRegistryBuckets(), 1);
+    }
+
+    /**
+     * cache key在Redis中登记的分桶哈希：分桶编号作为hash tag，同一分桶的两个哈希位于同一个slot，
+     * 不同分桶分散到集群的不同slot；分桶只由cache key决定，任何节点收到过期事件都能找到对应的哈希
+     */
+    public String bucketKey(String registryKey, String cacheKey) {
+        CacheKeyId cacheKeyId = CacheKeyId.parse(cacheKey);
+        int buckets = getBuckets();
+        return bucketKey(registryKey, cacheKeyId == null ? Math.floorMod(cacheKey.hashCode(), buckets) : cacheKeyId.bucket(buckets));
+    }
+
+    public static String bucketKey(String registryKey, int bucket) {
+        return registryKey + ":{" + bucket + "}";
+    }
+
+    /**
+     * 按分桶哈希分组cache key，同时包括有数据与结果为null的两个哈希，用于批量删除登记
+     */
+    public Map<String, List<String>> bucketFields(Collection<String> cacheKeys) {
+        Map<String, List<String>> fieldsByKey = new HashMap<>();
+        for (String cacheKey : cacheKeys) {
+            fieldsByKey.computeIfAbsent(bucketKey(APP_CACHE_KEY, cacheKey), key -> new ArrayList<>()).add(cacheKey);
+            fieldsByKey.computeIfAbsent(bucketKey(NULL_CACHE_KEY, cacheKey), key -> new ArrayList<>()).add(cacheKey);
+        }
+        return fieldsByKey;
+    }
+
+    /**
+     * 编码参数，超过registryMaxArgBytes的部分被截断，参数只用于排查问题，不参与cache key的计算
+     */
+    public byte[] encodeArgs(Object[] args) {
+        int maxArgBytes = properties.getRegistryMaxArgBytes();
+        if (maxArgBytes <= 0 || args.length == 0) {
+            return new byte[0];
+        }
+        byte[] encoded = RedisUtils.str(args).getBytes(StandardCharsets.UTF_8);
+        return encoded.length <= maxArgBytes ? encoded : Arrays.copyOf(encoded, maxArgBytes);
+    }
+
+    /**
+     * Redis中登记的值：十六进制的方法ID:参数
+     */
+    public static String registryValue(RegisteredMethod method, byte[] args) {
+        return method.getMethodIdHex() + ":" + new String(args, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 提交后台淘汰任务，同一时刻只有一个；线程池已满时不淘汰，下一次登记时再提交
+     */
+    private void scheduleTrim() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        boolean submitted = executor.submitBackground(() -> {
+            try {
+                trim();
+            } catch (Exception ex) {
+                log.error("淘汰cache key登记时发生异常：{}", ComUtils.printException(ex));
+            } finally {
+                trimming.set(false);
+            }
+        });
+        if (!submitted) {
+            trimming.set(false);
+        }
+    }
+
+    /**
+     * 淘汰登记直到数量降到上限的95%：每EVICTION_SAMPLES条登记中淘汰最早过期的一条，一次最多遍历整个登记表一遍
+     */
+    private void trim() {
+        List<String> victims = new ArrayList<>();
+        int target = (int) (properties.getRegistryMaxEntries() * 0.95);
+        int remainingSamples = entryMap.size();
+        while (entryMap.size() > target && remainingSamples > 0) {
+            CacheKeyId victim = null;
+            Entry victimEntry = null;
+            for (int i = 0; i < EVICTION_SAMPLES && remainingSamples > 0; i++, remainingSamples--) {
+                Map.Entry<CacheKeyId, Entry> sample = nextSample();
+                if (sample == null) {
+                    break;
+                }
+                if (victimEntry == null || sample.getValue().expiresAt < victimEntry.expiresAt) {
+                    victim = sample.getKey();
+                    victimEntry = sample.getValue();
+                }
+            }
+            if (victim == null) {
+                break;
+            }
+            // 抽样之后可能已被删除或重新登记，只淘汰抽样到的这一条登记
+            if (unregister(victim, victimEntry)) {
+                victims.add(victim.toCacheKey());
+            }
+        }
+        if (!victims.isEmpty()) {
+            evictions.addAndGet(victims.size());
+            log.warn("cache key登记数量超过上限 {}，已淘汰 {} 个", properties.getRegistryMaxEntries(), victims.size());
+            overflowConsumer.accept(victims);
+        }
+    }
+
+    /**
+     * 从上次抽样停止的位置继续遍历登记表，到末尾后从头开始；登记表为空时返回null
+     */
+    private Map.Entry<CacheKeyId, Entry> nextSample() {
+        if (!sampleIterator.hasNext()) {
+            sampleIterator = entryMap.entrySet().iterator();
+        }
+        return sampleIterator.hasNext() ? sampleIterator.next() : null;
+    }
+
+    public int size() {
+        return entryMap.size();
+    }
+
+    /**
+     * 登记表占用内存的估算值，单位：字节
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("dao.cache.registry.entries", entryMap, Map::size)
+                .description("已登记的cache key数量")
+                .register(registry);
+        Gauge.builder("dao.cache.registry.methods", methodMap, Map::size)
+                .description("已登记的方法数量")
+                .register(registry);
+        Gauge.builder("dao.cache.registry.size", estimatedBytes, AtomicLong::get)
+                .description("登记表占用内存的估算值")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.registry.evictions", evictions, AtomicLong::get)
+                .description("登记数量超过上限被淘汰的cache key数量")
+                .register(registry);
+    }
+
+    private static final class Entry {
+        private final RegisteredMethod method;
+        private final byte[] args;
+        private final long expiresAt;
+
+        private Entry(RegisteredMethod method, byte[] args, long expiresAt) {
+            this.method = method;
+            this.args = args;
+            this.expiresAt = expiresAt;
+        }
+
+        private long bytes() {
+            return ENTRY_OVERHEAD_BYTES + args.length;
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.RedisUtils;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 从Redis哈希中加载cache key的登记：HSCAN分页读取，每页一次管道往返读取缓存的剩余过期时间，
+ * 并行解析登记的值，缓存已不存在的登记在同一页中批量删除
+ * 登记的值为 方法ID:参数，方法描述从方法表中读取；兼容旧版本保存的完整MethodDescription
+ * 旧版本未分桶的哈希中的登记在加载时迁移到分桶哈希中
+ */
+@Slf4j
+@Component
+public class CacheKeyRegistryLoader {
+
+    private StringRedisTemplate stringRedisTemplate;
+    private ObjectMapper jacksonMapper;
+    private DaoCacheProperties properties;
+    private CacheKeyRegistry registry;
+
+    @Autowired
+    public CacheKeyRegistryLoader(StringRedisTemplate stringRedisTemplate,
+                                  ObjectMapper objectMapper,
+                                  DaoCacheProperties properties,
+                                  CacheKeyRegistry registry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jacksonMapper = objectMapper.copy();
+        this.jacksonMapper.setSerializationInclusion(JsonInclude.Include.ALWAYS);
+        this.jacksonMapper.setDefaultPropertyInclusion(JsonInclude.Include.ALWAYS);
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    /**
+     * 加载Redis的方法表，必须在加载登记之前调用
+     */
+    public int loadMethods() throws IOException {
+        Map<String, String> methodMap = RedisUtils.getHash(CacheKeyRegistry.METHOD_KEY);
+        for (Map.Entry<String, String> entry : methodMap.entrySet()) {
+            registry.method(Long.parseUnsignedLong(entry.getKey(), 16),
+                    jacksonMapper.readValue(entry.getValue(), MethodDescription.class));
+        }
+        return methodMap.size();
+    }
+
+    /**
+     * 加载全部分桶哈希中的登记，以及旧版本未分桶的哈希中的登记
+     * 旧的哈希最后加载：迁移到分桶哈希的登记已经在迁移时登记，不会再被分桶哈希的加载重复读取
+     *
+     * @param registryKey 登记cache key的哈希名称：daoCacheKeyMap或nullCacheKeyMap
+     * @param registrar   登记仍然存在的cache key
+     * @return 加载的数量
+     */
+    public int loadAll(String registryKey, Registrar registrar) throws IOException {
+        int loaded = 0;
+        for (int bucket = 0; bucket < registry.getBuckets(); bucket++) {
+            loaded += load(CacheKeyRegistry.bucketKey(registryKey, bucket), null, registrar);
+        }
+        return loaded + load(registryKey, registryKey, registrar);
+    }
+
+    /**
+     * 加载一个哈希中的全部登记
+     *
+     * @param hashKey     登记cache key的哈希
+     * @param migrateTo   不为null时，将登记迁移到该名称的分桶哈希中，并从hashKey中删除
+     * @param registrar   登记仍然存在的cache key
+     * @return 加载的数量
+     */
+    private int load(String hashKey, String migrateTo, Registrar registrar) throws IOException {
+        int batchSize = Math.max(properties.getRegistryLoadBatchSize(), 1);
+        int loaded = 0;
+        List<Map.Entry<Object, Object>> page = new ArrayList<>(batchSize);
+        try (Cursor<Map.Entry<Object, Object>> cursor = stringRedisTemplate.opsForHash()
+                .scan(hashKey, ScanOptions.scanOptions().count(batchSize).build())) {
+            while (cursor.hasNext()) {
+                page.add(cursor.next());
+                if (page.size() >= batchSize) {
+                    loaded += loadPage(hashKey, migrateTo, page, registrar);
+                    page.clear();
+                }
+            }
+        }
+        if (!page.isEmpty()) {
+            loaded += loadPage(hashKey, migrateTo, page, registrar);
+        }
+        return loaded;
+    }
+
+    private int loadPage(String hashKey, String migrateTo, List<Map.Entry<Object, Object>> page, Registrar registrar) {
+        // 不是128位格式的是旧版本的cache key，过期事件不再处理，直接移除登记
+        List<Map.Entry<Object, Object>> candidates = page.stream()
+                .filter(entry -> CacheKeyId.parse(RedisUtils.str(entry.getKey())) != null)
+                .collect(Collectors.toList());
+        List<Long> expires = RedisUtils.getExpires(candidates.stream()
+                .map(entry -> RedisUtils.str(entry.getKey()))
+                .collect(Collectors.toList()));
+        Map<Map.Entry<Object, Object>, Long> present = new IdentityHashMap<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            long expireMillis = expires.get(i);
+            if (expireMillis != -2) {
+                present.put(candidates.get(i), expireMillis < 0 ? Integer.MAX_VALUE : expireMillis);
+            }
+        }
+
+        List<LoadedEntry> decoded = present.keySet().parallelStream()
+                .map(this::decode)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        Set<String> registered = new HashSet<>();
+        for (LoadedEntry loadedEntry : decoded) {
+            registrar.register(loadedEntry.cacheKey, loadedEntry.method, loadedEntry.args, present.get(loadedEntry.source));
+            registered.add(loadedEntry.cacheKey);
+        }
+
+        if (migrateTo != null) {
+            Map<String, Map<String, String>> entriesByKey = new HashMap<>();
+            for (LoadedEntry loadedEntry : decoded) {
+                entriesByKey.computeIfAbsent(registry.bucketKey(migrateTo, loadedEntry.cacheKey), key -> new HashMap<>())
+                        .put(loadedEntry.cacheKey, CacheKeyRegistry.registryValue(loadedEntry.method, loadedEntry.args));
+            }
+            RedisUtils.putHashEntries(entriesByKey);
+            registered.clear();//已迁移的登记同样从旧的哈希中删除
+            log.info("已将 {} 个cache key的登记从 {} 迁移到分桶哈希", decoded.size(), hashKey);
+        }
+
+        // 工程启动时，Ehcache缓存中是空的，此处只需要判断工程未启动时，过期的Redis缓存，从哈希中移除
+        List<String> missing = page.stream()
+                .map(entry -> RedisUtils.str(entry.getKey()))
+                .filter(cacheKey -> !registered.contains(cacheKey))
+                .collect(Collectors.toList());
+        RedisUtils.removeHashEntries(Collections.singletonList(hashKey), missing);
+        // 无法解析登记的缓存无法再被清除，一并删除
+        Set<String> decodedKeys = decoded.stream().map(loadedEntry -> loadedEntry.cacheKey).collect(Collectors.toSet());
+        RedisUtils.removeCaches(present.keySet().stream()
+                .map(entry -> RedisUtils.str(entry.getKey()))
+                .filter(cacheKey -> !decodedKeys.contains(cacheKey))
+                .collect(Collectors.toList()));
+        if (migrateTo == null && !missing.isEmpty()) {
+            log.info("Redis中 {} 个cache key的缓存已过期，已从 {} 中移除", missing.size(), hashKey);
+        }
+        return decoded.size();
+    }
+
+    private LoadedEntry decode(Map.Entry<Object, Object> entry) {
+        String cacheKey = RedisUtils.str(entry.getKey());
+        String value = RedisUtils.str(entry.getValue());
+        try {
+            if (value.startsWith("{")) {
+                return decodeLegacy(entry, cacheKey, value);
+            }
+            int separator = value.indexOf(':');
+            RegisteredMethod method = separator < 0 ? null
+                    : registry.findMethod(Long.parseUnsignedLong(value.substring(0, separator), 16));
+            if (method == null) {
+                log.warn("cache key {} 的方法不在方法表中", cacheKey);
+                return null;
+            }
+            return new LoadedEntry(entry, cacheKey, method, value.substring(separator + 1).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | NumberFormatException ex) {
+            log.warn("无法解析cache key {} 的登记：{}", cacheKey, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 旧版本的登记：完整的MethodDescription，方法描述去掉参数值后作为共享的方法
+     */
+    private LoadedEntry decodeLegacy(Map.Entry<Object, Object> entry, String cacheKey, String value) throws IOException {
+        MethodDescription methodDesc = jacksonMapper.readValue(value, MethodDescription.class);
+        List<MethodParams> methodParams = methodDesc.getMethodParams() == null ? new ArrayList<>() : methodDesc.getMethodParams();
+        Object[] args = methodParams.stream().map(MethodParams::getParamValue).toArray();
+        methodParams.forEach(methodParam -> methodParam.setParamValue(null));
+        methodDesc.setMethodParams(methodParams);
+        methodDesc.setCacheKey(null);
+        RegisteredMethod method = registry.method(Murmur3CacheKeyEncoder.methodId(RegisteredMethod.signature(methodDesc)), methodDesc);
+        return new LoadedEntry(entry, cacheKey, method, registry.encodeArgs(args));
+    }
+
+    @FunctionalInterface
+    public interface Registrar {
+        void register(String cacheKey, RegisteredMethod method, byte[] args, long expireMillis);
+    }
+
+    private static class LoadedEntry {
+        private final Map.Entry<Object, Object> source;
+        private final String cacheKey;
+        private final RegisteredMethod method;
+        private final byte[] args;
+
+        private LoadedEntry(Map.Entry<Object, Object> source, String cacheKey, RegisteredMethod method, byte[] args) {
+            this.source = source;
+            this.cacheKey = cacheKey;
+            this.method = method;
+            this.args = args;
+        }
+    }
+
+}
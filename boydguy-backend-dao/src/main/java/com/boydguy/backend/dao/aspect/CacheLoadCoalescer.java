@@ -0,0 +1,128 @@
+package com.boydguy.backend.dao.aspect;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 缓存未命中时的请求合并(single flight)：同一个cache key同一时刻只有一个线程查询数据库，
+ * 其它线程等待同一个Future，等待超时后自行查询数据库
+ * 合并次数与等待次数通过MeterBinder注册为指标
+ */
+@Slf4j
+@Component
+public class CacheLoadCoalescer implements MeterBinder {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlightMap = new ConcurrentHashMap<>();
+    /**
+     * 实际执行查询的次数
+     */
+    private final AtomicLong leaderLoads = new AtomicLong();
+    /**
+     * 合并到进行中查询的次数
+     */
+    private final AtomicLong coalescedHits = new AtomicLong();
+    /**
+     * 等待超时后自行查询的次数
+     */
+    private final AtomicLong waitTimeouts = new AtomicLong();
+    /**
+     * 合并请求累计等待的时间，单位：纳秒
+     */
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * 加载数据
+     *
+     * @param cacheKey      缓存的cache key
+     * @param maxWaitMillis 等待进行中查询的最长时间，单位：毫秒
+     * @param loader        实际的查询
+     * @param followerView  将进行中查询的结果转换为等待线程自己的返回值
+     */
+    public Object load(String cacheKey, long maxWaitMillis, Loader loader, Function<Object, Object> followerView) throws Throwable {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightMap.putIfAbsent(cacheKey, future);
+        if (inFlight == null) {
+            leaderLoads.incrementAndGet();
+            try {
+                Object value = loader.load();
+                future.complete(value);
+                return value;
+            } catch (Throwable throwable) {
+                future.completeExceptionally(throwable);
+                throw throwable;
+            } finally {
+                inFlightMap.remove(cacheKey, future);
+            }
+        }
+
+        coalescedHits.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return followerView.apply(inFlight.get(maxWaitMillis, TimeUnit.MILLISECONDS));
+        } catch (TimeoutException ex) {
+            waitTimeouts.incrementAndGet();
+            log.warn("等待cache key {} 的查询结果超时({}ms)，直接查询数据库", cacheKey, maxWaitMillis);
+            return loader.load();
+        } catch (ExecutionException ex) {
+            throw ex.getCause();
+        } finally {
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("dao.cache.coalesce.loads", leaderLoads, AtomicLong::get)
+                .description("缓存未命中时实际执行查询的次数")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.coalesce.hits", coalescedHits, AtomicLong::get)
+                .description("合并到进行中查询的次数")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.coalesce.timeouts", waitTimeouts, AtomicLong::get)
+                .description("等待超时后自行查询的次数")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.coalesce.wait", waitNanos, value -> value.get() / 1e6)
+                .description("合并请求累计等待的时间")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("dao.cache.coalesce.in-flight", inFlightMap, Map::size)
+                .description("进行中的查询数量")
+                .register(registry);
+    }
+
+    public long getLeaderLoads() {
+        return leaderLoads.get();
+    }
+
+    public long getCoalescedHits() {
+        return coalescedHits.get();
+    }
+
+    public long getWaitTimeouts() {
+        return waitTimeouts.get();
+    }
+
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    public int getInFlight() {
+        return inFlightMap.size();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        Object load() throws Throwable;
+    }
+
+}
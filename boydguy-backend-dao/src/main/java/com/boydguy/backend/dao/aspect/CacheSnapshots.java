@@ -0,0 +1,81 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.github.pagehelper.PageInfo;
+
+import java.util.*;
+
+/**
+ * 一级缓存中的不可变快照：集合被替换为只读集合，PageInfo的list被替换为只读list
+ * 【注意】快照中的实体对象(T)在多个调用方之间共享，调用方不能修改返回的实体
+ */
+public class CacheSnapshots {
+
+    /**
+     * 将查询结果转换为不可变快照
+     */
+    @SuppressWarnings("unchecked")
+    public static Object freeze(Object value) {
+        if (value instanceof List) {
+            return Collections.unmodifiableList(new ArrayList<>((List<Object>) value));
+        }
+        if (value instanceof Set) {
+            return Collections.unmodifiableSet(new LinkedHashSet<>((Set<Object>) value));
+        }
+        if (value instanceof Map) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>((Map<Object, Object>) value));
+        }
+        if (value instanceof PageInfo) {
+            PageInfo<Object> pageInfo = (PageInfo<Object>) value;
+            List<Object> list = pageInfo.getList() == null
+                    ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(pageInfo.getList()));
+            return copyPageInfo(pageInfo, list);
+        }
+        return value;
+    }
+
+    /**
+     * 对快照进行浅拷贝：只复制集合本身，集合中的元素仍然共享
+     */
+    @SuppressWarnings("unchecked")
+    public static Object copy(Object snapshot) {
+        if (snapshot instanceof List) {
+            return new ArrayList<>((List<Object>) snapshot);
+        }
+        if (snapshot instanceof Set) {
+            return new LinkedHashSet<>((Set<Object>) snapshot);
+        }
+        if (snapshot instanceof Map) {
+            return new LinkedHashMap<>((Map<Object, Object>) snapshot);
+        }
+        if (snapshot instanceof PageInfo) {
+            PageInfo<Object> pageInfo = (PageInfo<Object>) snapshot;
+            return copyPageInfo(pageInfo, new ArrayList<>(pageInfo.getList()));
+        }
+        return snapshot;
+    }
+
+    private static PageInfo<Object> copyPageInfo(PageInfo<Object> source, List<Object> list) {
+        PageInfo<Object> target = new PageInfo<>();
+        target.setTotal(source.getTotal());
+        target.setList(list);
+        target.setPageNum(source.getPageNum());
+        target.setPageSize(source.getPageSize());
+        target.setSize(source.getSize());
+        target.setStartRow(source.getStartRow());
+        target.setEndRow(source.getEndRow());
+        target.setPages(source.getPages());
+        target.setPrePage(source.getPrePage());
+        target.setNextPage(source.getNextPage());
+        target.setIsFirstPage(source.isIsFirstPage());
+        target.setIsLastPage(source.isIsLastPage());
+        target.setHasPreviousPage(source.isHasPreviousPage());
+        target.setHasNextPage(source.isHasNextPage());
+        target.setNavigatePages(source.getNavigatePages());
+        target.setNavigatepageNums(source.getNavigatepageNums());
+        target.setNavigateFirstPage(source.getNavigateFirstPage());
+        target.setNavigateLastPage(source.getNavigateLastPage());
+        return target;
+    }
+
+}
@@ -1,39 +1,40 @@
 package com.boydguy.backend.dao.aspect;
 
-import com.boydguy.generate.annotation.ApplyAppCache;
+import com.boydguy.backend.dao.base.BaseDao;
 import com.boydguy.generate.annotation.ClearAppCache;
+import com.boydguy.generate.cache.L1Cache;
+import com.boydguy.generate.cache.L1CacheEntry;
+import com.boydguy.generate.cache.MappedSnapshotFile;
+import com.boydguy.generate.cache.OffHeapSlabStore;
 import com.boydguy.generate.utils.*;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JavaType;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.JsonNodeType;
-import com.github.pagehelper.PageInfo;
 import com.googlecode.gentyref.GenericTypeReflector;
 import lombok.extern.slf4j.Slf4j;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.Element;
+import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.ResolvableType;
 import org.springframework.data.redis.connection.Message;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.KeyExpirationEventMessageListener;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
-import org.springframework.util.DigestUtils;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -44,23 +45,108 @@ import java.util.stream.Collectors;
 @Component
 public class DaoAspect extends KeyExpirationEventMessageListener {
 
-    private static final ConcurrentHashMap<String, MethodDescription> APP_CACHE_KEY_MAP = new ConcurrentHashMap<>();
-    private static final String APP_CACHE_KEY = "daoCacheKeyMap";
-    private static final String NULL_CACHE_KEY = "nullCacheKeyMap";
-    private static final String EHCACHE_APP_NAME = "daoAspectCache";
-    private ObjectMapper objectMapper;
+    private static final String APP_CACHE_KEY = CacheKeyRegistry.APP_CACHE_KEY;
+    private static final String NULL_CACHE_KEY = CacheKeyRegistry.NULL_CACHE_KEY;
+    private static final byte[] KEY_NAMESPACE_BYTES = CacheKeyEncoder.KEY_NAMESPACE.getBytes(StandardCharsets.UTF_8);
+    /**
+     * 缓存未命中时，重新加载数据的分布式租约的key前缀
+     */
+    private static final String LEASE_KEY_PREFIX = "daoCacheLease:";
+    /**
+     * 一级缓存中每条数据除查询结果以外的内存占用(cache key、DaoCacheEntry等)的估计值，单位：字节
+     */
+    private static final int L1_ENTRY_OVERHEAD = 160;
+    /**
+     * 一级缓存中没有数据的标记，与缓存的null值区分
+     */
+    private static final Object L1_MISS = new Object();
+    /**
+     * 二级缓存Redis中没有数据的标记，与缓存的null值区分
+     */
+    private static final Object L2_MISS = new Object();
+    /**
+     * 异步刷新前确认其它节点是否已经刷新时，允许的剩余过期时间误差，单位：毫秒
+     */
+    private static final long REFRESHED_SLACK_MILLIS = 100;
+    /**
+     * 正在异步刷新的cache key
+     */
+    private final Set<String> refreshingKeys = ConcurrentHashMap.newKeySet();
+    private MethodCacheDescriptorRegistry descriptorRegistry;
+    private CacheKeyEncoder cacheKeyEncoder;
+    private DaoCacheProperties properties;
+    private CacheLoadCoalescer loadCoalescer;
+    private DaoCacheExecutor refreshExecutor;
+    private CacheExpiryPolicy expiryPolicy;
+    private PrimaryKeyBloomFilters bloomFilters;
+    private EntityCacheKeyIndex cacheKeyIndex;
+    private EntityGenerations generations;
+    private CacheKeyPatternIndex patternIndex;
+    private CacheKeyRegistry registry;
+    private CacheInvalidationBus invalidationBus;
+    private CacheExpiryEventQueue expiryEventQueue;
+    private CacheKeyRegistryLoader registryLoader;
+    private DaoCacheMetrics metrics;
+    private L2ValueCodec valueCodec;
+    private L1CacheRegions l1Regions;
+    private L1OffHeapTier offHeapTier;
+    private L1WarmSnapshot warmSnapshot;
+    private L1Warmup warmup;
+    /**
+     * 是否正在后台加载cache key登记：加载期间登记不完整，按类与通配符的清除条件被暂存，加载到符合条件的登记时直接清除
+     */
+    private volatile boolean registryLoading = true;
+    private final List<Predicate<RegisteredMethod>> loadingEvictions = new CopyOnWriteArrayList<>();
+    private final Set<String> loadingUnregistered = ConcurrentHashMap.newKeySet();
 
     @Autowired
     public DaoAspect(RedisMessageListenerContainer redisMessageListenerContainer,
-                     StringRedisTemplate stringRedisTemplate,
-                     ObjectMapper objectMapper) throws IOException {
+                     MethodCacheDescriptorRegistry descriptorRegistry,
+                     CacheKeyEncoder cacheKeyEncoder,
+                     DaoCacheProperties properties,
+                     CacheLoadCoalescer loadCoalescer,
+                     DaoCacheExecutor refreshExecutor,
+                     CacheExpiryPolicy expiryPolicy,
+                     PrimaryKeyBloomFilters bloomFilters,
+                     EntityCacheKeyIndex cacheKeyIndex,
+                     EntityGenerations generations,
+                     CacheKeyPatternIndex patternIndex,
+                     CacheKeyRegistry registry,
+                     CacheInvalidationBus invalidationBus,
+                     CacheExpiryEventQueue expiryEventQueue,
+                     CacheKeyRegistryLoader registryLoader,
+                     DaoCacheMetrics metrics,
+                     L2ValueCodec valueCodec,
+                     L1CacheRegions l1Regions,
+                     L1OffHeapTier offHeapTier,
+                     L1WarmSnapshot warmSnapshot,
+                     L1Warmup warmup) {
         super(redisMessageListenerContainer);
 
-        this.objectMapper = objectMapper;
-        ObjectMapper jacksonMapper = objectMapper.copy();
-        jacksonMapper.setSerializationInclusion(JsonInclude.Include.ALWAYS);
-        jacksonMapper.setDefaultPropertyInclusion(JsonInclude.Include.ALWAYS);
-        initAppCacheKeyMap(stringRedisTemplate, jacksonMapper);
+        this.descriptorRegistry = descriptorRegistry;
+        this.cacheKeyEncoder = cacheKeyEncoder;
+        this.properties = properties;
+        this.loadCoalescer = loadCoalescer;
+        this.refreshExecutor = refreshExecutor;
+        this.expiryPolicy = expiryPolicy;
+        this.bloomFilters = bloomFilters;
+        this.cacheKeyIndex = cacheKeyIndex;
+        this.generations = generations;
+        this.patternIndex = patternIndex;
+        this.registry = registry;
+        registry.onOverflow(this::evictOverflowCacheKeys);
+        this.invalidationBus = invalidationBus;
+        invalidationBus.onKeysEvicted(this::evictLocalCacheKeys);
+        invalidationBus.onPrimaryKeysInserted(this::evictBloomNegatives);
+        this.expiryEventQueue = expiryEventQueue;
+        expiryEventQueue.onBatch(this::removeExpiredCacheKeys);
+        this.registryLoader = registryLoader;
+        this.metrics = metrics;
+        this.valueCodec = valueCodec;
+        this.l1Regions = l1Regions;
+        this.offHeapTier = offHeapTier;
+        this.warmSnapshot = warmSnapshot;
+        this.warmup = warmup;
     }
 
     /**
@@ -74,6 +160,13 @@ public class DaoAspect extends KeyExpirationEventMessageListener {
     public void clearAppCache() {
     }
 
+    /**
+     * 拦截BaseDao的新增方法
+     */
+    @Pointcut("execution(public * com.boydguy.backend.dao.base.BaseDao+.insert*(..))")
+    public void insertRecord() {
+    }
+
     /**
      * 环绕通知：添加缓存
      */
@@ -83,96 +176,123 @@ public class DaoAspect extends KeyExpirationEventMessageListener {
         String packagePathName = "";//被代理的类完整限定名
         String methodName = "";//被代理的方法名称
         Object[] args = joinPoint.getArgs();//代理的方法参数列表
+        long start = System.nanoTime();
+        MethodCacheMeters meters = null;
 
         try {
             //TODO：前置通知...
             Object source = joinPoint.getTarget();//被代理的类实例对象
             Method method = AspectUtils.getSourceMethod(joinPoint);//获取被代理的方法对象
-            Type exactReturnType = GenericTypeReflector.getExactReturnType(method, source.getClass());
-            String methodReturnType = exactReturnType.getTypeName();//获取方法的返回值类型，包括泛型
+            MethodCacheDescriptor descriptor = descriptorRegistry.getDescriptor(source.getClass(), method);
+            MethodCacheMeters methodMeters = metersOf(descriptor);
+            meters = methodMeters;
 
-            packagePathName = source.getClass().getGenericSuperclass().getTypeName();//被代理的类完整限定名，包括泛型
-            methodName = method.getName();//被代理的方法名称
+            packagePathName = descriptor.getClassFullPath();//被代理的类完整限定名，包括泛型
+            methodName = descriptor.getMethodName();//被代理的方法名称
 
-            MethodParams[] methodParams = new MethodParams[args.length];
-            Type[] exactParameterTypes = GenericTypeReflector.getExactParameterTypes(method, source.getClass());
-            for (int i = 0; i < exactParameterTypes.length; i++) {
-                MethodParams methodParam = new MethodParams();
-                methodParam.setParamType(exactParameterTypes[i].getTypeName());
-                methodParam.setParamValue(args[i]);
-                methodParams[i] = methodParam;
+            // 查询类方法的cache key包含实体的数据版本号，数据被修改后旧的cache key不再被访问
+            long generation = descriptor.getGenerationName() == null ? 0 : generations.current(descriptor.getGenerationName());
+            String cacheKey;
+            try {
+                cacheKey = cacheKeyEncoder.encode(descriptor, args, generation);
+            } catch (RuntimeException ex) {
+                // 参数不能生成稳定的cache key时不使用缓存，直接执行被代理的方法
+                log.warn("{}.{} 的参数不能生成cache key，本次查询不使用缓存：{}", packagePathName, methodName, ex.getMessage());
+                return joinPoint.proceed(args);
             }
+            log.debug("{}.{} 用于缓存的cache key：{}", packagePathName, methodName, cacheKey);
 
-            MethodDescription methodDesc = new MethodDescription();
-            methodDesc.setModifier(Modifier.toString(method.getModifiers()));
-            methodDesc.setClassFullPath(packagePathName);
-            methodDesc.setMethodName(methodName);
-            methodDesc.setReturnType(methodReturnType);
-            methodDesc.setMethodParams(Arrays.asList(methodParams));
-            String plainKey = methodDesc.getObjectString();
-            log.info("用于缓存的明文key：{}", plainKey);
-            String cacheKey = DigestUtils.md5DigestAsHex(plainKey.getBytes(StandardCharsets.UTF_8));
-            log.info("用于缓存的秘文key：{}", cacheKey);
-
-            ApplyAppCache applyAppCacheAnnotation = method.getAnnotation(ApplyAppCache.class);
-            int ehcacheTimeout = applyAppCacheAnnotation.ehcacheTimeout();
-            int redisExpireTime = applyAppCacheAnnotation.redisTimeout();
-
-            //TODO：获取一级缓存Ehcache
-            Cache ehcache = EhcacheDynamicUtils.getOrAddCache(EHCACHE_APP_NAME, ehcacheTimeout);
-            Element ehcacheElement = ehcache.get(cacheKey);
-            if (ehcacheElement != null) {
-                Object ehcacheValue = ehcacheElement.getObjectValue();
+            //TODO：获取一级缓存Ehcache：每个方法单独的分区
+            L1Cache ehcache = l1Regions.regionOf(descriptor);
+            L1CacheEntry l1Entry = ehcache.get(cacheKey);
+            if (l1Entry != null) {
+                DaoCacheEntry ehcacheEntry = (DaoCacheEntry) l1Entry.getValue();
                 //TODO：一级缓存Ehcache中有数据不再执行二级缓存Redis查询
-                log.info("返回了一级缓存Ehcache的数据 cache key：{}", cacheKey);
+                log.debug("返回了一级缓存Ehcache的数据 cache key：{}", cacheKey);
+                if (ehcacheEntry.isNegative()) {
+                    methodMeters.nullHit();
+                    return null;//防止缓存穿透
+                }
+                methodMeters.l1Hit();
+                if (needsRefresh(ehcacheEntry.getFreshUntil(), descriptor)) {
+                    scheduleRefresh(joinPoint, args, descriptor, cacheKey, ehcache, ehcacheEntry.getFreshUntil());
+                }
+                // 快照模式下直接返回快照(或浅拷贝)，不再反序列化
+                Object l1Result = fromL1Value(ehcacheEntry.getValue(), descriptor);
+                int slidingTimeout = expiryPolicy.slide(l1Entry, descriptor, cacheKey);
+                if (slidingTimeout > 0) {
+                    slideL2(cacheKey, descriptor, args, l1Result, slidingTimeout);//热点数据滑动过期
+                    log.debug("延长热点数据的过期时间 cache key：{}", cacheKey);
+                }
+                return l1Result;
+            }
+
+            //TODO：一级缓存的堆外层：序列化后较大的数据
+            Object offHeapResult = readOffHeap(joinPoint, args, descriptor, cacheKey, ehcache);
+            if (offHeapResult != L1_MISS) {
+                log.debug("返回了一级缓存堆外层的数据 cache key：{}", cacheKey);
+                methodMeters.l1Hit();
+                return offHeapResult;
+            }
 
-                // 通过Jackson的TypeFactory动态构建反序列化的类型（类似于TypeReference<T>）
-                return stringValueCastToTargetType(String.valueOf(ehcacheValue), exactReturnType);
+            //TODO：重启前保存的一级缓存快照
+            Object snapshotResult = readWarmSnapshot(joinPoint, args, descriptor, cacheKey, ehcache);
+            if (snapshotResult != L1_MISS) {
+                log.debug("返回了一级缓存快照的数据 cache key：{}", cacheKey);
+                methodMeters.l1Hit();
+                return snapshotResult;
+            }
+
+            //TODO：布隆过滤器拦截一定不存在的主键，不再查询二级缓存与数据库
+            if (descriptor.getPrimaryKeyQuery() != MethodCacheDescriptor.PrimaryKeyQuery.NONE && bloomFilters.isEnabled()
+                    && !mightExist(source, descriptor, args)) {
+                log.debug("布隆过滤器判断主键不存在 cache key：{}", cacheKey);
+                methodMeters.nullHit();
+                registerBloomNegative(descriptor, args, cacheKey);
+                if (descriptor.getPrimaryKeyQuery() == MethodCacheDescriptor.PrimaryKeyQuery.ONE) {
+                    putNegativeL1(ehcache, cacheKey, null, -1);
+                    return null;
+                }
+                List<Object> emptyList = new ArrayList<>();
+                putNegativeL1(ehcache, cacheKey, toL1Value(emptyList, "[]".getBytes(StandardCharsets.UTF_8)), -1);
+                return emptyList;
             }
 
             //TODO：获取二级缓存Redis
-            String redisValue = RedisUtils.getValue(cacheKey);
-            if (redisValue != null) {
+            Object redisResult = readL2(cacheKey, descriptor, ehcache);
+            if (redisResult != L2_MISS) {
                 //TODO：二级缓存Redis中有数据不再执行DB查询
-                log.info("返回了二级缓存Redis的数据 cache key：{}", cacheKey);
-                if ("${null}".equals(redisValue)) {
-                    return null;//防止Redis穿透
+                log.debug("返回了二级缓存Redis的数据 cache key：{}", cacheKey);
+                if (redisResult == null) {
+                    methodMeters.nullHit();
+                } else {
+                    methodMeters.l2Hit();
                 }
-                ehcache.put(new Element(cacheKey, redisValue));//如果二级缓存Redis中有数据需要再次保存到一级缓存ehcache中
-
-                // 通过Jackson的TypeFactory动态构建反序列化的类型（类似于TypeReference<T>）
-                return stringValueCastToTargetType(redisValue, exactReturnType);
+                long freshUntil = peekFreshUntil(ehcache, cacheKey);
+                if (freshUntil >= 0 && needsRefresh(freshUntil, descriptor)) {
+                    scheduleRefresh(joinPoint, args, descriptor, cacheKey, ehcache, freshUntil);
+                }
+                return redisResult;
             }
 
-            //TODO：执行被代理的方法
-            result = joinPoint.proceed(args);
-            String resultJsonValue = result == null ? null : JsonUtils.to(result);
-
-            //TODO：后置通知...
-            if (result != null) {
-                //TODO：返回通知...
-                RedisUtils.putValue(cacheKey, resultJsonValue);//存放二级缓存
-                RedisUtils.setExpire(redisExpireTime, cacheKey);
-
-                ehcache.put(new Element(cacheKey, resultJsonValue));//存放一级缓存
-                log.info("缓存数据：{} - {}", cacheKey, resultJsonValue);
-
-                RedisUtils.putHash(APP_CACHE_KEY, cacheKey, methodDesc);//保存cacheKey在redis中
-                APP_CACHE_KEY_MAP.put(cacheKey, methodDesc);//保存cacheKey在JVM内存中
+            //TODO：执行被代理的方法：同一个cache key同一时刻只允许一个线程查询数据库，其它线程等待它的结果
+            if (properties.isCoalesceEnabled()) {
+                result = loadCoalescer.load(cacheKey, properties.getCoalesceWaitMillis(),
+                        () -> loadAndPopulate(joinPoint, args, descriptor, cacheKey, ehcache),
+                        loaded -> {
+                            methodMeters.coalesced();
+                            return coalescedView(loaded, descriptor, cacheKey, ehcache);
+                        });
             } else {
-                RedisUtils.putValue(cacheKey, "${null}");//存放二级缓存，防止Redis穿透，避免重复访问数据库
-                RedisUtils.setExpire(60, cacheKey);
-
-                log.info("缓存数据：{} - {}", cacheKey, "${null}");
-
-                RedisUtils.putHash(NULL_CACHE_KEY, cacheKey, methodDesc);//保存cacheKey在redis中
-                APP_CACHE_KEY_MAP.put(cacheKey, methodDesc);//保存cacheKey在JVM内存中
+                result = loadAndPopulate(joinPoint, args, descriptor, cacheKey, ehcache);
             }
-            log.info("已同步cache Key {} ，总数：{}", cacheKey, APP_CACHE_KEY_MAP.size());
-            log.info("{}.{} 返回值：{}", packagePathName, methodName, resultJsonValue);
         } catch (Throwable throwable) {
             //TODO：异常通知...
             log.error("执行 {}.{} 时发生异常：{}", packagePathName, methodName, ComUtils.printException(throwable));
+        } finally {
+            if (meters != null) {
+                meters.recordLatency(System.nanoTime() - start);
+            }
         }
 
         return result;
@@ -198,37 +318,41 @@ public class DaoAspect extends KeyExpirationEventMessageListener {
             //packagePathName = joinPoint.getSignature().getDeclaringTypeName();
             ClearAppCache clearAppCacheAnnotation = method.getAnnotation(ClearAppCache.class);//获取被代理方法的注解对象
 
-            // ①筛选cacheKey，缩小比对范围
-            CopyOnWriteArrayList<MethodDescription> filterPlainKeyList = new CopyOnWriteArrayList<>();
-            for (MethodDescription item : APP_CACHE_KEY_MAP.values()) {
-                if (!packagePathName.equals(item.getClassFullPath())) {
-                    continue;
-                }
-                filterPlainKeyList.add(item);
-            }
-            // ②获取需要被清除缓存的cacheKey
-            CopyOnWriteArrayList<String> cacheKeyList = getCacheKeyByResult(source, args, clearAppCacheAnnotation, filterPlainKeyList);
+            // ①获取被修改数据的主键：必须在执行被代理的方法之前获取，删除之后无法再查询到
+            Class<?> entityClass = ResolvableType.forInstance(source).as(BaseDao.class).getGeneric(0).resolve();
+            String entityName = PrimaryKeys.entityName(entityClass);
+            List<Object> primaryKeys = entityName == null
+                    ? Collections.emptyList()
+                    : getModifiedPrimaryKeys(source, args, clearAppCacheAnnotation);
 
             //TODO：执行被代理的方法
             result = joinPoint.proceed(args);
 
             //TODO：后置通知...
-            // ③将最终确认的cache key从缓存中清除
-            // Ehcache作为一级缓存，在本地内存中将它删除
-            for (String key : cacheKeyList) {
-                EhcacheDynamicUtils.removeOneCacheElement(EHCACHE_APP_NAME, key);
-                RedisUtils.removeCache(Collections.singletonList(key));
+            // ②实体的数据版本号加1，列表、分页、总数等查询类方法的cache key全部失效
+            bumpGeneration(EntityGenerations.generationName(entityClass));
 
-                RedisUtils.removeHashEntry(APP_CACHE_KEY, key);
-                APP_CACHE_KEY_MAP.remove(key);
-                log.info("缓存cache key：{}已被删除并同步到本地，剩余：{}", key, APP_CACHE_KEY_MAP.size());
+            // ③通过倒排索引找到包含被修改数据的cache key，并从缓存中清除
+            Set<String> cacheKeys;
+            if (entityName != null) {
+                cacheKeys = cacheKeyIndex.lookup(entityName, primaryKeys);
+                cacheKeyIndex.removeIndex(entityName, primaryKeys);
+            } else {
+                // 实体类没有唯一的@Id主键时无法建立索引，清除当前类的全部cache key
+                String classFullPath = packagePathName;
+                addLoadingEviction(item -> classFullPath.equals(item.getClassFullPath()));
+                cacheKeys = new HashSet<>(registry.keysOf(registry.methodsOf(classFullPath)));
             }
+            evictCacheKeys(cacheKeys);
 
             // ④根据通配符规则清除缓存
             String[] patterns = clearAppCacheAnnotation.patterns();
             for (String pattern : patterns) {
-                //根据通配符进行筛选，符合条件的直接从缓存中清除
-                log.info("符合通配符 {} 规则的cache kay已被从缓存中清除", pattern);
+                //根据通配符在明文描述的有序索引中筛选，符合条件的直接从缓存中清除
+                addLoadingEviction(item -> CacheKeyPatternIndex.matches(pattern, item));
+                List<String> patternCacheKeys = registry.keysOf(patternIndex.match(pattern));
+                evictCacheKeys(patternCacheKeys);
+                log.info("符合通配符 {} 规则的cache kay已被从缓存中清除，数量：{}", pattern, patternCacheKeys.size());
             }
 
             if (result != null) {
@@ -244,55 +368,620 @@ public class DaoAspect extends KeyExpirationEventMessageListener {
     }
 
     /**
-     * 初始化AppCacheKeyMap
+     * 后置通知：新增数据后实体的数据版本号加1，清除按新增主键查询得到的空结果，新增数据的主键写入布隆过滤器
      */
-    private void initAppCacheKeyMap(StringRedisTemplate stringRedisTemplate, ObjectMapper jacksonMapper) throws IOException {
-        if (APP_CACHE_KEY_MAP.size() > 0) {
+    @AfterReturning(value = "insertRecord()")
+    public void insertAdvice(JoinPoint joinPoint) {
+        Class<?> entityClass = ResolvableType.forInstance(joinPoint.getTarget()).as(BaseDao.class).getGeneric(0).resolve();
+        String entityName = PrimaryKeys.entityName(entityClass);
+        Object records = joinPoint.getArgs()[0];
+        Collection<?> recordList = records instanceof Collection ? (Collection<?>) records : Collections.singletonList(records);
+        List<Object> primaryKeys = entityName == null ? Collections.emptyList() : insertedPrimaryKeys(recordList);
+        try {
+            bumpGeneration(EntityGenerations.generationName(entityClass));
+        } catch (Exception ex) {
+            log.error("更新数据版本号时发生异常：{}", ComUtils.printException(ex));
+        }
+        try {
+            evictInsertedPrimaryKeys(entityName, primaryKeys);
+        } catch (Exception ex) {
+            log.error("清除新增主键的空结果时发生异常：{}", ComUtils.printException(ex));
+        }
+        if (!bloomFilters.isEnabled()) {
             return;
         }
-        Map<Object, Object> cacheKeyMap = stringRedisTemplate.opsForHash().entries(APP_CACHE_KEY);
-        Map<Object, Object> nullCacheKeyMap = stringRedisTemplate.opsForHash().entries(NULL_CACHE_KEY);
-        if (nullCacheKeyMap.size() > 0) {
-            cacheKeyMap.putAll(nullCacheKeyMap);
-        }
-        if (cacheKeyMap.size() > 0) {
-            for (Map.Entry<Object, Object> entry : cacheKeyMap.entrySet()) {
-                Boolean keyExists = stringRedisTemplate.hasKey(String.valueOf(entry.getKey()));
-                if (keyExists != null && keyExists) {
-                    MethodDescription value = jacksonMapper.readValue(String.valueOf(entry.getValue()), MethodDescription.class);
-                    APP_CACHE_KEY_MAP.put(RedisUtils.str(entry.getKey()), value);
-                    continue;
-                }
-                // 工程启动时，Ehcache缓存中是空的，此处只需要判断工程未启动时，过期的Redis缓存，从daoCacheKeyMap中移除
-                stringRedisTemplate.opsForHash().delete(APP_CACHE_KEY, RedisUtils.str(entry.getKey()));
-                stringRedisTemplate.opsForHash().delete(NULL_CACHE_KEY, RedisUtils.str(entry.getKey()));
-                log.info("Redis中cache key={} 的缓存已过期", entry.getKey());
+        try {
+            bloomFilters.put(joinPoint.getTarget(), recordList);
+        } catch (Exception ex) {
+            log.error("新增数据的主键写入布隆过滤器时发生异常：{}", ComUtils.printException(ex));
+        }
+        if (!primaryKeys.isEmpty()) {
+            // 主键写入位图之后再清除空结果，其它节点收到广播时Redis位图中已经有新增的主键
+            List<String> negativeKeys = bloomFilters.negativeKeys(entityName, primaryKeys);
+            evictBloomNegatives(negativeKeys);
+            invalidationBus.publishInsertedPrimaryKeys(negativeKeys);
+        }
+    }
+
+    private List<Object> insertedPrimaryKeys(Collection<?> records) {
+        List<Object> primaryKeys = new ArrayList<>();
+        for (Object record : records) {
+            Object primaryKey = record == null ? null : PrimaryKeys.of(record);
+            if (primaryKey != null) {
+                primaryKeys.add(primaryKey);
             }
         }
-        log.info("当前缓存中的cache key总数是：{}", APP_CACHE_KEY_MAP.size());
+        return primaryKeys;
+    }
+
+    /**
+     * 通过倒排索引找到按新增主键查询的cache key(null结果、缺少该数据的selectByIds结果)，从所有节点的一级缓存与二级缓存中清除
+     */
+    private void evictInsertedPrimaryKeys(String entityName, List<Object> primaryKeys) {
+        if (primaryKeys.isEmpty()) {
+            return;
+        }
+        List<String> indexKeys = cacheKeyIndex.primaryKeyIndexKeys(entityName, primaryKeys);
+        Set<String> cacheKeys = cacheKeyIndex.lookup(indexKeys);
+        cacheKeyIndex.removeIndex(indexKeys);
+        evictCacheKeys(cacheKeys);
     }
 
-    private Object stringValueCastToTargetType(String value, Type exactReturnType) throws IOException {
-        // 判断方法的返回类型是否为泛型
-        if (exactReturnType instanceof ParameterizedType) {
-            // 通过Jackson的TypeFactory动态构建反序列化的类型（类似于TypeReference<T>）
-            Class<?> rawClass = objectMapper.getTypeFactory()
-                    .constructType(((ParameterizedType) exactReturnType).getRawType())
-                    .getRawClass();
-            Class[] classes = Arrays.stream(((ParameterizedType) exactReturnType).getActualTypeArguments())
-                    .map(type -> objectMapper.getTypeFactory().constructType(type).getRawClass())
-                    .toArray(Class[]::new);
-            JavaType javaType = objectMapper.getTypeFactory().constructParametricType(rawClass, classes);
-            return objectMapper.readValue(value, javaType);
+    /**
+     * 本节点或其它节点新增了数据：清除布隆过滤器判断这些主键不存在时保存在本地一级缓存中的空结果
+     */
+    private void evictBloomNegatives(List<String> negativeKeys) {
+        Set<String> cacheKeys = bloomFilters.takeNegatives(negativeKeys);
+        if (!cacheKeys.isEmpty()) {
+            l1Regions.remove(new ArrayList<>(cacheKeys));
         }
-        // 方法的返回类型是JavaType
-        Class<?> rawClass = objectMapper.getTypeFactory().constructType(exactReturnType).getRawClass();
-        return objectMapper.readValue(value, rawClass);
     }
 
-    private CopyOnWriteArrayList<String> getCacheKeyByResult(Object source, Object[] args, ClearAppCache clearAppCacheAnnotation,
-                                                             CopyOnWriteArrayList<MethodDescription> filterPlainKeyList) throws Exception {
-        //①获取将要被更新或删除的数据
+    /**
+     * 按主键查询时，判断主键是否可能存在；selectByIds只要有一个主键可能存在就需要查询
+     */
+    private boolean mightExist(Object source, MethodCacheDescriptor descriptor, Object[] args) {
+        return bloomFilters.mightContainAny(source, descriptor.getEntityClass(), requestedPrimaryKeys(descriptor, args));
+    }
+
+    /**
+     * 按主键查询时请求的主键：selectByPrimaryKey为第一个参数，selectByIds为第一个参数中逗号分隔的主键
+     */
+    private List<Object> requestedPrimaryKeys(MethodCacheDescriptor descriptor, Object[] args) {
+        Object primaryKey = args.length > 0 ? args[0] : null;
+        if (primaryKey == null) {
+            return Collections.emptyList();
+        }
+        if (descriptor.getPrimaryKeyQuery() == MethodCacheDescriptor.PrimaryKeyQuery.ONE) {
+            return Collections.singletonList(primaryKey);
+        }
+        return Arrays.stream(String.valueOf(primaryKey).split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 布隆过滤器判断主键不存在的空结果只保存在一级缓存中：按请求的主键登记在本地，新增该主键的数据时清除
+     */
+    private void registerBloomNegative(MethodCacheDescriptor descriptor, Object[] args, String cacheKey) {
+        String entityName = PrimaryKeys.entityName(descriptor.getEntityClass());
+        if (entityName == null || properties.getNegativeEhcacheTimeout() <= 0) {
+            return;
+        }
+        bloomFilters.registerNegative(entityName, requestedPrimaryKeys(descriptor, args), cacheKey);
+    }
+
+    /**
+     * 执行被代理的方法，并将结果存放到一级缓存与二级缓存中
+     * 开启分布式租约时，同一个cache key在所有应用节点中只有拿到租约的节点查询数据库
+     */
+    private Object loadAndPopulate(ProceedingJoinPoint joinPoint, Object[] args, MethodCacheDescriptor descriptor,
+                                   String cacheKey, L1Cache ehcache) throws Throwable {
+        // 等待合并的过程中，其它线程可能已经加载完毕
+        Object l1Value = peekL1Value(ehcache, cacheKey, descriptor);
+        if (l1Value != L1_MISS) {
+            return l1Value;
+        }
+        if (!properties.isLeaseEnabled()) {
+            return proceedAndPopulate(joinPoint, args, descriptor, cacheKey, ehcache);
+        }
+
+        String leaseKey = LEASE_KEY_PREFIX + cacheKey;
+        String leaseValue = RedisUtils.tryRedisLock(leaseKey, properties.getLeaseTtlMillis());
+        if (leaseValue == null) {
+            // 其它节点正在加载：在有限的时间内轮询二级缓存，超时后直接查询数据库
+            Object redisResult = awaitLeaseHolder(leaseKey, cacheKey, descriptor, ehcache);
+            if (redisResult != L2_MISS) {
+                log.info("返回了其它节点加载到二级缓存Redis的数据 cache key：{}", cacheKey);
+                return redisResult;
+            }
+            log.warn("等待其它节点加载cache key {} 超时({}ms)，直接查询数据库", cacheKey, properties.getLeaseWaitMillis());
+            return proceedAndPopulate(joinPoint, args, descriptor, cacheKey, ehcache);
+        }
+        try {
+            // 拿到租约之前，上一个持有租约的节点可能已经加载完毕
+            Object redisResult = readL2(cacheKey, descriptor, ehcache);
+            if (redisResult != L2_MISS) {
+                return redisResult;
+            }
+            return proceedAndPopulate(joinPoint, args, descriptor, cacheKey, ehcache);
+        } finally {
+            RedisUtils.releaseRedisLock(leaseKey, leaseValue);
+        }
+    }
+
+    /**
+     * 轮询二级缓存Redis，直到持有租约的节点写入数据、租约被释放或等待超时
+     */
+    private Object awaitLeaseHolder(String leaseKey, String cacheKey, MethodCacheDescriptor descriptor,
+                                    L1Cache ehcache) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + properties.getLeaseWaitMillis();
+        while (true) {
+            Object redisResult = readL2(cacheKey, descriptor, ehcache);
+            if (redisResult != L2_MISS) {
+                return redisResult;
+            }
+            Boolean leaseExists = RedisUtils.exists(leaseKey);
+            if (leaseExists == null || !leaseExists || System.currentTimeMillis() >= deadline) {
+                return L2_MISS;
+            }
+            Thread.sleep(properties.getLeasePollMillis());
+        }
+    }
+
+    /**
+     * 查询二级缓存Redis，有数据时同时保存到一级缓存Ehcache中
+     *
+     * @return 二级缓存中没有数据时返回L2_MISS
+     */
+    private Object readL2(String cacheKey, MethodCacheDescriptor descriptor, L1Cache ehcache) throws IOException {
+        // 同时读取剩余的过期时间，一级缓存总是比二级缓存提前过期；启动预热时已经读取过的数据不再访问Redis
+        Map.Entry<byte[], Long> valueAndExpire = warmup.take(cacheKey);
+        if (valueAndExpire == null) {
+            valueAndExpire = RedisUtils.getBytesAndExpire(cacheKey);
+        }
+        long expireMillis = valueAndExpire.getValue();
+        if (valueAndExpire.getKey() == null) {
+            return L2_MISS;
+        }
+        byte[] redisValue = valueCodec.decode(valueAndExpire.getKey());//超过阈值的数据被压缩过
+        if (valueCodec.isNull(redisValue)) {
+            putNegativeL1(ehcache, cacheKey, null, expireMillis);
+            return null;//防止Redis穿透
+        }
+        // 使用预先构建好的ObjectReader反序列化，不再重复构建JavaType；按数据的标记字节识别json或smile
+        Object redisResult = valueCodec.deserialize(redisValue, descriptor);
+        long freshUntil = Long.MAX_VALUE;
+        if (descriptor.isRefreshAhead()) {
+            // 根据剩余的过期时间推算数据变为陈旧数据的时间点
+            long now = System.currentTimeMillis();
+            freshUntil = expireMillis < 0
+                    ? now + descriptor.getStaleAfterMillis()
+                    : now + expireMillis - (expiryPolicy.redisTimeout(descriptor, cacheKey) * 1000L - descriptor.getStaleAfterMillis());
+        }
+        putL1(ehcache, cacheKey, descriptor, redisResult, redisValue, freshUntil, expireMillis);//如果二级缓存Redis中有数据需要再次保存到一级缓存ehcache中
+        return redisResult;
+    }
+
+    /**
+     * 判断一级缓存中的数据是否需要异步刷新：数据已陈旧，或者按XFetch算法提前刷新
+     */
+    private boolean needsRefresh(long freshUntil, MethodCacheDescriptor descriptor) {
+        if (!descriptor.isRefreshAhead()) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= freshUntil) {
+            return true;
+        }
+        double beta = descriptor.getEarlyRefreshBeta();
+        // XFetch：now - delta * beta * ln(rand) >= expiry，查询越慢，越早触发刷新
+        return beta > 0 && now - descriptor.getLoadMillis() * beta * Math.log(ThreadLocalRandom.current().nextDouble()) >= freshUntil;
+    }
+
+    /**
+     * 提交异步刷新任务，同一个cache key同一时刻只有一个刷新任务
+     */
+    private void scheduleRefresh(ProceedingJoinPoint joinPoint, Object[] args, MethodCacheDescriptor descriptor,
+                                 String cacheKey, L1Cache ehcache, long staleFreshUntil) {
+        if (!refreshingKeys.add(cacheKey)) {
+            return;
+        }
+        boolean submitted = refreshExecutor.submit(() -> {
+            try {
+                refresh(joinPoint, args, descriptor, cacheKey, ehcache, staleFreshUntil);
+            } catch (Throwable throwable) {
+                log.error("异步刷新cache key {} 时发生异常：{}", cacheKey, ComUtils.printException(throwable));
+            } finally {
+                refreshingKeys.remove(cacheKey);
+            }
+        });
+        if (!submitted) {
+            refreshingKeys.remove(cacheKey);
+        }
+    }
+
+    /**
+     * 异步刷新：二级缓存已被其它节点刷新时只同步到一级缓存，否则查询数据库
+     */
+    private void refresh(ProceedingJoinPoint joinPoint, Object[] args, MethodCacheDescriptor descriptor,
+                         String cacheKey, L1Cache ehcache, long staleFreshUntil) throws Throwable {
+        Object redisResult = readL2(cacheKey, descriptor, ehcache);
+        if (redisResult == null) {
+            return;//其它节点刷新后的结果为null
+        }
+        if (redisResult != L2_MISS && peekFreshUntil(ehcache, cacheKey) > staleFreshUntil + REFRESHED_SLACK_MILLIS) {
+            log.debug("cache key {} 已被其它节点刷新", cacheKey);
+            return;
+        }
+        if (!properties.isLeaseEnabled()) {
+            proceedAndPopulate(joinPoint, args, descriptor, cacheKey, ehcache);
+            return;
+        }
+        String leaseKey = LEASE_KEY_PREFIX + cacheKey;
+        String leaseValue = RedisUtils.tryRedisLock(leaseKey, properties.getLeaseTtlMillis());
+        if (leaseValue == null) {
+            return;//其它节点正在刷新
+        }
+        try {
+            proceedAndPopulate(joinPoint, args, descriptor, cacheKey, ehcache);
+        } finally {
+            RedisUtils.releaseRedisLock(leaseKey, leaseValue);
+        }
+    }
+
+    /**
+     * 读取一级缓存中的数据，不更新访问统计
+     */
+    private DaoCacheEntry peekL1(L1Cache ehcache, String cacheKey) {
+        L1CacheEntry l1Entry = ehcache.getQuiet(cacheKey);
+        return l1Entry == null ? null : (DaoCacheEntry) l1Entry.getValue();
+    }
+
+    /**
+     * 读取一级缓存(堆内或堆外)中的数据并转换为方法的返回值，不更新堆内的访问统计
+     *
+     * @return 没有数据时返回L1_MISS
+     */
+    private Object peekL1Value(L1Cache ehcache, String cacheKey, MethodCacheDescriptor descriptor) throws IOException {
+        DaoCacheEntry ehcacheEntry = peekL1(ehcache, cacheKey);
+        if (ehcacheEntry != null) {
+            return fromL1Value(ehcacheEntry.getValue(), descriptor);
+        }
+        OffHeapSlabStore.Entry offHeapEntry = offHeapTier.get(cacheKey);
+        return offHeapEntry == null ? L1_MISS : valueCodec.deserialize(offHeapEntry.getValue(), descriptor);
+    }
+
+    /**
+     * 一级缓存(堆内或堆外)中的数据变为陈旧数据的时间点，没有数据时返回-1
+     */
+    private long peekFreshUntil(L1Cache ehcache, String cacheKey) {
+        DaoCacheEntry ehcacheEntry = peekL1(ehcache, cacheKey);
+        if (ehcacheEntry != null) {
+            return ehcacheEntry.getFreshUntil();
+        }
+        OffHeapSlabStore.Entry offHeapEntry = offHeapTier.peek(cacheKey);
+        return offHeapEntry == null ? -1 : offHeapEntry.getAttachment();
+    }
+
+    /**
+     * 读取一级缓存的堆外层，命中次数达到阈值时提升到堆内，剩余的过期时间不变
+     *
+     * @return 没有数据时返回L1_MISS
+     */
+    private Object readOffHeap(ProceedingJoinPoint joinPoint, Object[] args, MethodCacheDescriptor descriptor,
+                               String cacheKey, L1Cache ehcache) throws IOException {
+        OffHeapSlabStore.Entry offHeapEntry = offHeapTier.get(cacheKey);
+        if (offHeapEntry == null) {
+            return L1_MISS;
+        }
+        byte[] value = offHeapEntry.getValue();
+        long freshUntil = offHeapEntry.getAttachment();
+        Object result = valueCodec.deserialize(value, descriptor);
+        long remainingMillis = offHeapEntry.getExpireAt() - System.currentTimeMillis();
+        if (offHeapTier.shouldPromote(offHeapEntry) && remainingMillis >= 1000) {
+            ehcache.put(cacheKey, new DaoCacheEntry(toL1Value(result, value), freshUntil),
+                    (int) (remainingMillis / 1000), L1_ENTRY_OVERHEAD + value.length);
+            offHeapTier.promoted(cacheKey);
+        }
+        if (needsRefresh(freshUntil, descriptor)) {
+            scheduleRefresh(joinPoint, args, descriptor, cacheKey, ehcache, freshUntil);
+        }
+        return result;
+    }
+
+    /**
+     * 读取重启前保存的一级缓存快照，数据按快照中剩余的过期时间放回一级缓存(堆内或堆外)
+     *
+     * @return 没有数据时返回L1_MISS
+     */
+    private Object readWarmSnapshot(ProceedingJoinPoint joinPoint, Object[] args, MethodCacheDescriptor descriptor,
+                                    String cacheKey, L1Cache ehcache) throws IOException {
+        MappedSnapshotFile.Entry snapshotEntry = warmSnapshot.take(cacheKey);
+        if (snapshotEntry == null) {
+            return L1_MISS;
+        }
+        byte[] value = snapshotEntry.getValue();
+        long freshUntil = snapshotEntry.getAttachment();
+        Object result = valueCodec.deserialize(value, descriptor);
+        int timeout = (int) ((snapshotEntry.getExpireAt() - System.currentTimeMillis()) / 1000);
+        if (timeout > 0) {
+            if (offHeapTier.accepts(value.length)) {
+                offHeapTier.put(cacheKey, value, timeout, freshUntil);
+            } else {
+                ehcache.put(cacheKey, new DaoCacheEntry(toL1Value(result, value), freshUntil), timeout,
+                        L1_ENTRY_OVERHEAD + value.length);
+            }
+        }
+        if (needsRefresh(freshUntil, descriptor)) {
+            scheduleRefresh(joinPoint, args, descriptor, cacheKey, ehcache, freshUntil);
+        }
+        return result;
+    }
+
+    /**
+     * 存放一级缓存：按过期策略单独设置每条数据的过期时间
+     * 序列化后较大的数据存放在堆外层，减少老年代的占用与GC停顿
+     *
+     * @param serializedValue   序列化后的数据，作为W-TinyLFU计算容量的weight
+     * @param redisExpireMillis 二级缓存剩余的过期时间，单位：毫秒
+     */
+    private void putL1(L1Cache ehcache, String cacheKey, MethodCacheDescriptor descriptor, Object value,
+                       byte[] serializedValue, long freshUntil, long redisExpireMillis) {
+        int timeout = expiryPolicy.ehcacheTimeout(descriptor, cacheKey, redisExpireMillis);
+        if (offHeapTier.accepts(serializedValue.length)) {
+            offHeapTier.put(cacheKey, serializedValue, timeout, freshUntil);
+            ehcache.remove(cacheKey);
+            return;
+        }
+        offHeapTier.remove(cacheKey);
+        ehcache.put(cacheKey, new DaoCacheEntry(toL1Value(value, serializedValue), freshUntil), timeout,
+                L1_ENTRY_OVERHEAD + serializedValue.length);
+    }
+
+    /**
+     * 一级缓存中保存null结果(或主键不存在时的空集合)，过期时间比正常数据短
+     *
+     * @param redisExpireMillis 二级缓存剩余的过期时间，单位：毫秒；小于0表示未知
+     */
+    private void putNegativeL1(L1Cache ehcache, String cacheKey, Object l1Value, long redisExpireMillis) {
+        offHeapTier.remove(cacheKey);
+        int timeout = properties.getNegativeEhcacheTimeout();
+        if (redisExpireMillis >= 0) {
+            timeout = (int) Math.min(timeout, redisExpireMillis / 1000);
+        }
+        if (timeout <= 0) {
+            ehcache.remove(cacheKey);
+            return;
+        }
+        ehcache.put(cacheKey, new DaoCacheEntry(l1Value, Long.MAX_VALUE), timeout, L1_ENTRY_OVERHEAD);
+    }
+
+    /**
+     * 查询数据库，并将结果存放到一级缓存与二级缓存中
+     */
+    private Object proceedAndPopulate(ProceedingJoinPoint joinPoint, Object[] args, MethodCacheDescriptor descriptor,
+                                      String cacheKey, L1Cache ehcache) throws Throwable {
+        long start = System.nanoTime();
+        Object result = joinPoint.proceed(args);
+        long elapsedNanos = System.nanoTime() - start;
+        descriptor.recordLoad(elapsedNanos);
+        byte[] resultValue = result == null ? null : valueCodec.serialize(result, descriptor);//按方法的序列化格式(json或smile)
+        metersOf(descriptor).recordLoad(elapsedNanos, resultValue == null ? 0 : resultValue.length);
+
+        //TODO：后置通知...
+        RegisteredMethod method = registry.method(descriptor);//明文描述只用于cache key的登记
+        byte[] encodedArgs = registry.encodeArgs(args);
+        String registryValue = CacheKeyRegistry.registryValue(method, encodedArgs);
+        if (result != null) {
+            //TODO：返回通知...
+            int redisTimeout = expiryPolicy.redisTimeout(descriptor, cacheKey);
+            List<String> indexKeys = indexKeysOf(descriptor, args, result);
+            cacheKeyIndex.register(cacheKey, indexKeys);
+            populateL2(cacheKey, resultValue, redisTimeout, registry.bucketKey(APP_CACHE_KEY, cacheKey), registryValue, indexKeys);//存放二级缓存，保存cacheKey在redis中
+
+            long freshUntil = descriptor.isRefreshAhead() ? System.currentTimeMillis() + descriptor.getStaleAfterMillis() : Long.MAX_VALUE;
+            putL1(ehcache, cacheKey, descriptor, result, resultValue, freshUntil, redisTimeout * 1000L);//存放一级缓存
+            if (log.isDebugEnabled()) {
+                log.debug("缓存数据：{} - {}", cacheKey, valueCodec.describe(resultValue));
+            }
+
+            registry.register(cacheKey, method, encodedArgs, redisTimeout * 1000L, true);//保存cacheKey在JVM内存中
+        } else {
+            int nullTimeout = expiryPolicy.nullTimeout(cacheKey);
+            populateL2(cacheKey, L2ValueCodec.NULL_VALUE, nullTimeout, registry.bucketKey(NULL_CACHE_KEY, cacheKey), registryValue, Collections.emptyList());//存放二级缓存，防止Redis穿透，避免重复访问数据库
+            // 按主键查询的null结果登记请求的主键，新增该主键的数据时清除；null结果的过期时间较短，不能缩短索引中其它cache key的过期时间
+            List<String> indexKeys = indexKeysOf(descriptor, args, null);
+            cacheKeyIndex.register(cacheKey, indexKeys);
+            cacheKeyIndex.registerNegative(cacheKey, indexKeys, nullTimeout);
+            putNegativeL1(ehcache, cacheKey, null, nullTimeout * 1000L);//同时替换一级缓存中的陈旧数据
+
+            log.debug("缓存数据：{} - {}", cacheKey, "${null}");
+
+            registry.register(cacheKey, method, encodedArgs, nullTimeout * 1000L, true);//保存cacheKey在JVM内存中
+        }
+        log.info("已同步cache Key {} ，总数：{}", cacheKey, registry.size());
+        if (log.isDebugEnabled()) {
+            log.debug("{}.{} 返回值：{}", descriptor.getClassFullPath(), descriptor.getMethodName(),
+                    resultValue == null ? null : valueCodec.describe(resultValue));
+        }
+        return result;
+    }
+
+    /**
+     * 查询结果需要登记的倒排索引key：查询类方法通过数据版本号失效，只有其它方法需要登记查询结果中包含的实体主键；
+     * 按主键查询时还要登记请求的主键，结果中不存在的主键被新增后，null结果或缺少该数据的selectByIds结果随之清除
+     */
+    private List<String> indexKeysOf(MethodCacheDescriptor descriptor, Object[] args, Object result) {
+        if (descriptor.getGenerationName() != null) {
+            return Collections.emptyList();
+        }
+        List<String> resultIndexKeys = result == null ? Collections.emptyList() : cacheKeyIndex.indexKeysOf(result);
+        String entityName = PrimaryKeys.entityName(descriptor.getEntityClass());
+        if (descriptor.getPrimaryKeyQuery() == MethodCacheDescriptor.PrimaryKeyQuery.NONE || entityName == null) {
+            return resultIndexKeys;
+        }
+        Set<String> indexKeys = new LinkedHashSet<>(resultIndexKeys);
+        indexKeys.addAll(cacheKeyIndex.primaryKeyIndexKeys(entityName, requestedPrimaryKeys(descriptor, args)));
+        return new ArrayList<>(indexKeys);
+    }
+
+    /**
+     * 热点数据滑动过期：二级缓存与倒排索引在同一个管道中延长过期时间，倒排索引不会早于数据过期，
+     * 同时延长JVM内存中cache key登记的过期时间
+     */
+    private void slideL2(String cacheKey, MethodCacheDescriptor descriptor, Object[] args, Object result, int timeout) {
+        try {
+            RedisUtils.extendExpire(cacheKey, timeout, indexKeysOf(descriptor, args, result));
+            registry.extend(cacheKey, timeout * 1000L);
+        } catch (Exception ex) {
+            log.error("延长热点数据cache key {} 的过期时间时发生异常：{}", cacheKey, ComUtils.printException(ex));
+        }
+    }
+
+    /**
+     * 在一个管道中写入二级缓存、cache key的登记与倒排索引(SET EX + HSET + SADD)，开启异步写入时在后台线程中执行
+     * 倒排索引中可能还有过期时间更长的cache key，写入前读取倒排索引的剩余过期时间，只延长不缩短；线程池已满时仍然同步写入
+     */
+    private void populateL2(String cacheKey, byte[] value, int timeout, String registryKey, String registryValue,
+                            List<String> indexKeys) {
+        Runnable populate = () -> RedisUtils.putBytesAndHashEntry(cacheKey, valueCodec.encode(value), timeout,
+                registryKey, cacheKey, registryValue, indexKeys);
+        if (properties.isPopulateAsync() && refreshExecutor.submitBackground(() -> {
+            try {
+                populate.run();
+            } catch (Exception ex) {
+                log.error("异步写入二级缓存cache key {} 时发生异常：{}", cacheKey, ComUtils.printException(ex));
+            }
+        })) {
+            return;
+        }
+        populate.run();
+    }
+
+    /**
+     * 等待合并的线程不直接共享查询线程的返回值，而是与一级缓存命中时一样返回快照(或浅拷贝)
+     */
+    private Object coalescedView(Object loaded, MethodCacheDescriptor descriptor, String cacheKey, L1Cache ehcache) {
+        if (loaded == null) {
+            return null;
+        }
+        try {
+            Object l1Value = peekL1Value(ehcache, cacheKey, descriptor);
+            return l1Value == L1_MISS ? loaded : l1Value;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * 应用启动完成后，在后台线程中加载AppCacheKeyMap，不阻塞Spring容器的启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initAppCacheKeyMap() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dao-cache-registry-");
+        threadFactory.setDaemon(true);
+        threadFactory.newThread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                registryLoader.loadMethods();
+                int loaded = registryLoader.loadAll(APP_CACHE_KEY, this::registerLoadedCacheKey)
+                        + registryLoader.loadAll(NULL_CACHE_KEY, this::registerLoadedCacheKey);
+                log.info("已加载cache key {} 个，耗时：{}ms，当前缓存中的cache key总数是：{}，登记表占用内存约：{}KB",
+                        loaded, System.currentTimeMillis() - start, registry.size(), registry.getEstimatedBytes() / 1024);
+            } catch (Exception ex) {
+                log.error("加载cache key时发生异常：{}", ComUtils.printException(ex));
+            } finally {
+                registryLoading = false;
+                loadingEvictions.clear();
+                loadingUnregistered.clear();
+            }
+        }).start();
+    }
+
+    /**
+     * 登记后台加载的cache key：加载期间已被删除、已被重新登记的跳过；符合加载期间清除条件的直接清除
+     * 先登记再检查清除条件，与modifyAdvice中先暂存条件再查找登记的顺序相反，保证两者至少有一方能看到对方
+     */
+    private void registerLoadedCacheKey(String cacheKey, RegisteredMethod method, byte[] args, long expireMillis) {
+        if (loadingUnregistered.contains(cacheKey) || !registry.register(cacheKey, method, args, expireMillis, false)) {
+            return;
+        }
+        if (loadingUnregistered.contains(cacheKey)) {
+            unregisterCacheKey(cacheKey);
+            return;
+        }
+        for (Predicate<RegisteredMethod> eviction : loadingEvictions) {
+            if (eviction.test(method)) {
+                evictCacheKeys(Collections.singletonList(cacheKey));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 加载期间暂存按类或通配符的清除条件
+     */
+    private void addLoadingEviction(Predicate<RegisteredMethod> eviction) {
+        if (registryLoading) {
+            loadingEvictions.add(eviction);
+        }
+    }
+
+    public boolean isRegistryLoading() {
+        return registryLoading;
+    }
+
+    /**
+     * 将查询结果转换为一级缓存中存放的形式：序列化后的数据或不可变快照
+     */
+    private Object toL1Value(Object value, byte[] serializedValue) {
+        if (properties.getL1ValueMode() == DaoCacheProperties.L1ValueMode.JSON) {
+            return serializedValue;
+        }
+        return CacheSnapshots.freeze(value);
+    }
+
+    /**
+     * 将一级缓存中存放的数据转换为方法的返回值
+     */
+    private Object fromL1Value(Object l1Value, MethodCacheDescriptor descriptor) throws IOException {
+        if (l1Value == null) {
+            return null;
+        }
+        switch (properties.getL1ValueMode()) {
+            case JSON:
+                return valueCodec.deserialize((byte[]) l1Value, descriptor);
+            case SNAPSHOT:
+                return l1Value;
+            default:
+                return CacheSnapshots.copy(l1Value);
+        }
+    }
+
+    /**
+     * 获取被修改数据的主键：byPrimaryKey时直接从参数中获取，否则通过@ClearAppCache指定的方法查询被修改的数据
+     */
+    private List<Object> getModifiedPrimaryKeys(Object source, Object[] args, ClearAppCache clearAppCacheAnnotation) throws Exception {
+        if (clearAppCacheAnnotation.byPrimaryKey()) {
+            Object arg = args[clearAppCacheAnnotation.index()[0]];
+            if (arg != null && PrimaryKeys.field(arg.getClass()) != null) {
+                Object primaryKey = PrimaryKeys.of(arg);
+                if (primaryKey != null) {
+                    return Collections.singletonList(primaryKey);
+                }
+            } else if (arg != null && "selectByIds".equals(clearAppCacheAnnotation.methodName())) {
+                return Arrays.stream(String.valueOf(arg).split(","))
+                        .map(String::trim)
+                        .filter(id -> !id.isEmpty())
+                        .collect(Collectors.toList());
+            } else if (arg != null) {
+                return Collections.singletonList(arg);
+            }
+        }
+
+        //获取将要被更新或删除的数据
         String confirmMethod = clearAppCacheAnnotation.methodName();
         String[] typeStringArray = clearAppCacheAnnotation.paramTypes();
         Class<?>[] classArray = new Class<?>[typeStringArray.length];
@@ -314,107 +1003,136 @@ public class DaoAspect extends KeyExpirationEventMessageListener {
             targetParamArray[i++] = args[index];
         }
         Object modifyData = targetMethod.invoke(source, targetParamArray);
-        List<String> castStringList = new ArrayList<>();
-        if (Arrays.asList("select", "selectByIds", "selectByExample").contains(confirmMethod)) {
-            String stringResult = JsonUtils.to(modifyData);
-            JsonNode jsonNode = objectMapper.readTree(stringResult);
-            for (int idx = 0; idx < jsonNode.size(); idx++) {
-                castStringList.add(objectMapper.writeValueAsString(jsonNode.get(idx)));
+        Collection<?> records = modifyData instanceof Collection ? (Collection<?>) modifyData : Collections.singletonList(modifyData);
+        List<Object> primaryKeys = new ArrayList<>();
+        for (Object record : records) {
+            Object primaryKey = PrimaryKeys.of(record);
+            if (primaryKey != null) {
+                primaryKeys.add(primaryKey);
             }
         }
-        if ("selectByPrimaryKey".equals(confirmMethod)) {
-            castStringList.add(objectMapper.writeValueAsString(modifyData));
+        return primaryKeys;
+    }
+
+    /**
+     * 从一级缓存、二级缓存与cache key登记中清除cache key，每批evictBatchSize个
+     */
+    private void evictCacheKeys(Collection<String> cacheKeys) {
+        if (cacheKeys.isEmpty()) {
+            return;
+        }
+        List<String> cacheKeyList = new ArrayList<>(cacheKeys);
+        int batchSize = Math.max(properties.getEvictBatchSize(), 1);
+        for (int from = 0; from < cacheKeyList.size(); from += batchSize) {
+            List<String> batch = cacheKeyList.subList(from, Math.min(from + batchSize, cacheKeyList.size()));
+            recordEvictions(batch);
+            // Ehcache作为一级缓存，在本地内存中将它删除
+            l1Regions.remove(batch);
+            RedisUtils.removeCaches(batch);
+            RedisUtils.removeHashEntries(registry.bucketFields(batch));
+            batch.forEach(this::unregisterCacheKey);
+            invalidationBus.publishEvictions(batch);
         }
+        log.info("缓存cache key：{}已被删除并同步到本地，剩余：{}", cacheKeyList.size(), registry.size());
+    }
 
-        //②根据参数列表精确匹配
-        CopyOnWriteArrayList<String> cacheKeyList = new CopyOnWriteArrayList<>();
-        for (MethodDescription item : filterPlainKeyList) {
-            String cacheKey = DigestUtils.md5DigestAsHex(item.getObjectString().getBytes(StandardCharsets.UTF_8));
-            if (!EhcacheDynamicUtils.exists(EHCACHE_APP_NAME, cacheKey)) {
-                continue;
-            }
-            String jsonCacheValue = String.valueOf(EhcacheDynamicUtils.get(EHCACHE_APP_NAME, cacheKey));
-            List<String> cacheStringList;
-            // 针对dao层，缓存中的json数据一般是T、List、PageInfo序列化后的结果
-            JsonNode jsonNode = objectMapper.readTree(jsonCacheValue);
-            if (JsonNodeType.ARRAY.equals(jsonNode.getNodeType())) {
-                cacheStringList = new ArrayList<>();
-                for (int idx = 0; idx < jsonNode.size(); idx++) {
-                    cacheStringList.add(objectMapper.writeValueAsString(jsonNode.get(idx)));
-                }
-                // 确认castStringList与cacheStringList两个集合中的json数据是否有交集：
-                // 如果有交集，当前cacheKey需要被从缓存中移除
-                cacheStringList.retainAll(castStringList);
-                if (cacheStringList.size() > 0) {//存在交集
-                    cacheKeyList.add(cacheKey);
-                }
-                continue;
+    /**
+     * 按方法统计被清除的cache key数量，必须在删除登记之前调用
+     */
+    private void recordEvictions(List<String> cacheKeys) {
+        Map<RegisteredMethod, Integer> counts = new HashMap<>();
+        for (String cacheKey : cacheKeys) {
+            RegisteredMethod method = registry.methodOf(cacheKey);
+            if (method != null) {
+                counts.merge(method, 1, Integer::sum);
             }
+        }
+        counts.forEach((method, count) -> metrics.meters(method.getDescription()).evicted(count));
+    }
 
-            // PageInfo对象被序列化后有标志性字段
-            cacheStringList = tryCastPageInfo(jsonCacheValue);
-            if (!"false".equals(cacheStringList.get(0))) {
-                cacheStringList.retainAll(castStringList);
-                if (cacheStringList.size() > 0) {//存在交集
-                    cacheKeyList.add(cacheKey);
-                }
-                continue;
-            }
+    private MethodCacheMeters metersOf(MethodCacheDescriptor descriptor) {
+        return metrics.meters(registry.method(descriptor).getDescription());
+    }
 
-            // 执行到这一步，被序列化的肯定就是泛型<T>的对象
-            cacheStringList = new ArrayList<>();
-            cacheStringList.add(jsonCacheValue);
-            cacheStringList.retainAll(castStringList);
-            if (cacheStringList.size() > 0) {//存在交集
-                cacheKeyList.add(cacheKey);
-            }
-        }
+    /**
+     * 其它节点清除了cache key：只清除本地的一级缓存与登记，二级缓存已由发出消息的节点清除
+     */
+    private void evictLocalCacheKeys(List<String> cacheKeys) {
+        l1Regions.remove(cacheKeys);
+        cacheKeys.forEach(this::unregisterCacheKey);
+    }
 
-        return cacheKeyList;
+    /**
+     * 实体的数据版本号加1，并通知其它节点丢弃本地缓存的旧版本号
+     */
+    private void bumpGeneration(String generationName) {
+        generations.bump(generationName);
+        invalidationBus.publishGeneration(generationName);
     }
 
-    private List<String> tryCastPageInfo(String json) {
-        Map<String, Object> castMap = JsonUtils.from(json, new TypeReference<Map<String, Object>>() {
-        });
-        if (castMap == null) {
-            return Collections.singletonList("false");
-        }
-        List<Field> fieldList = new ArrayList<>();
-        Class<?> clazz = PageInfo.class;
-        do {
-            fieldList.addAll(Arrays.asList(clazz.getDeclaredFields()));
-            clazz = clazz.getSuperclass();
-        } while (clazz != null);
-        List<String> pageInfoFieldNameList = fieldList.stream().map(Field::getName).collect(Collectors.toList());
-        if (pageInfoFieldNameList.containsAll(castMap.keySet())) {
-            PageInfo pageInfo = JsonUtils.from(json, PageInfo.class);
-            Assert.notNull(pageInfo, "反序列化PageInfo失败");
-            List<String> list = new ArrayList<>();
-            for (Object obj : pageInfo.getList()) {
-                list.add(JsonUtils.to(obj));
+    /**
+     * 登记数量超过上限被淘汰的cache key：同时清除一级缓存与二级缓存，在后台线程中执行，线程池已满时同步执行
+     */
+    private void evictOverflowCacheKeys(List<String> cacheKeys) {
+        Runnable evict = () -> evictCacheKeys(cacheKeys);
+        if (!refreshExecutor.submitBackground(() -> {
+            try {
+                evict.run();
+            } catch (Exception ex) {
+                log.error("清除被淘汰的cache key时发生异常：{}", ComUtils.printException(ex));
             }
-            return list;
+        })) {
+            evict.run();
+        }
+    }
+
+    /**
+     * 从JVM内存中删除cache key的登记与索引
+     */
+    private void unregisterCacheKey(String cacheKey) {
+        if (registryLoading) {
+            loadingUnregistered.add(cacheKey);
         }
-        return Collections.singletonList("false");
+        registry.unregister(cacheKey);
+        cacheKeyIndex.remove(cacheKey);
     }
 
     /**
      * 监听redis缓存中的过期key过期事件
-     * 保证一级缓存与二级缓存同步
+     * 保证一级缓存与二级缓存同步：只处理命名空间中的cache key，入队后由专用线程批量处理
      */
     @Override
     public void onMessage(Message message, byte[] pattern) {
-        String expiredKey = message.toString();
-        log.info("redis缓存的Key {} 已过期", expiredKey);
+        byte[] body = message.getBody();
+        if (!startsWith(body, KEY_NAMESPACE_BYTES)) {
+            return;//租约、布隆过滤器、倒排索引、数据版本号以及其它应用的key过期与缓存数据无关
+        }
+        expiryEventQueue.offer(new String(body, StandardCharsets.UTF_8));
+    }
 
+    /**
+     * 批量删除已过期的cache key：一级缓存、JVM内存中的登记，以及一次管道往返删除两个哈希中的登记
+     */
+    private void removeExpiredCacheKeys(List<String> expiredKeys) {
         // Ehcache作为一级缓存，在本地内存中将它删除
-        EhcacheDynamicUtils.removeOneCacheElement(EHCACHE_APP_NAME, expiredKey);
-        RedisUtils.removeHashEntry(APP_CACHE_KEY, expiredKey);
-        RedisUtils.removeHashEntry(NULL_CACHE_KEY, expiredKey);
+        l1Regions.remove(expiredKeys);
+        RedisUtils.removeHashEntries(registry.bucketFields(expiredKeys));
 
         // 应用程序中对应的Key从缓存中删除
-        APP_CACHE_KEY_MAP.remove(expiredKey);
-        log.info("删除已过期的cache key：{} ，剩余：{} ", expiredKey, APP_CACHE_KEY_MAP.size());
+        expiredKeys.forEach(this::unregisterCacheKey);
+        log.debug("删除已过期的cache key：{} 个，剩余：{} ", expiredKeys.size(), registry.size());
+    }
+
+    private static boolean startsWith(byte[] value, byte[] prefix) {
+        if (value == null || value.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (value[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
 }
@@ -0,0 +1,28 @@
+package com.boydguy.backend.dao.aspect;
+
+import lombok.Getter;
+
+/**
+ * 一级缓存Ehcache中存放的数据：查询结果以及数据变为陈旧数据的时间点
+ */
+@Getter
+public class DaoCacheEntry {
+    /**
+     * 一级缓存中存放的查询结果(json字符串或不可变快照)，null表示查询结果为null
+     */
+    private final Object value;
+    /**
+     * 数据变为陈旧数据的时间点，单位：毫秒；Long.MAX_VALUE表示不启用异步刷新
+     */
+    private final long freshUntil;
+
+    DaoCacheEntry(Object value, long freshUntil) {
+        this.value = value;
+        this.freshUntil = freshUntil;
+    }
+
+    public boolean isNegative() {
+        return value == null;
+    }
+
+}
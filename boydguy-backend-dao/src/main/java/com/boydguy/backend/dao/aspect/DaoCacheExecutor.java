@@ -0,0 +1,124 @@
+package com.boydguy.backend.dao.aspect;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存的后台线程池：陈旧数据的异步刷新单独使用一个有界线程池，异步写入二级缓存、清除被淘汰的cache key使用另一个，
+ * 布隆过滤器的构建(全表查询主键)使用单线程的线程池，后台写入的突发与耗时的构建都不会挤掉刷新任务；队列已满时放弃提交，由调用方决定返回陈旧数据或同步执行，放弃的次数注册为指标
+ */
+@Slf4j
+@Component
+public class DaoCacheExecutor implements MeterBinder, DisposableBean {
+
+    /**
+     * 每个实体类同一时刻最多提交一个构建任务
+     */
+    private static final int BUILD_QUEUE_CAPACITY = 64;
+
+    private final Pool refreshPool;
+    private final Pool backgroundPool;
+    private final Pool buildPool;
+
+    @Autowired
+    public DaoCacheExecutor(DaoCacheProperties properties) {
+        this.refreshPool = new Pool("refresh", properties.getRefreshThreads(), properties.getRefreshQueueCapacity());
+        this.backgroundPool = new Pool("background", properties.getBackgroundThreads(), properties.getBackgroundQueueCapacity());
+        this.buildPool = new Pool("build", 1, BUILD_QUEUE_CAPACITY);
+    }
+
+    /**
+     * 提交陈旧数据的异步刷新
+     *
+     * @return 线程池已满或已关闭时返回false，调用方继续返回陈旧数据
+     */
+    public boolean submit(Runnable task) {
+        return refreshPool.submit(task);
+    }
+
+    /**
+     * 提交异步写入二级缓存、清除被淘汰的cache key等后台任务
+     *
+     * @return 线程池已满或已关闭时返回false，调用方同步执行
+     */
+    public boolean submitBackground(Runnable task) {
+        return backgroundPool.submit(task);
+    }
+
+    /**
+     * 提交布隆过滤器的构建
+     *
+     * @return 线程池已满或已关闭时返回false，下次按主键查询时再提交
+     */
+    public boolean submitBuild(Runnable task) {
+        return buildPool.submit(task);
+    }
+
+    private List<Pool> pools() {
+        return Arrays.asList(refreshPool, backgroundPool, buildPool);
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        for (Pool pool : pools()) {
+            Gauge.builder("dao.cache.executor.queued", pool.executor, executor -> executor.getQueue().size())
+                    .description("缓存后台线程池中排队的任务数量")
+                    .tag("pool", pool.name)
+                    .register(registry);
+            FunctionCounter.builder("dao.cache.executor.rejected", pool.rejected, AtomicLong::get)
+                    .description("缓存后台线程池已满而放弃的任务数量")
+                    .tag("pool", pool.name)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pools().forEach(pool -> pool.executor.shutdown());
+    }
+
+    private static final class Pool {
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong rejected = new AtomicLong();
+
+        private Pool(String name, int threads, int queueCapacity) {
+            this.name = name;
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dao-cache-" + name + "-");
+            threadFactory.setDaemon(true);
+            int poolSize = Math.max(threads, 1);
+            this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)),
+                    threadFactory, new ThreadPoolExecutor.AbortPolicy());
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        private boolean submit(Runnable task) {
+            try {
+                executor.execute(task);
+                return true;
+            } catch (RejectedExecutionException ex) {
+                long count = rejected.incrementAndGet();
+                log.warn("缓存后台线程池{}已满，放弃本次提交，累计放弃 {} 次", name, count);
+                return false;
+            }
+        }
+    }
+
+}
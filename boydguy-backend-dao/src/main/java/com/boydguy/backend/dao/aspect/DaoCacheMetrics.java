@@ -0,0 +1,53 @@
+package com.boydguy.backend.dao.aspect;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按方法统计的缓存指标：指标注册在组合注册表中，本地的SimpleMeterRegistry用于dao-cache端点读取，
+ * 应用中存在MeterRegistry(如Actuator)时同时注册到该注册表
+ * 方法以明文描述作为method标签，标签的取值数量等于被缓存的方法数量
+ */
+@Component
+public class DaoCacheMetrics implements MeterBinder {
+
+    private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+    private final ConcurrentHashMap<String, MethodCacheMeters> metersMap = new ConcurrentHashMap<>();
+
+    public DaoCacheMetrics() {
+        meterRegistry.add(new SimpleMeterRegistry());
+    }
+
+    /**
+     * 获取方法的统计指标
+     *
+     * @param method 方法的明文描述
+     */
+    public MethodCacheMeters meters(String method) {
+        MethodCacheMeters meters = metersMap.get(method);
+        return meters != null ? meters : metersMap.computeIfAbsent(method, key -> new MethodCacheMeters(meterRegistry, key));
+    }
+
+    /**
+     * 全部方法当前的统计数据，按方法的明文描述排序
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        metersMap.forEach((method, meters) -> snapshot.put(method, meters.snapshot()));
+        return snapshot;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        meterRegistry.add(registry);
+    }
+
+}
@@ -0,0 +1,288 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.annotation.ApplyAppCache;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * DaoAspect缓存的全局配置，对应配置文件中boydguy.dao-cache前缀的配置项
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "boydguy.dao-cache")
+public class DaoCacheProperties {
+
+    /**
+     * 一级缓存Ehcache中数据的存放方式
+     */
+    private L1ValueMode l1ValueMode = L1ValueMode.COPY;
+
+    /**
+     * 一级缓存的实现：ehcache(Ehcache 2，LRU)或tinylfu(内置的W-TinyLFU，按序列化后的字节数计算容量)
+     */
+    private String l1Provider = "ehcache";
+
+    /**
+     * 每个方法的一级缓存分区占用堆内存的默认上限，例如：16M；可以通过@ApplyAppCache(ehcacheMaxBytes)单独设置
+     */
+    private String l1RegionMaxBytes = "16M";
+
+    /**
+     * 缓存未命中时，是否合并同一个cache key的并发查询
+     */
+    private boolean coalesceEnabled = true;
+
+    /**
+     * 等待进行中查询的最长时间，超时后自行查询数据库，单位：毫秒
+     */
+    private long coalesceWaitMillis = 3000;
+
+    /**
+     * 缓存未命中时，是否通过Redis分布式租约保证只有一个应用节点查询数据库
+     */
+    private boolean leaseEnabled = false;
+
+    /**
+     * 租约的过期时间，持有租约的节点异常退出时租约自动失效，单位：毫秒
+     */
+    private long leaseTtlMillis = 5000;
+
+    /**
+     * 未拿到租约的节点等待二级缓存数据的最长时间，超时后直接查询数据库，单位：毫秒
+     */
+    private long leaseWaitMillis = 2000;
+
+    /**
+     * 未拿到租约的节点轮询二级缓存的间隔，单位：毫秒
+     */
+    private long leasePollMillis = 50;
+
+    /**
+     * 陈旧数据异步刷新线程池的线程数
+     */
+    private int refreshThreads = 2;
+
+    /**
+     * 陈旧数据异步刷新线程池的队列容量，队列已满时放弃刷新
+     */
+    private int refreshQueueCapacity = 256;
+
+    /**
+     * 异步写入二级缓存、清除被淘汰的cache key等后台任务线程池的线程数，与异步刷新的线程池分开
+     */
+    private int backgroundThreads = 2;
+
+    /**
+     * 后台任务线程池的队列容量，队列已满时调用方同步执行
+     */
+    private int backgroundQueueCapacity = 1024;
+
+    /**
+     * 过期时间的随机抖动比例，避免同一时间加载的数据同时过期(缓存雪崩)
+     */
+    private double jitterRatio = 0.1;
+
+    /**
+     * 一级缓存比二级缓存至少提前过期的时间，单位：秒
+     */
+    private int tierStaggerSeconds = 1;
+
+    /**
+     * 滑动过期时数据的最长保留时间，为二级缓存过期时间的倍数
+     */
+    private int slidingMaxLifetimeFactor = 3;
+
+    /**
+     * 一级缓存堆外层占用直接内存的上限，例如：256M；0表示不启用
+     */
+    private String offHeapMaxBytes = "0";
+
+    /**
+     * 堆外层每个直接内存段的大小，超过该大小的数据不进入堆外层
+     */
+    private String offHeapSlabBytes = "4M";
+
+    /**
+     * 序列化后达到该大小的数据存放在堆外层，单位：字节
+     */
+    private int offHeapThresholdBytes = 65536;
+
+    /**
+     * 堆外层的数据命中该次数后提升到堆内
+     */
+    private int offHeapPromoteHits = 3;
+
+    /**
+     * 是否在应用正常关闭时保存一级缓存快照，重启后从快照中恢复一级缓存
+     */
+    private boolean snapshotEnabled = false;
+
+    /**
+     * 一级缓存快照文件的路径，为空时使用java.io.tmpdir下的dao-cache-l1.snapshot；同一台机器上的多个应用节点需要使用不同的路径
+     */
+    private String snapshotPath = "";
+
+    /**
+     * 一级缓存快照文件的大小上限，例如：256M；超过的数据不保存
+     */
+    private String snapshotMaxBytes = "256M";
+
+    /**
+     * 快照保存后超过该时间才启动时不再使用快照，单位：秒
+     */
+    private int snapshotMaxAgeSeconds = 600;
+
+    /**
+     * 是否在启动时从二级缓存预热访问最频繁的数据；开启后每个节点定期把一级缓存中命中最多的cache key登记到Redis
+     */
+    private boolean warmupEnabled = false;
+
+    /**
+     * 每个节点登记以及启动时预热的cache key数量
+     */
+    private int warmupTopKeys = 2000;
+
+    /**
+     * 预热时每次MGET读取的cache key数量
+     */
+    private int warmupBatchSize = 200;
+
+    /**
+     * 并行执行MGET的线程数
+     */
+    private int warmupThreads = 4;
+
+    /**
+     * 预热数据占用堆内存的上限，例如：64M
+     */
+    private String warmupMaxBytes = "64M";
+
+    /**
+     * 完成预热的cache key达到该比例后，健康检查报告节点已就绪
+     */
+    private double warmupReadyFraction = 0.9;
+
+    /**
+     * 预热的最长时间，超过后无论是否完成，健康检查都报告节点已就绪，单位：毫秒
+     */
+    private long warmupTimeoutMillis = 30000;
+
+    /**
+     * 是否使用主键布隆过滤器拦截不存在的主键(selectByPrimaryKey、selectByIds)
+     */
+    private boolean bloomEnabled = false;
+
+    /**
+     * 布隆过滤器预计的主键数量，每个实体类单独计算
+     */
+    private long bloomExpectedInsertions = 1000000;
+
+    /**
+     * 布隆过滤器的误判率
+     */
+    private double bloomFpp = 0.01;
+
+    /**
+     * 查询结果为null时，在一级缓存中保存的时间，单位：秒；0表示一级缓存不保存null
+     */
+    private int negativeEhcacheTimeout = 10;
+
+    /**
+     * 查询数据库后是否在后台线程中写入二级缓存；开启后写入可能晚于并发的缓存清除，默认关闭
+     */
+    private boolean populateAsync = false;
+
+    /**
+     * 倒排索引中单个查询结果按主键登记的最大实体数量，超过时只登记到实体级别的索引
+     */
+    private int indexMaxEntities = 1000;
+
+    /**
+     * 实体的数据版本号在本地缓存的时间，其它节点修改数据后最多在该时间内仍使用旧版本号，单位：毫秒
+     */
+    private long generationLocalMillis = 1000;
+
+    /**
+     * 批量清除cache key时，每批清除的数量
+     */
+    private int evictBatchSize = 500;
+
+    /**
+     * Redis key过期事件缓冲队列的容量，队列已满时丢弃事件
+     */
+    private int expiryQueueCapacity = 10000;
+
+    /**
+     * 启动后在后台加载cache key登记时，每页读取的数量
+     */
+    private int registryLoadBatchSize = 1000;
+
+    /**
+     * 每个应用节点登记cache key的最大数量，超过时淘汰最早过期的登记并清除对应的缓存
+     */
+    private int registryMaxEntries = 200000;
+
+    /**
+     * 登记cache key时保存的参数的最大长度，超过的部分被截断，单位：字节
+     */
+    private int registryMaxArgBytes = 256;
+
+    /**
+     * Redis中登记cache key的哈希的分桶数量；修改后需要同时重启全部应用节点，旧分桶中的登记不再被加载
+     */
+    private int registryBuckets = 64;
+
+    /**
+     * 二级缓存数据默认的序列化格式：json或smile；切换为smile前所有应用节点都需要升级到能读取smile的版本
+     */
+    private ApplyAppCache.ValueFormat valueFormat = ApplyAppCache.ValueFormat.JSON;
+
+    /**
+     * 二级缓存数据超过该大小时压缩后写入Redis，0表示不压缩，单位：字节
+     */
+    private int compressThresholdBytes = 16384;
+
+    /**
+     * 压缩级别：1(最快)~9(压缩率最高)
+     */
+    private int compressLevel = 1;
+
+    /**
+     * 是否在节点之间同步一级缓存的清除
+     */
+    private boolean invalidationEnabled = true;
+
+    /**
+     * 同步一级缓存清除的通道：redis(发布订阅)或rabbit(扇形交换机)
+     */
+    private String invalidationTransport = "redis";
+
+    /**
+     * 同步一级缓存清除使用的Redis频道或RabbitMQ交换机名称
+     */
+    private String invalidationChannel = "daoCacheInvalidation";
+
+    /**
+     * 合并清除消息的时间间隔，单位：毫秒
+     */
+    private long invalidationFlushMillis = 5;
+
+    public enum L1ValueMode {
+        /**
+         * 存放序列化后的数据(json或smile)，每次命中都反序列化一次
+         */
+        JSON,
+        /**
+         * 存放反序列化后的不可变快照，命中时直接返回快照
+         */
+        SNAPSHOT,
+        /**
+         * 存放反序列化后的不可变快照，命中时返回集合的浅拷贝
+         */
+        COPY
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.RedisUtils;
+import com.github.pagehelper.PageInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体主键到cache key的倒排索引：缓存数据时登记查询结果中包含的实体主键，修改数据时只清除包含被修改实体的cache key
+ * 本地索引只包含当前节点写入的cache key，Redis中的索引(Set集合)包含所有节点写入的cache key
+ * 查询结果中的实体数量超过indexMaxEntities时，登记到实体级别的索引，该实体的任何修改都会清除它
+ */
+@Component
+public class EntityCacheKeyIndex {
+
+    static final String INDEX_KEY_PREFIX = "daoCacheIndex:";
+    private static final String ALL_ENTITIES = "*";
+
+    /**
+     * 索引key -> cache key集合
+     */
+    private final ConcurrentHashMap<String, Set<String>> indexMap = new ConcurrentHashMap<>();
+    /**
+     * cache key -> 索引key集合，用于cache key被清除或过期时清理本地索引
+     */
+    private final ConcurrentHashMap<String, List<String>> reverseMap = new ConcurrentHashMap<>();
+    private DaoCacheProperties properties;
+
+    @Autowired
+    public EntityCacheKeyIndex(DaoCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 计算查询结果(T、List、PageInfo)中包含的实体对应的索引key
+     */
+    public List<String> indexKeysOf(Object result) {
+        Collection<?> entities;
+        if (result instanceof PageInfo) {
+            entities = ((PageInfo<?>) result).getList();
+        } else if (result instanceof Collection) {
+            entities = (Collection<?>) result;
+        } else {
+            entities = Collections.singletonList(result);
+        }
+        if (entities == null || entities.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<String> indexKeys = new LinkedHashSet<>();
+        Set<String> entityNames = new LinkedHashSet<>();
+        for (Object entity : entities) {
+            String entityName = entity == null ? null : PrimaryKeys.entityName(entity.getClass());
+            if (entityName == null) {
+                continue;
+            }
+            entityNames.add(entityName);
+            Object primaryKey = PrimaryKeys.of(entity);
+            indexKeys.add(indexKey(entityName, primaryKey == null ? ALL_ENTITIES : primaryKey));
+        }
+        if (indexKeys.size() > properties.getIndexMaxEntities()) {
+            List<String> allEntitiesKeys = new ArrayList<>();
+            entityNames.forEach(entityName -> allEntitiesKeys.add(indexKey(entityName, ALL_ENTITIES)));
+            return allEntitiesKeys;
+        }
+        return new ArrayList<>(indexKeys);
+    }
+
+    /**
+     * 在本地索引中登记cache key，Redis中的索引与缓存数据在同一个管道中写入
+     */
+    public void register(String cacheKey, List<String> indexKeys) {
+        if (indexKeys.isEmpty()) {
+            return;
+        }
+        for (String indexKey : indexKeys) {
+            indexMap.computeIfAbsent(indexKey, key -> ConcurrentHashMap.newKeySet()).add(cacheKey);
+        }
+        reverseMap.put(cacheKey, indexKeys);
+    }
+
+    /**
+     * 按主键查询时，请求的主键对应的索引key：结果中不存在的主键同样登记，新增该主键的数据时清除
+     */
+    public List<String> primaryKeyIndexKeys(String entityName, Collection<?> primaryKeys) {
+        List<String> indexKeys = new ArrayList<>();
+        for (Object primaryKey : primaryKeys) {
+            indexKeys.add(indexKey(entityName, primaryKey));
+        }
+        return indexKeys;
+    }
+
+    /**
+     * 在Redis索引中登记缓存到二级缓存的null结果：空结果的过期时间较短，不缩短索引中其它cache key的过期时间；
+     * 新增数据的节点通过Redis索引找到所有节点中的空结果
+     */
+    public void registerNegative(String cacheKey, List<String> indexKeys, long seconds) {
+        RedisUtils.putSetMember(indexKeys, cacheKey, seconds);
+    }
+
+    /**
+     * 查找包含指定实体主键的cache key：本地索引与Redis索引的并集，以及实体级别的索引
+     */
+    public Set<String> lookup(String entityName, Collection<?> primaryKeys) {
+        return lookup(indexKeysOf(entityName, primaryKeys));
+    }
+
+    /**
+     * 查找指定索引key中的cache key：本地索引与Redis索引的并集
+     */
+    public Set<String> lookup(List<String> indexKeys) {
+        Set<String> cacheKeys = new HashSet<>(RedisUtils.getSetsUnion(indexKeys));
+        for (String indexKey : indexKeys) {
+            Set<String> localCacheKeys = indexMap.get(indexKey);
+            if (localCacheKeys != null) {
+                cacheKeys.addAll(localCacheKeys);
+            }
+        }
+        return cacheKeys;
+    }
+
+    /**
+     * 删除指定实体主键的索引，索引中的cache key已被清除
+     */
+    public void removeIndex(String entityName, Collection<?> primaryKeys) {
+        removeIndex(indexKeysOf(entityName, primaryKeys));
+    }
+
+    /**
+     * 删除指定的索引key，索引中的cache key已被清除
+     */
+    public void removeIndex(List<String> indexKeys) {
+        indexKeys.forEach(indexMap::remove);
+        RedisUtils.removeCache(indexKeys);
+    }
+
+    /**
+     * cache key被清除或过期时，清理本地索引
+     */
+    public void remove(String cacheKey) {
+        List<String> indexKeys = reverseMap.remove(cacheKey);
+        if (indexKeys == null) {
+            return;
+        }
+        for (String indexKey : indexKeys) {
+            indexMap.computeIfPresent(indexKey, (key, cacheKeys) -> {
+                cacheKeys.remove(cacheKey);
+                return cacheKeys.isEmpty() ? null : cacheKeys;
+            });
+        }
+    }
+
+    private List<String> indexKeysOf(String entityName, Collection<?> primaryKeys) {
+        List<String> indexKeys = new ArrayList<>();
+        indexKeys.add(indexKey(entityName, ALL_ENTITIES));
+        indexKeys.addAll(primaryKeyIndexKeys(entityName, primaryKeys));
+        return indexKeys;
+    }
+
+    private String indexKey(String entityName, Object primaryKey) {
+        return INDEX_KEY_PREFIX + entityName + ":" + primaryKey;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.ComUtils;
+import com.boydguy.generate.utils.RedisUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体的数据版本号：保存在Redis中，本地缓存generationLocalMillis毫秒
+ * 查询类方法(列表、分页、总数)的cache key中包含数据版本号，通过BaseDao修改数据时版本号加1，
+ * 旧版本的cache key不再被访问，等待过期后自动清除
+ * 其它节点修改数据后，当前节点最多在generationLocalMillis毫秒内仍使用旧版本号
+ */
+@Slf4j
+@Component
+public class EntityGenerations {
+
+    static final String GENERATION_KEY_PREFIX = "daoCacheGen:";
+
+    private final ConcurrentHashMap<String, Generation> generationMap = new ConcurrentHashMap<>();
+    private DaoCacheProperties properties;
+
+    @Autowired
+    public EntityGenerations(DaoCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 实体的版本号名称：与倒排索引使用相同的实体名称，没有唯一的@Id主键时使用类名
+     */
+    public static String generationName(Class<?> entityClass) {
+        if (entityClass == null) {
+            return null;
+        }
+        String entityName = PrimaryKeys.entityName(entityClass);
+        return entityName == null ? entityClass.getName() : entityName;
+    }
+
+    /**
+     * 获取实体当前的数据版本号
+     */
+    public long current(String generationName) {
+        long now = System.currentTimeMillis();
+        Generation generation = generationMap.get(generationName);
+        if (generation != null && now - generation.loadedAt < properties.getGenerationLocalMillis()) {
+            return generation.value;
+        }
+        try {
+            String redisValue = RedisUtils.getValue(GENERATION_KEY_PREFIX + generationName);
+            return update(generationName, redisValue == null ? 0 : Long.parseLong(redisValue), now);
+        } catch (Exception ex) {
+            log.error(ComUtils.printException(ex));
+            return generation == null ? 0 : generation.value;
+        }
+    }
+
+    /**
+     * 实体的数据被修改后，版本号加1
+     */
+    public void bump(String generationName) {
+        Long value = RedisUtils.increment(GENERATION_KEY_PREFIX + generationName);
+        if (value != null) {
+            update(generationName, value, System.currentTimeMillis());
+        }
+        log.info("实体 {} 的数据版本号已更新为：{}", generationName, value);
+    }
+
+    /**
+     * 其它节点更新了版本号：丢弃本地缓存的版本号，下次使用时从Redis中读取
+     */
+    public void expire(String generationName) {
+        generationMap.remove(generationName);
+    }
+
+    /**
+     * 版本号只增不减：并发读取到的旧版本号不能覆盖刚刚增加的版本号
+     */
+    private long update(String generationName, long value, long now) {
+        return generationMap.merge(generationName, new Generation(value, now),
+                (oldValue, newValue) -> newValue.value >= oldValue.value ? newValue : new Generation(oldValue.value, now)).value;
+    }
+
+    private static class Generation {
+        private final long value;
+        private final long loadedAt;
+
+        private Generation(long value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+}
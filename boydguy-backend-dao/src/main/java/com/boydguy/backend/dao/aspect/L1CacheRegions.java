@@ -0,0 +1,233 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.cache.L1Cache;
+import com.boydguy.generate.cache.L1CacheEntry;
+import com.boydguy.generate.cache.L1CacheProvider;
+import com.boydguy.generate.cache.MappedSnapshotFile;
+import com.boydguy.generate.cache.OffHeapSlabStore;
+import com.boydguy.generate.utils.ComUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一级缓存的分区：每个被代理方法使用单独的分区，按堆内存占用限制容量，分区的默认过期时间与方法的注解一致
+ * 大的列表、分页查询只淘汰自己分区中的数据，不会挤出热点的主键查询
+ * 分区由boydguy.dao-cache.l1-provider选择的L1CacheProvider创建；应用正常关闭时分区中的数据写入L1WarmSnapshot
+ */
+@Slf4j
+@Component
+public class L1CacheRegions implements MeterBinder {
+
+    static final String REGION_PREFIX = "daoAspectCache:";
+
+    private final DaoCacheProperties properties;
+    private final CacheKeyRegistry registry;
+    private final L1CacheProvider provider;
+    private final L1OffHeapTier offHeapTier;
+    private final L1WarmSnapshot warmSnapshot;
+    private final L1Warmup warmup;
+    private final L2ValueCodec valueCodec;
+    /**
+     * 方法ID -> 分区
+     */
+    private final ConcurrentHashMap<Long, L1Cache> regionMap = new ConcurrentHashMap<>();
+    /**
+     * 方法ID -> 方法的描述，保存快照时按方法的格式序列化分区中的数据
+     */
+    private final ConcurrentHashMap<Long, MethodCacheDescriptor> descriptorMap = new ConcurrentHashMap<>();
+    private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+
+    @Autowired
+    public L1CacheRegions(DaoCacheProperties properties, CacheKeyRegistry registry, List<L1CacheProvider> providers,
+                          L1OffHeapTier offHeapTier, L1WarmSnapshot warmSnapshot, L1Warmup warmup,
+                          L2ValueCodec valueCodec) {
+        this.properties = properties;
+        this.registry = registry;
+        this.offHeapTier = offHeapTier;
+        this.warmSnapshot = warmSnapshot;
+        this.warmup = warmup;
+        warmup.onHotKeys(this::hottestKeys);
+        this.valueCodec = valueCodec;
+        this.provider = providers.stream()
+                .filter(item -> item.getName().equalsIgnoreCase(properties.getL1Provider()))
+                .findFirst()
+                .orElseGet(() -> {
+                    log.warn("未找到一级缓存实现 {}，使用ehcache", properties.getL1Provider());
+                    return providers.stream().filter(item -> "ehcache".equals(item.getName())).findFirst()
+                            .orElseThrow(() -> new IllegalStateException("缺少一级缓存实现ehcache"));
+                });
+    }
+
+    /**
+     * 获取方法的一级缓存分区，不存在时创建
+     */
+    public L1Cache regionOf(MethodCacheDescriptor descriptor) {
+        L1Cache region = regionMap.get(descriptor.getMethodId());
+        if (region != null) {
+            return region;
+        }
+        return regionMap.computeIfAbsent(descriptor.getMethodId(), methodId -> createRegion(descriptor));
+    }
+
+    private L1Cache createRegion(MethodCacheDescriptor descriptor) {
+        descriptorMap.put(descriptor.getMethodId(), descriptor);
+        String maxBytes = descriptor.getApplyAppCache().ehcacheMaxBytes();
+        if (!StringUtils.hasText(maxBytes)) {
+            maxBytes = properties.getL1RegionMaxBytes();
+        }
+        L1Cache region = provider.getOrAddCache(REGION_PREFIX + Long.toHexString(descriptor.getMethodId()),
+                descriptor.getEhcacheHardTimeout(), maxBytes);
+        // 两种实现使用相同的指标，命中率 = hits / (hits + misses)
+        Tags tags = Tags.of("method", registry.method(descriptor).getDescription(), "provider", provider.getName());
+        Gauge.builder("dao.cache.l1.entries", region, L1Cache::size)
+                .description("一级缓存分区中的数据数量")
+                .tags(tags)
+                .register(meterRegistry);
+        Gauge.builder("dao.cache.l1.bytes", region, L1Cache::getWeightedSize)
+                .description("一级缓存分区占用的内存")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(meterRegistry);
+        FunctionCounter.builder("dao.cache.l1.hits", region, L1Cache::getHitCount)
+                .description("一级缓存分区的命中次数")
+                .tags(tags)
+                .register(meterRegistry);
+        FunctionCounter.builder("dao.cache.l1.misses", region, L1Cache::getMissCount)
+                .description("一级缓存分区的未命中次数")
+                .tags(tags)
+                .register(meterRegistry);
+        FunctionCounter.builder("dao.cache.l1.evictions", region, L1Cache::getEvictionCount)
+                .description("一级缓存分区因容量不足淘汰的次数")
+                .tags(tags)
+                .register(meterRegistry);
+        return region;
+    }
+
+    /**
+     * 从一级缓存中删除cache key：按登记的方法找到所在的分区，未登记的cache key从所有分区中删除；同时删除堆外层、快照与预热暂存的数据
+     * 必须在删除登记之前调用
+     */
+    public void remove(Collection<String> cacheKeys) {
+        offHeapTier.remove(cacheKeys);
+        warmSnapshot.remove(cacheKeys);
+        warmup.remove(cacheKeys);
+        Map<L1Cache, List<String>> regionKeys = new HashMap<>();
+        List<String> unknownKeys = new ArrayList<>();
+        for (String cacheKey : cacheKeys) {
+            RegisteredMethod method = registry.methodOf(cacheKey);
+            L1Cache region = method == null ? null : regionMap.get(method.getMethodId());
+            if (region == null) {
+                unknownKeys.add(cacheKey);
+            } else {
+                regionKeys.computeIfAbsent(region, key -> new ArrayList<>()).add(cacheKey);
+            }
+        }
+        regionKeys.forEach(L1Cache::removeAll);
+        if (!unknownKeys.isEmpty()) {
+            regionMap.values().forEach(region -> region.removeAll(unknownKeys));
+        }
+    }
+
+    /**
+     * 应用正常关闭时保存一级缓存快照：堆内分区与堆外层中剩余过期时间不少于1秒的数据，null结果不保存
+     * 在Spring容器销毁Bean之前执行，此时Redis连接仍然可用
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void saveSnapshot() {
+        if (!warmSnapshot.isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<MappedSnapshotFile.Entry> entries = new ArrayList<>();
+        regionMap.forEach((methodId, region) -> {
+            MethodCacheDescriptor descriptor = descriptorMap.get(methodId);
+            for (Object key : region.getKeys()) {
+                L1CacheEntry l1Entry = region.getQuiet(key);
+                if (l1Entry == null || l1Entry.getExpirationTime() - now < 1000) {
+                    continue;
+                }
+                DaoCacheEntry entry = (DaoCacheEntry) l1Entry.getValue();
+                if (entry.isNegative()) {
+                    continue;
+                }
+                try {
+                    byte[] value = properties.getL1ValueMode() == DaoCacheProperties.L1ValueMode.JSON
+                            ? (byte[]) entry.getValue()
+                            : valueCodec.serialize(entry.getValue(), descriptor);
+                    entries.add(new MappedSnapshotFile.Entry((String) key, value, l1Entry.getExpirationTime(),
+                            entry.getFreshUntil(), 0));
+                } catch (IOException ex) {
+                    log.warn("序列化一级缓存数据时发生异常 cache key：{}，{}", key, ComUtils.printException(ex));
+                }
+            }
+        });
+        for (String cacheKey : offHeapTier.keys()) {
+            OffHeapSlabStore.Entry offHeapEntry = offHeapTier.get(cacheKey);
+            if (offHeapEntry != null && offHeapEntry.getExpireAt() - now >= 1000) {
+                entries.add(new MappedSnapshotFile.Entry(cacheKey, offHeapEntry.getValue(), offHeapEntry.getExpireAt(),
+                        offHeapEntry.getAttachment(), 0));
+            }
+        }
+        warmSnapshot.save(entries);
+    }
+
+    /**
+     * 所有分区中命中率最高的cache key，命中率 = 命中次数 / 写入后经过的分钟数(不足1分钟按1分钟计算)
+     *
+     * @return cache key -> 命中率，单位：次/分钟
+     */
+    public Map<String, Double> hottestKeys(int limit) {
+        long now = System.currentTimeMillis();
+        PriorityQueue<Map.Entry<String, Double>> hottest = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (L1Cache region : regionMap.values()) {
+            for (Object key : region.getKeys()) {
+                L1CacheEntry l1Entry = region.getQuiet(key);
+                if (l1Entry == null || l1Entry.getHitCount() == 0 || ((DaoCacheEntry) l1Entry.getValue()).isNegative()) {
+                    continue;
+                }
+                double hitsPerMinute = l1Entry.getHitCount() * 60000.0 / Math.max(now - l1Entry.getCreationTime(), 60000);
+                if (hottest.size() < limit) {
+                    hottest.add(new AbstractMap.SimpleImmutableEntry<>((String) key, hitsPerMinute));
+                } else if (hottest.peek().getValue() < hitsPerMinute) {
+                    hottest.poll();
+                    hottest.add(new AbstractMap.SimpleImmutableEntry<>((String) key, hitsPerMinute));
+                }
+            }
+        }
+        Map<String, Double> hotKeys = new HashMap<>();
+        hottest.forEach(entry -> hotKeys.put(entry.getKey(), entry.getValue()));
+        return hotKeys;
+    }
+
+    public String getProviderName() {
+        return provider.getName();
+    }
+
+    public int size() {
+        return regionMap.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        meterRegistry.add(registry);
+        Gauge.builder("dao.cache.l1.regions", regionMap, Map::size)
+                .description("一级缓存分区的数量")
+                .register(registry);
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.cache.OffHeapSlabStore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.sf.ehcache.config.MemoryUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一级缓存的堆外层：序列化后超过offHeapThresholdBytes的数据存放在直接内存中，不进入堆内的一级缓存分区
+ * 命中时反序列化后返回，命中次数达到offHeapPromoteHits时提升到堆内；boydguy.dao-cache.off-heap-max-bytes为0时不启用
+ */
+@Component
+public class L1OffHeapTier implements MeterBinder {
+
+    private final DaoCacheProperties properties;
+    private final OffHeapSlabStore store;
+    /**
+     * 提升到堆内的次数
+     */
+    private final AtomicLong promotions = new AtomicLong();
+
+    @Autowired
+    public L1OffHeapTier(DaoCacheProperties properties) {
+        this.properties = properties;
+        long maxBytes = MemoryUnit.parseSizeInBytes(properties.getOffHeapMaxBytes());
+        this.store = maxBytes > 0
+                ? new OffHeapSlabStore(maxBytes, (int) MemoryUnit.parseSizeInBytes(properties.getOffHeapSlabBytes()))
+                : null;
+    }
+
+    public boolean isEnabled() {
+        return store != null;
+    }
+
+    /**
+     * 数据是否存放在堆外
+     */
+    public boolean accepts(int valueBytes) {
+        return store != null && valueBytes >= properties.getOffHeapThresholdBytes() && valueBytes <= store.getSlabBytes();
+    }
+
+    /**
+     * 存放序列化后的数据
+     *
+     * @param freshUntil 数据变为陈旧数据的时间点，单位：毫秒
+     */
+    public void put(String cacheKey, byte[] value, int timeToLiveSeconds, long freshUntil) {
+        store.put(cacheKey, value, System.currentTimeMillis() + timeToLiveSeconds * 1000L, freshUntil);
+    }
+
+    /**
+     * 读取数据，未启用或没有数据时返回null
+     */
+    public OffHeapSlabStore.Entry get(String cacheKey) {
+        return store == null ? null : store.get(cacheKey);
+    }
+
+    /**
+     * 读取数据变为陈旧数据的时间点，不复制数据
+     */
+    public OffHeapSlabStore.Entry peek(String cacheKey) {
+        return store == null ? null : store.peek(cacheKey);
+    }
+
+    /**
+     * 命中次数达到阈值的数据提升到堆内
+     */
+    public boolean shouldPromote(OffHeapSlabStore.Entry entry) {
+        return entry.getHits() >= properties.getOffHeapPromoteHits();
+    }
+
+    /**
+     * 数据已提升到堆内，删除堆外的数据
+     */
+    public void promoted(String cacheKey) {
+        store.remove(cacheKey);
+        promotions.incrementAndGet();
+    }
+
+    /**
+     * 堆外层中所有数据的cache key，未启用时返回空列表
+     */
+    public List<String> keys() {
+        return store == null ? Collections.emptyList() : store.keys();
+    }
+
+    public void remove(String cacheKey) {
+        if (store != null) {
+            store.remove(cacheKey);
+        }
+    }
+
+    public void remove(Collection<String> cacheKeys) {
+        if (store != null) {
+            store.removeAll(cacheKeys);
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (store == null) {
+            return;
+        }
+        Gauge.builder("dao.cache.offheap.entries", store, OffHeapSlabStore::size)
+                .description("堆外缓存中的数据数量")
+                .register(registry);
+        Gauge.builder("dao.cache.offheap.used", store, OffHeapSlabStore::getUsedBytes)
+                .description("堆外缓存中有效数据占用的直接内存")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("dao.cache.offheap.allocated", store, OffHeapSlabStore::getAllocatedBytes)
+                .description("堆外缓存已分配的直接内存")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.offheap.hits", store, OffHeapSlabStore::getHitCount)
+                .description("堆外缓存的命中次数")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.offheap.misses", store, OffHeapSlabStore::getMissCount)
+                .description("堆外缓存的未命中次数")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.offheap.evictions", store, OffHeapSlabStore::getEvictionCount)
+                .description("堆外缓存因直接内存段被回收而淘汰的次数")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.offheap.promotions", promotions, AtomicLong::get)
+                .description("堆外缓存的数据提升到堆内的次数")
+                .register(registry);
+    }
+
+}
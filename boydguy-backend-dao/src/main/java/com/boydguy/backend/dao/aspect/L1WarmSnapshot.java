@@ -0,0 +1,253 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.cache.MappedSnapshotFile;
+import com.boydguy.generate.utils.ComUtils;
+import com.boydguy.generate.utils.RedisUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.ehcache.config.MemoryUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一级缓存的重启快照：应用正常关闭时把一级缓存(堆内与堆外)中的有效数据连同剩余的过期时间写入内存映射文件，
+ * 启动后在后台映射文件并建立索引，数据在一级缓存未命中时才从映射中读取，放回一级缓存后从快照中删除
+ * 关闭时记录每个cache key在二级缓存中的过期时间点，启动时重新读取并比较：停机期间被清除或被重新写入的数据不再使用
+ */
+@Slf4j
+@Component
+public class L1WarmSnapshot implements MeterBinder {
+
+    private static final String DEFAULT_FILE_NAME = "dao-cache-l1.snapshot";
+    /**
+     * 比较二级缓存过期时间点时允许的误差，单位：毫秒
+     */
+    private static final long TAG_SLACK_MILLIS = 2000;
+    /**
+     * 一次管道往返中读取过期时间的cache key数量
+     */
+    private static final int EXPIRE_BATCH_SIZE = 1000;
+
+    private final DaoCacheProperties properties;
+    private final AtomicBoolean saved = new AtomicBoolean();
+    /**
+     * 启动时映射的快照，数据全部取出或删除后释放
+     */
+    private volatile MappedSnapshotFile snapshot;
+    /**
+     * 快照中的数据是否已经校验完成，校验完成前不使用快照
+     */
+    private volatile boolean ready;
+    /**
+     * 从快照中恢复的数据数量
+     */
+    private final AtomicLong restored = new AtomicLong();
+    /**
+     * 校验时因二级缓存已被清除或重新写入而丢弃的数据数量
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Autowired
+    public L1WarmSnapshot(DaoCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isSnapshotEnabled();
+    }
+
+    private Path path() {
+        return StringUtils.hasText(properties.getSnapshotPath())
+                ? Paths.get(properties.getSnapshotPath())
+                : Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_FILE_NAME);
+    }
+
+    /**
+     * 保存快照：先在一次管道往返中读取二级缓存的过期时间，二级缓存中已经没有的数据不保存
+     *
+     * @param entries 一级缓存中的数据，tag由该方法填写
+     */
+    public void save(List<MappedSnapshotFile.Entry> entries) {
+        if (!isEnabled() || !saved.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            List<MappedSnapshotFile.Entry> tagged = new ArrayList<>(entries.size());
+            for (int from = 0; from < entries.size(); from += EXPIRE_BATCH_SIZE) {
+                List<MappedSnapshotFile.Entry> batch = entries.subList(from, Math.min(from + EXPIRE_BATCH_SIZE, entries.size()));
+                List<String> cacheKeys = new ArrayList<>(batch.size());
+                batch.forEach(entry -> cacheKeys.add(entry.getKey()));
+                List<Long> expires = RedisUtils.getExpires(cacheKeys);
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < batch.size(); i++) {
+                    long redisExpireMillis = expires.get(i);
+                    if (redisExpireMillis == -2) {
+                        continue;
+                    }
+                    MappedSnapshotFile.Entry entry = batch.get(i);
+                    tagged.add(new MappedSnapshotFile.Entry(entry.getKey(), entry.getValue(), entry.getExpireAt(),
+                            entry.getAttachment(), tagOf(redisExpireMillis, now)));
+                }
+            }
+            Path path = path();
+            int written = MappedSnapshotFile.write(path, tagged,
+                    MemoryUnit.parseSizeInBytes(properties.getSnapshotMaxBytes()));
+            log.info("已保存一级缓存快照 {} 条，耗时：{}ms，文件：{}", written, System.currentTimeMillis() - start, path);
+        } catch (Exception ex) {
+            log.error("保存一级缓存快照时发生异常：{}", ComUtils.printException(ex));
+        }
+    }
+
+    /**
+     * 应用启动完成后，在后台线程中映射快照文件并校验，不阻塞Spring容器的启动
+     * 映射后立即删除文件，异常退出后再次启动不会使用同一个快照
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Path path = path();
+        if (!isEnabled() || !Files.exists(path)) {
+            return;
+        }
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dao-cache-snapshot-");
+        threadFactory.setDaemon(true);
+        threadFactory.newThread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                MappedSnapshotFile mapped = MappedSnapshotFile.open(path);
+                Files.delete(path);
+                if (start - mapped.getCreatedAt() > properties.getSnapshotMaxAgeSeconds() * 1000L) {
+                    log.info("一级缓存快照保存于{}秒前，超过了{}秒，不再使用", (start - mapped.getCreatedAt()) / 1000,
+                            properties.getSnapshotMaxAgeSeconds());
+                    return;
+                }
+                // 先发布快照再校验，校验期间的清除也会删除快照中的数据
+                snapshot = mapped;
+                validate(mapped);
+                ready = true;
+                log.info("已加载一级缓存快照 {} 条，丢弃 {} 条，耗时：{}ms", mapped.size(), dropped.get(),
+                        System.currentTimeMillis() - start);
+                releaseIfEmpty(mapped);
+            } catch (Exception ex) {
+                snapshot = null;
+                log.error("加载一级缓存快照时发生异常：{}", ComUtils.printException(ex));
+            }
+        }).start();
+    }
+
+    /**
+     * 二级缓存的过期时间点与保存快照时不一致的数据，说明停机期间被清除、被重新写入或被延长了过期时间，不再使用
+     */
+    private void validate(MappedSnapshotFile mapped) {
+        List<String> cacheKeys = mapped.keys();
+        for (int from = 0; from < cacheKeys.size(); from += EXPIRE_BATCH_SIZE) {
+            List<String> batch = cacheKeys.subList(from, Math.min(from + EXPIRE_BATCH_SIZE, cacheKeys.size()));
+            List<Long> expires = RedisUtils.getExpires(batch);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < batch.size(); i++) {
+                MappedSnapshotFile.Entry entry = mapped.peek(batch.get(i));
+                if (entry == null) {
+                    continue;
+                }
+                if (!isTagValid(entry.getTag(), expires.get(i), now)) {
+                    mapped.remove(entry.getKey());
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 保存快照时的标记：二级缓存过期的时间点，永不过期时为Long.MAX_VALUE
+     *
+     * @param redisExpireMillis 二级缓存剩余的过期时间(PTTL)，单位：毫秒；-1表示永不过期
+     */
+    static long tagOf(long redisExpireMillis, long now) {
+        return redisExpireMillis == -1 ? Long.MAX_VALUE : now + redisExpireMillis;
+    }
+
+    /**
+     * 启动时二级缓存的过期时间点与保存时的标记一致(误差在TAG_SLACK_MILLIS之内)时，快照中的数据仍然有效
+     *
+     * @param redisExpireMillis 二级缓存剩余的过期时间(PTTL)，单位：毫秒；-1表示永不过期，-2表示已不存在
+     */
+    static boolean isTagValid(long tag, long redisExpireMillis, long now) {
+        if (redisExpireMillis == -1) {
+            return tag == Long.MAX_VALUE;
+        }
+        return redisExpireMillis >= 0 && Math.abs(now + redisExpireMillis - tag) <= TAG_SLACK_MILLIS;
+    }
+
+    /**
+     * 从快照中取出数据，每条数据只能取出一次；快照未启用、未校验完成或没有数据时返回null
+     */
+    public MappedSnapshotFile.Entry take(String cacheKey) {
+        MappedSnapshotFile mapped = snapshot;
+        if (mapped == null || !ready) {
+            return null;
+        }
+        MappedSnapshotFile.Entry entry = mapped.take(cacheKey);
+        if (entry != null) {
+            restored.incrementAndGet();
+            releaseIfEmpty(mapped);
+        }
+        return entry;
+    }
+
+    public void remove(Collection<String> cacheKeys) {
+        MappedSnapshotFile mapped = snapshot;
+        if (mapped != null) {
+            cacheKeys.forEach(mapped::remove);
+            releaseIfEmpty(mapped);
+        }
+    }
+
+    /**
+     * 快照中的数据全部取出或删除后释放映射
+     */
+    private void releaseIfEmpty(MappedSnapshotFile mapped) {
+        if (ready && mapped.size() == 0 && snapshot == mapped) {
+            snapshot = null;
+        }
+    }
+
+    public int size() {
+        MappedSnapshotFile mapped = snapshot;
+        return mapped == null ? 0 : mapped.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (!isEnabled()) {
+            return;
+        }
+        Gauge.builder("dao.cache.snapshot.entries", this, L1WarmSnapshot::size)
+                .description("一级缓存快照中尚未恢复的数据数量")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.snapshot.restored", restored, AtomicLong::get)
+                .description("从一级缓存快照中恢复的数据数量")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.snapshot.dropped", dropped, AtomicLong::get)
+                .description("一级缓存快照中因二级缓存已变化而丢弃的数据数量")
+                .register(registry);
+    }
+
+}
@@ -0,0 +1,283 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.ComUtils;
+import com.boydguy.generate.utils.RedisUtils;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.ehcache.config.MemoryUnit;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * 启动时的一级缓存预热：每个节点定期把一级缓存中命中率(次/分钟)最高的cache key登记到Redis的有序集合，
+ * 新启动的节点按命中率从高到低并行执行MGET，读取到的数据暂存在堆内，第一次访问时代替二级缓存的读取并放入一级缓存
+ * 预热的进度达到warmupReadyFraction或超过warmupTimeoutMillis后isReady返回true，由健康检查决定节点何时接收流量
+ */
+@Slf4j
+@Component
+public class L1Warmup implements MeterBinder, DisposableBean {
+
+    static final String HOT_KEYS = "daoCacheHotKeys";
+    /**
+     * 登记命中率的时间间隔，单位：秒
+     */
+    private static final long PUBLISH_SECONDS = 60;
+    /**
+     * 预热结束后暂存数据的保留时间，单位：毫秒；之后仍未被访问的数据全部丢弃
+     */
+    private static final long HOLD_MILLIS = 300000;
+
+    private final DaoCacheProperties properties;
+    /**
+     * cache key -> 暂存的数据
+     */
+    private final ConcurrentHashMap<String, Staged> stagedMap = new ConcurrentHashMap<>();
+    /**
+     * 预热期间被清除的cache key：先登记再删除暂存的数据，与暂存数据后再检查的顺序相反，保证两者至少有一方能看到对方
+     */
+    private final Set<String> removedKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicLong stagedBytes = new AtomicLong();
+    private final AtomicInteger warmed = new AtomicInteger();
+    /**
+     * 暂存数据被使用的次数
+     */
+    private final AtomicLong hits = new AtomicLong();
+    private volatile IntFunction<Map<String, Double>> hotKeysSource = limit -> Collections.emptyMap();
+    private ScheduledExecutorService scheduler;
+    private volatile long startedAt;
+    private volatile long stagedUntil = Long.MAX_VALUE;
+    /**
+     * 需要预热的cache key数量，-1表示还未读取
+     */
+    private volatile int target = -1;
+    private volatile boolean warming;
+    private volatile boolean finished;
+
+    @Autowired
+    public L1Warmup(DaoCacheProperties properties) {
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isWarmupEnabled();
+    }
+
+    /**
+     * 注册一级缓存中命中率最高的cache key的来源：参数为数量，返回cache key -> 命中率
+     */
+    public void onHotKeys(IntFunction<Map<String, Double>> hotKeysSource) {
+        this.hotKeysSource = hotKeysSource;
+    }
+
+    /**
+     * 应用启动完成后开始预热，并定期登记当前节点的热点cache key
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        startedAt = System.currentTimeMillis();
+        stagedUntil = startedAt + properties.getWarmupTimeoutMillis() + HOLD_MILLIS;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("dao-cache-warmup-");
+        threadFactory.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduler.execute(() -> warm(threadFactory));
+        scheduler.scheduleWithFixedDelay(this::publishHotKeys, PUBLISH_SECONDS, PUBLISH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void warm(ThreadFactory threadFactory) {
+        ExecutorService fetchers = Executors.newFixedThreadPool(Math.max(properties.getWarmupThreads(), 1), threadFactory);
+        warming = true;
+        try {
+            Set<String> hotKeys = RedisUtils.getZSetReverse(HOT_KEYS, 0, properties.getWarmupTopKeys() - 1);
+            List<String> cacheKeys = hotKeys == null ? Collections.emptyList() : new ArrayList<>(hotKeys);
+            target = cacheKeys.size();
+            long maxBytes = MemoryUnit.parseSizeInBytes(properties.getWarmupMaxBytes());
+            int batchSize = Math.max(properties.getWarmupBatchSize(), 1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < cacheKeys.size(); from += batchSize) {
+                List<String> batch = cacheKeys.subList(from, Math.min(from + batchSize, cacheKeys.size()));
+                futures.add(fetchers.submit(() -> fetch(batch, maxBytes)));
+            }
+            long deadline = startedAt + properties.getWarmupTimeoutMillis();
+            for (Future<?> future : futures) {
+                future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            }
+            log.info("一级缓存预热完成，cache key {} 个，暂存数据 {} 条，占用内存约：{}KB，耗时：{}ms", target, stagedMap.size(),
+                    stagedBytes.get() / 1024, System.currentTimeMillis() - startedAt);
+        } catch (TimeoutException ex) {
+            log.warn("一级缓存预热超过了{}ms，已完成 {}/{}", properties.getWarmupTimeoutMillis(), warmed.get(), target);
+        } catch (Exception ex) {
+            log.error("一级缓存预热时发生异常：{}", ComUtils.printException(ex));
+        } finally {
+            fetchers.shutdownNow();
+            warming = false;
+            removedKeys.clear();
+            finished = true;
+        }
+    }
+
+    /**
+     * 在一次管道往返中读取一批数据并暂存，超过warmupMaxBytes后不再暂存
+     */
+    private void fetch(List<String> batch, long maxBytes) {
+        List<Map.Entry<byte[], Long>> values = RedisUtils.getBytesAndExpires(batch);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] value = values.get(i).getKey();
+            long expireMillis = values.get(i).getValue();
+            if (value == null || expireMillis == -2 || stagedBytes.get() + value.length > maxBytes) {
+                continue;
+            }
+            String cacheKey = batch.get(i);
+            Staged prior = stagedMap.put(cacheKey, new Staged(value, expireMillis == -1 ? Long.MAX_VALUE : now + expireMillis));
+            stagedBytes.addAndGet(value.length - (prior == null ? 0 : prior.value.length));
+            if (removedKeys.contains(cacheKey)) {
+                discard(cacheKey);
+            }
+        }
+        warmed.addAndGet(batch.size());
+    }
+
+    /**
+     * 登记当前节点一级缓存中命中率最高的cache key，各节点登记的命中率相互覆盖，只保留最高的warmupTopKeys个
+     */
+    private void publishHotKeys() {
+        try {
+            Map<String, Double> hotKeys = hotKeysSource.apply(properties.getWarmupTopKeys());
+            RedisUtils.putZSetAndTrim(HOT_KEYS, hotKeys, properties.getWarmupTopKeys(), PUBLISH_SECONDS * 10);
+        } catch (Exception ex) {
+            log.error("登记热点cache key时发生异常：{}", ComUtils.printException(ex));
+        }
+    }
+
+    /**
+     * 取出暂存的数据：二级缓存中的数据与剩余的过期时间，单位：毫秒；没有暂存或已过期时返回null
+     */
+    public Map.Entry<byte[], Long> take(String cacheKey) {
+        if (stagedMap.isEmpty()) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now > stagedUntil) {
+            stagedMap.keySet().forEach(this::discard);
+            return null;
+        }
+        Staged staged = stagedMap.remove(cacheKey);
+        if (staged == null) {
+            return null;
+        }
+        stagedBytes.addAndGet(-staged.value.length);
+        if (staged.expireAt <= now) {
+            return null;
+        }
+        hits.incrementAndGet();
+        return new AbstractMap.SimpleImmutableEntry<>(staged.value, staged.expireAt == Long.MAX_VALUE ? -1 : staged.expireAt - now);
+    }
+
+    /**
+     * 删除被清除的cache key暂存的数据
+     */
+    public void remove(Collection<String> cacheKeys) {
+        if (warming) {
+            removedKeys.addAll(cacheKeys);
+        }
+        if (!stagedMap.isEmpty()) {
+            cacheKeys.forEach(this::discard);
+        }
+    }
+
+    private void discard(String cacheKey) {
+        Staged staged = stagedMap.remove(cacheKey);
+        if (staged != null) {
+            stagedBytes.addAndGet(-staged.value.length);
+        }
+    }
+
+    /**
+     * 节点是否已完成预热：未启用预热、预热结束、进度达到warmupReadyFraction或超过warmupTimeoutMillis
+     */
+    public boolean isReady() {
+        if (!isEnabled() || finished) {
+            return true;
+        }
+        if (startedAt == 0) {
+            return false;
+        }
+        return (target >= 0 && warmed.get() >= target * properties.getWarmupReadyFraction())
+                || System.currentTimeMillis() - startedAt >= properties.getWarmupTimeoutMillis();
+    }
+
+    public int getTarget() {
+        return Math.max(target, 0);
+    }
+
+    public int getWarmed() {
+        return warmed.get();
+    }
+
+    public int getStaged() {
+        return stagedMap.size();
+    }
+
+    public long getStagedBytes() {
+        return stagedBytes.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        if (!isEnabled()) {
+            return;
+        }
+        Gauge.builder("dao.cache.warmup.staged", stagedMap, Map::size)
+                .description("预热后暂存、尚未被访问的数据数量")
+                .register(registry);
+        Gauge.builder("dao.cache.warmup.staged.bytes", stagedBytes, AtomicLong::get)
+                .description("预热后暂存的数据占用的内存")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.warmup.hits", hits, AtomicLong::get)
+                .description("预热暂存的数据被使用的次数")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static class Staged {
+        final byte[] value;
+        /**
+         * 二级缓存中过期的时间点，单位：毫秒；Long.MAX_VALUE表示永不过期
+         */
+        final long expireAt;
+
+        Staged(byte[] value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+}
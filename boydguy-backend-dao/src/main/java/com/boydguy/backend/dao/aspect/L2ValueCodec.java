@@ -0,0 +1,238 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.annotation.ApplyAppCache;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 缓存数据的编码，分为两层：
+ * 序列化：json文本，或者标记字节0x02加Smile二进制数据；
+ * 压缩：超过compressThresholdBytes的数据使用Deflater压缩，第一个字节为0x01，解压后按序列化格式读取
+ * json文本不会以控制字符开头，没有标记字节的数据按json读取，引入标记之前写入的数据可以继续使用
+ */
+@Component
+public class L2ValueCodec implements MeterBinder {
+
+    /**
+     * Deflater压缩(raw deflate，不带zlib头)
+     */
+    static final byte CODEC_DEFLATE = 0x01;
+    /**
+     * Jackson Smile二进制格式
+     */
+    static final byte FORMAT_SMILE = 0x02;
+    /**
+     * 查询结果为null时在二级缓存中保存的数据
+     */
+    static final byte[] NULL_VALUE = "${null}".getBytes(StandardCharsets.UTF_8);
+
+    private final DaoCacheProperties properties;
+    /**
+     * 序列化与反序列化使用应用配置的ObjectMapper，Smile只替换底层的读写器，日期格式、模块等配置与json保持一致
+     */
+    private final ObjectMapper objectMapper;
+    private final SmileFactory smileFactory = new SmileFactory();
+    /**
+     * 压缩前的字节数
+     */
+    private final AtomicLong rawBytes = new AtomicLong();
+    /**
+     * 压缩后的字节数
+     */
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry();
+    private final Timer compressTimer;
+    private final Timer decompressTimer;
+    private final Map<ApplyAppCache.ValueFormat, Timer> serializeTimers = new EnumMap<>(ApplyAppCache.ValueFormat.class);
+    private final Map<ApplyAppCache.ValueFormat, Timer> deserializeTimers = new EnumMap<>(ApplyAppCache.ValueFormat.class);
+
+    @Autowired
+    public L2ValueCodec(DaoCacheProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.compressTimer = Timer.builder("dao.cache.codec.compress")
+                .description("压缩二级缓存数据的耗时")
+                .register(meterRegistry);
+        this.decompressTimer = Timer.builder("dao.cache.codec.decompress")
+                .description("解压二级缓存数据的耗时")
+                .register(meterRegistry);
+        for (ApplyAppCache.ValueFormat format : new ApplyAppCache.ValueFormat[]{ApplyAppCache.ValueFormat.JSON, ApplyAppCache.ValueFormat.SMILE}) {
+            String tag = format.name().toLowerCase();
+            serializeTimers.put(format, Timer.builder("dao.cache.codec.serialize")
+                    .description("序列化缓存数据的耗时")
+                    .tag("format", tag)
+                    .register(meterRegistry));
+            deserializeTimers.put(format, Timer.builder("dao.cache.codec.deserialize")
+                    .description("反序列化缓存数据的耗时")
+                    .tag("format", tag)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 方法使用的序列化格式：注解中为DEFAULT时使用全局配置
+     */
+    public ApplyAppCache.ValueFormat formatOf(MethodCacheDescriptor descriptor) {
+        ApplyAppCache.ValueFormat format = descriptor.getApplyAppCache().valueFormat();
+        return format == ApplyAppCache.ValueFormat.DEFAULT ? properties.getValueFormat() : format;
+    }
+
+    /**
+     * 按方法的序列化格式序列化查询结果
+     */
+    public byte[] serialize(Object value, MethodCacheDescriptor descriptor) throws IOException {
+        ApplyAppCache.ValueFormat format = formatOf(descriptor);
+        long start = System.nanoTime();
+        try {
+            if (format != ApplyAppCache.ValueFormat.SMILE) {
+                return objectMapper.writeValueAsBytes(value);
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+            output.write(FORMAT_SMILE);
+            try (JsonGenerator generator = smileFactory.createGenerator(output)) {
+                objectMapper.writeValue(generator, value);
+            }
+            return output.toByteArray();
+        } finally {
+            serializeTimers.get(format).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 按数据的标记字节反序列化，与方法当前配置的格式无关，切换格式前写入的数据仍然可以读取
+     */
+    public Object deserialize(byte[] payload, MethodCacheDescriptor descriptor) throws IOException {
+        boolean smile = payload.length > 0 && payload[0] == FORMAT_SMILE;
+        long start = System.nanoTime();
+        try {
+            if (!smile) {
+                return descriptor.getObjectReader().readValue(payload);
+            }
+            try (JsonParser parser = smileFactory.createParser(payload, 1, payload.length - 1)) {
+                return descriptor.getObjectReader().readValue(parser);
+            }
+        } finally {
+            deserializeTimers.get(smile ? ApplyAppCache.ValueFormat.SMILE : ApplyAppCache.ValueFormat.JSON)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public boolean isNull(byte[] payload) {
+        return Arrays.equals(payload, NULL_VALUE);
+    }
+
+    /**
+     * 用于日志输出：json直接输出文本，二进制格式只输出长度
+     */
+    public String describe(byte[] payload) {
+        if (payload.length > 0 && payload[0] == FORMAT_SMILE) {
+            return "smile(" + payload.length + " bytes)";
+        }
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 将序列化后的数据编码为写入Redis的字节：未达到阈值或压缩后没有变小时不压缩
+     */
+    public byte[] encode(byte[] raw) {
+        int threshold = properties.getCompressThresholdBytes();
+        if (threshold <= 0 || raw.length < threshold) {
+            return raw;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater(properties.getCompressLevel(), true);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length / 4 + 16);
+            output.write(CODEC_DEFLATE);
+            byte[] buffer = new byte[Math.min(raw.length, 64 * 1024)];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+                if (output.size() >= raw.length) {
+                    return raw;//压缩后没有变小
+                }
+            }
+            byte[] encoded = output.toByteArray();
+            rawBytes.addAndGet(raw.length);
+            compressedBytes.addAndGet(encoded.length);
+            return encoded;
+        } finally {
+            deflater.end();
+            compressTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 将Redis中的字节解码为序列化后的数据
+     */
+    public byte[] decode(byte[] encoded) {
+        if (encoded.length == 0 || encoded[0] != CODEC_DEFLATE) {
+            return encoded;
+        }
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(encoded, 1, encoded.length - 1);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(encoded.length * 4);
+            byte[] buffer = new byte[64 * 1024];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("二级缓存中的压缩数据不完整");
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("无法解压二级缓存中的数据：" + Arrays.toString(Arrays.copyOf(encoded, Math.min(encoded.length, 8))), ex);
+        } finally {
+            inflater.end();
+            decompressTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 压缩率：压缩后的字节数 / 压缩前的字节数
+     */
+    public double getCompressionRatio() {
+        long raw = rawBytes.get();
+        return raw == 0 ? 1 : (double) compressedBytes.get() / raw;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        meterRegistry.add(registry);
+        FunctionCounter.builder("dao.cache.codec.raw", rawBytes, AtomicLong::get)
+                .description("被压缩的数据压缩前的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("dao.cache.codec.compressed", compressedBytes, AtomicLong::get)
+                .description("被压缩的数据压缩后的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+}
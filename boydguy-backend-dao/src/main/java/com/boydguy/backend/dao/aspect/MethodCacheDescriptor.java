@@ -0,0 +1,186 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.annotation.ApplyAppCache;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+/**
+ * 被@ApplyAppCache拦截方法的预编译描述：同一个(被代理类, 方法)只解析一次反射信息
+ */
+@Getter
+public class MethodCacheDescriptor {
+    /**
+     * 被代理的类
+     */
+    private final Class<?> targetClass;
+    /**
+     * 被代理的方法
+     */
+    private final Method method;
+    /**
+     * 方法的访问修饰符
+     */
+    private final String modifier;
+    /**
+     * 被代理的类完整限定名，包括泛型
+     */
+    private final String classFullPath;
+    /**
+     * 方法名称
+     */
+    private final String methodName;
+    /**
+     * 方法的返回值类型，包括泛型
+     */
+    private final Type exactReturnType;
+    /**
+     * 方法的返回值类型名称，包括泛型
+     */
+    private final String returnTypeName;
+    /**
+     * 参数类型名称列表，包括泛型
+     */
+    private final String[] paramTypeNames;
+    /**
+     * 方法签名：修饰符$返回值类型$类完整限定名$方法名(参数类型列表)
+     */
+    private final String signature;
+    /**
+     * 方法签名的64位ID，作为cache key的前缀写入哈希
+     */
+    private final long methodId;
+    /**
+     * 反序列化缓存数据时使用的目标类型
+     */
+    private final JavaType returnJavaType;
+    /**
+     * 绑定了returnJavaType的可复用ObjectReader
+     */
+    private final ObjectReader objectReader;
+    /**
+     * 方法上的缓存注解
+     */
+    private final ApplyAppCache applyAppCache;
+    /**
+     * 一级缓存Ehcache的过期时间
+     */
+    private final int ehcacheTimeout;
+    /**
+     * 二级缓存Redis的过期时间
+     */
+    private final int redisTimeout;
+    /**
+     * 数据从加载到变为陈旧数据的时间，单位：毫秒
+     */
+    private final long staleAfterMillis;
+    /**
+     * 宽限时间，单位：秒
+     */
+    private final int graceTimeout;
+    /**
+     * XFetch提前刷新系数
+     */
+    private final double earlyRefreshBeta;
+    /**
+     * 过期时间的随机抖动比例，小于0时使用全局配置
+     */
+    private final double jitterRatio;
+    /**
+     * 滑动过期的命中率阈值，单位：次/分钟
+     */
+    private final int slidingHitsPerMinute;
+    /**
+     * 是否启用陈旧数据异步刷新
+     */
+    private final boolean refreshAhead;
+    /**
+     * BaseDao的实体类，其它类为null
+     */
+    private final Class<?> entityClass;
+    /**
+     * 按主键查询的方式，用于布隆过滤器拦截
+     */
+    private final PrimaryKeyQuery primaryKeyQuery;
+    /**
+     * 查询类方法(列表、分页、总数)所属实体的版本号名称，cache key中包含该实体的数据版本号；其它方法为null
+     */
+    private final String generationName;
+    /**
+     * 查询数据库耗时的指数加权移动平均值，单位：毫秒
+     */
+    private volatile double loadMillis;
+
+    MethodCacheDescriptor(Class<?> targetClass, Method method, String modifier, String classFullPath,
+                          Type exactReturnType, String[] paramTypeNames, JavaType returnJavaType,
+                          ObjectReader objectReader, ApplyAppCache applyAppCache,
+                          Class<?> entityClass, PrimaryKeyQuery primaryKeyQuery, String generationName) {
+        this.targetClass = targetClass;
+        this.method = method;
+        this.modifier = modifier;
+        this.classFullPath = classFullPath;
+        this.methodName = method.getName();
+        this.exactReturnType = exactReturnType;
+        this.returnTypeName = exactReturnType.getTypeName();
+        this.paramTypeNames = paramTypeNames;
+        this.signature = String.join("$", modifier, returnTypeName, classFullPath, methodName)
+                + "(" + String.join(",", paramTypeNames) + ")";
+        this.methodId = Murmur3CacheKeyEncoder.methodId(signature);
+        this.returnJavaType = returnJavaType;
+        this.objectReader = objectReader;
+        this.applyAppCache = applyAppCache;
+        this.ehcacheTimeout = applyAppCache.ehcacheTimeout();
+        this.redisTimeout = applyAppCache.redisTimeout();
+        int softTimeout = applyAppCache.softTimeout() > 0 ? Math.min(applyAppCache.softTimeout(), redisTimeout) : redisTimeout;
+        this.staleAfterMillis = softTimeout * 1000L;
+        this.graceTimeout = Math.max(applyAppCache.graceTimeout(), 0);
+        this.earlyRefreshBeta = Math.max(applyAppCache.earlyRefreshBeta(), 0);
+        this.jitterRatio = applyAppCache.jitterRatio();
+        this.slidingHitsPerMinute = Math.max(applyAppCache.slidingHitsPerMinute(), 0);
+        this.entityClass = entityClass;
+        this.primaryKeyQuery = primaryKeyQuery;
+        this.generationName = generationName;
+        this.refreshAhead = softTimeout < redisTimeout || graceTimeout > 0 || earlyRefreshBeta > 0;
+    }
+
+    /**
+     * 一级缓存Ehcache中数据实际保留的时间，单位：秒
+     */
+    public int getEhcacheHardTimeout() {
+        return ehcacheTimeout + graceTimeout;
+    }
+
+    /**
+     * 二级缓存Redis中数据实际保留的时间，单位：秒
+     */
+    public int getRedisHardTimeout() {
+        return redisTimeout + graceTimeout;
+    }
+
+    public enum PrimaryKeyQuery {
+        /**
+         * 不是按主键查询
+         */
+        NONE,
+        /**
+         * 按单个主键查询：selectByPrimaryKey
+         */
+        ONE,
+        /**
+         * 按逗号分隔的多个主键查询：selectByIds
+         */
+        IDS
+    }
+
+    /**
+     * 记录一次查询数据库的耗时，并发更新时丢失个别样本不影响平均值
+     */
+    void recordLoad(long elapsedNanos) {
+        double elapsedMillis = elapsedNanos / 1e6;
+        loadMillis = loadMillis == 0 ? elapsedMillis : loadMillis * 0.8 + elapsedMillis * 0.2;
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.backend.dao.base.BaseDao;
+import com.boydguy.generate.annotation.ApplyAppCache;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.googlecode.gentyref.GenericTypeReflector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MethodCacheDescriptor的注册表：按(被代理类, 方法)缓存，首次调用时构建，之后直接复用
+ * 先按被代理类再按方法两级查找，每次调用不创建任何对象
+ */
+@Component
+public class MethodCacheDescriptorRegistry {
+
+    /**
+     * 被代理类 -> (方法 -> 方法的描述)
+     */
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Method, MethodCacheDescriptor>> descriptorMap = new ConcurrentHashMap<>();
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    public MethodCacheDescriptorRegistry(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 获取被代理方法的描述，不存在时构建
+     */
+    public MethodCacheDescriptor getDescriptor(Class<?> targetClass, Method method) {
+        ConcurrentHashMap<Method, MethodCacheDescriptor> methodMap = descriptorMap.get(targetClass);
+        if (methodMap == null) {
+            methodMap = descriptorMap.computeIfAbsent(targetClass, key -> new ConcurrentHashMap<>());
+        }
+        MethodCacheDescriptor descriptor = methodMap.get(method);
+        if (descriptor != null) {
+            return descriptor;
+        }
+        return methodMap.computeIfAbsent(method, key -> buildDescriptor(targetClass, method));
+    }
+
+    public int size() {
+        return descriptorMap.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private MethodCacheDescriptor buildDescriptor(Class<?> targetClass, Method method) {
+        ApplyAppCache applyAppCache = method.getAnnotation(ApplyAppCache.class);
+        Assert.notNull(applyAppCache, "方法" + method.getName() + "缺少注解@ApplyAppCache");
+
+        Type exactReturnType = GenericTypeReflector.getExactReturnType(method, targetClass);
+        String[] paramTypeNames = Arrays.stream(GenericTypeReflector.getExactParameterTypes(method, targetClass))
+                .map(Type::getTypeName)
+                .toArray(String[]::new);
+        String classFullPath = targetClass.getGenericSuperclass().getTypeName();
+        JavaType returnJavaType = constructJavaType(exactReturnType);
+
+        Class<?> entityClass = null;
+        MethodCacheDescriptor.PrimaryKeyQuery primaryKeyQuery = MethodCacheDescriptor.PrimaryKeyQuery.NONE;
+        String generationName = null;
+        if (BaseDao.class.isAssignableFrom(targetClass)) {
+            entityClass = ResolvableType.forClass(targetClass).as(BaseDao.class).getGeneric(0).resolve();
+            primaryKeyQuery = resolvePrimaryKeyQuery(method);
+            // 按主键查询的方法通过倒排索引清除，其它查询方法通过实体的数据版本号失效
+            if (primaryKeyQuery == MethodCacheDescriptor.PrimaryKeyQuery.NONE) {
+                generationName = EntityGenerations.generationName(entityClass);
+            }
+        }
+
+        return new MethodCacheDescriptor(targetClass, method, Modifier.toString(method.getModifiers()), classFullPath,
+                exactReturnType, paramTypeNames, returnJavaType, objectMapper.readerFor(returnJavaType), applyAppCache,
+                entityClass, primaryKeyQuery, generationName);
+    }
+
+    /**
+     * 只识别BaseDao中声明的按主键查询的方法
+     */
+    private MethodCacheDescriptor.PrimaryKeyQuery resolvePrimaryKeyQuery(Method method) {
+        if (method.getDeclaringClass() != BaseDao.class) {
+            return MethodCacheDescriptor.PrimaryKeyQuery.NONE;
+        }
+        if ("selectByPrimaryKey".equals(method.getName())) {
+            return MethodCacheDescriptor.PrimaryKeyQuery.ONE;
+        }
+        if ("selectByIds".equals(method.getName())) {
+            return MethodCacheDescriptor.PrimaryKeyQuery.IDS;
+        }
+        return MethodCacheDescriptor.PrimaryKeyQuery.NONE;
+    }
+
+    /**
+     * 通过Jackson的TypeFactory动态构建反序列化的类型（类似于TypeReference<T>）
+     */
+    private JavaType constructJavaType(Type exactReturnType) {
+        TypeFactory typeFactory = objectMapper.getTypeFactory();
+        // 判断方法的返回类型是否为泛型
+        if (exactReturnType instanceof ParameterizedType) {
+            Class<?> rawClass = typeFactory.constructType(((ParameterizedType) exactReturnType).getRawType()).getRawClass();
+            Class<?>[] classes = Arrays.stream(((ParameterizedType) exactReturnType).getActualTypeArguments())
+                    .map(type -> typeFactory.constructType(type).getRawClass())
+                    .toArray(Class<?>[]::new);
+            return typeFactory.constructParametricType(rawClass, classes);
+        }
+        // 方法的返回类型是JavaType
+        return typeFactory.constructType(typeFactory.constructType(exactReturnType).getRawClass());
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.boydguy.backend.dao.aspect;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个被代理方法的缓存统计：各级缓存的命中次数、查询数据库的次数与耗时、端到端耗时以及缓存数据的大小
+ */
+public class MethodCacheMeters {
+
+    private final Counter l1Hits;
+    private final Counter l2Hits;
+    private final Counter nullHits;
+    private final Counter loads;
+    private final Counter coalesced;
+    private final Counter evictions;
+    private final Timer loadTimer;
+    private final Timer latencyTimer;
+    private final DistributionSummary valueSize;
+
+    MethodCacheMeters(MeterRegistry registry, String method) {
+        this.l1Hits = gets(registry, method, "l1_hit");
+        this.l2Hits = gets(registry, method, "l2_hit");
+        this.nullHits = gets(registry, method, "null_hit");
+        this.loads = gets(registry, method, "load");
+        this.coalesced = gets(registry, method, "coalesced");
+        this.evictions = Counter.builder("dao.cache.evictions")
+                .description("被清除的cache key数量")
+                .tag("method", method)
+                .register(registry);
+        this.loadTimer = Timer.builder("dao.cache.load")
+                .description("缓存未命中时查询数据库的耗时")
+                .tag("method", method)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.latencyTimer = Timer.builder("dao.cache.latency")
+                .description("被代理方法的端到端耗时，包括缓存命中与未命中")
+                .tag("method", method)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.valueSize = DistributionSummary.builder("dao.cache.value.size")
+                .description("写入二级缓存的数据大小")
+                .baseUnit("bytes")
+                .tag("method", method)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+    }
+
+    private static Counter gets(MeterRegistry registry, String method, String result) {
+        return Counter.builder("dao.cache.gets")
+                .description("被代理方法的调用次数，按结果分类")
+                .tags("method", method, "result", result)
+                .register(registry);
+    }
+
+    public void l1Hit() {
+        l1Hits.increment();
+    }
+
+    public void l2Hit() {
+        l2Hits.increment();
+    }
+
+    public void nullHit() {
+        nullHits.increment();
+    }
+
+    public void coalesced() {
+        coalesced.increment();
+    }
+
+    public void evicted(int count) {
+        evictions.increment(count);
+    }
+
+    public void recordLoad(long elapsedNanos, int valueBytes) {
+        loads.increment();
+        loadTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        if (valueBytes > 0) {
+            valueSize.record(valueBytes);
+        }
+    }
+
+    public void recordLatency(long elapsedNanos) {
+        latencyTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 当前的统计数据，耗时单位：毫秒
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        double l1 = l1Hits.count();
+        double l2 = l2Hits.count();
+        double nulls = nullHits.count();
+        double total = l1 + l2 + nulls + loads.count() + coalesced.count();
+        snapshot.put("l1Hits", (long) l1);
+        snapshot.put("l2Hits", (long) l2);
+        snapshot.put("nullHits", (long) nulls);
+        snapshot.put("loads", (long) loads.count());
+        snapshot.put("coalesced", (long) coalesced.count());
+        snapshot.put("evictions", (long) evictions.count());
+        snapshot.put("hitRatio", total == 0 ? 0 : (l1 + l2 + nulls) / total);
+        snapshot.put("load", timerSnapshot(loadTimer));
+        snapshot.put("latency", timerSnapshot(latencyTimer));
+        snapshot.put("valueSizeMean", valueSize.mean());
+        snapshot.put("valueSizeMax", valueSize.max());
+        return snapshot;
+    }
+
+    private static Map<String, Object> timerSnapshot(Timer timer) {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", timer.count());
+        snapshot.put("mean", timer.mean(TimeUnit.MILLISECONDS));
+        snapshot.put("max", timer.max(TimeUnit.MILLISECONDS));
+        for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+            snapshot.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+        }
+        return snapshot;
+    }
+
+}
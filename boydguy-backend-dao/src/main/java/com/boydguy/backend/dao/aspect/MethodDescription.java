@@ -29,6 +29,10 @@ public class MethodDescription implements Serializable {
      * 参数列表
      */
     private List<MethodParams> methodParams;
+    /**
+     * 由CacheKeyEncoder生成的cache key
+     */
+    private String cacheKey;
 
     public String getObjectString() {
         String[] fields = new String[]{modifier, returnType, classFullPath, methodName};
@@ -0,0 +1,240 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedBytes;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.stereotype.Component;
+import tk.mybatis.mapper.entity.Example;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 将方法ID与参数列表直接写入MurmurHash3(128位)，不再经过JSON序列化与MD5
+ * 实体类参数按字段名排序后逐个写入，Set与Map的元素按各自哈希值排序后写入，保证不同应用节点上得到的cache key一致
+ * 无法确定稳定表示的JDK类型直接拒绝，避免不同节点生成不同的cache key
+ */
+@Component
+public class Murmur3CacheKeyEncoder implements CacheKeyEncoder {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    /**
+     * 实体类参数嵌套的最大深度，超出后不再继续展开
+     */
+    private static final int MAX_DEPTH = 16;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_INTEGRAL = 2;
+    private static final byte TAG_DECIMAL = 3;
+    private static final byte TAG_BOOLEAN = 4;
+    private static final byte TAG_CHAR = 5;
+    private static final byte TAG_TEXT = 6;
+    private static final byte TAG_DATE = 7;
+    private static final byte TAG_ENUM = 8;
+    private static final byte TAG_COLLECTION = 9;
+    private static final byte TAG_MAP = 10;
+    private static final byte TAG_ARRAY = 11;
+    private static final byte TAG_ROW_BOUNDS = 12;
+    private static final byte TAG_EXAMPLE = 13;
+    private static final byte TAG_OBJECT = 14;
+    private static final byte TAG_TRUNCATED = 15;
+    private static final byte TAG_SET = 16;
+
+    private final ConcurrentHashMap<Class<?>, Field[]> fieldCache = new ConcurrentHashMap<>();
+
+    @Override
+    public String encode(MethodCacheDescriptor descriptor, Object[] args, long generation) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        hasher.putLong(descriptor.getMethodId());
+        hasher.putLong(generation);
+        hasher.putInt(args.length);
+        for (Object arg : args) {
+            putValue(hasher, arg, 0);
+        }
+        return KEY_NAMESPACE + hasher.hash().toString();
+    }
+
+    /**
+     * 计算方法签名的ID，只在构建MethodCacheDescriptor时调用一次
+     */
+    public static long methodId(String signature) {
+        return HASH_FUNCTION.hashUnencodedChars(signature).asLong();
+    }
+
+    private void putValue(Hasher hasher, Object value, int depth) {
+        if (value == null) {
+            hasher.putByte(TAG_NULL);
+            return;
+        }
+        if (depth > MAX_DEPTH) {
+            hasher.putByte(TAG_TRUNCATED);
+            return;
+        }
+        if (value instanceof String) {
+            hasher.putByte(TAG_STRING);
+            putString(hasher, (String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            hasher.putByte(TAG_INTEGRAL);
+            hasher.putLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            hasher.putByte(TAG_DECIMAL);
+            hasher.putDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            hasher.putByte(TAG_BOOLEAN);
+            hasher.putBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            hasher.putByte(TAG_CHAR);
+            hasher.putChar((Character) value);
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            hasher.putByte(TAG_TEXT);
+            putString(hasher, value.toString());
+        } else if (value instanceof Date) {
+            hasher.putByte(TAG_DATE);
+            hasher.putLong(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            hasher.putByte(TAG_ENUM);
+            putString(hasher, ((Enum<?>) value).name());
+        } else if (value instanceof RowBounds) {
+            hasher.putByte(TAG_ROW_BOUNDS);
+            hasher.putInt(((RowBounds) value).getOffset());
+            hasher.putInt(((RowBounds) value).getLimit());
+        } else if (value instanceof Example) {
+            putExample(hasher, (Example) value, depth);
+        } else if (value instanceof Set) {
+            Set<?> set = (Set<?>) value;
+            hasher.putByte(TAG_SET);
+            hasher.putInt(set.size());
+            putUnordered(hasher, set, (itemHasher, item) -> putValue(itemHasher, item, depth + 1));
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            hasher.putByte(TAG_COLLECTION);
+            hasher.putInt(collection.size());
+            for (Object item : collection) {
+                putValue(hasher, item, depth + 1);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            hasher.putByte(TAG_MAP);
+            hasher.putInt(map.size());
+            putUnordered(hasher, map.entrySet(), (itemHasher, item) -> {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) item;
+                putValue(itemHasher, entry.getKey(), depth + 1);
+                putValue(itemHasher, entry.getValue(), depth + 1);
+            });
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            hasher.putByte(TAG_ARRAY);
+            hasher.putInt(length);
+            for (int i = 0; i < length; i++) {
+                putValue(hasher, Array.get(value, i), depth + 1);
+            }
+        } else if (value instanceof Class) {
+            hasher.putByte(TAG_TEXT);
+            putString(hasher, ((Class<?>) value).getName());
+        } else if (value instanceof CharSequence || value instanceof TemporalAccessor || value instanceof TemporalAmount
+                || value instanceof UUID || value instanceof URI || value instanceof Locale || value instanceof Currency) {
+            // toString稳定的JDK值类型(如java.time、UUID)直接使用toString
+            hasher.putByte(TAG_TEXT);
+            putString(hasher, value.toString());
+        } else if (value.getClass().getName().startsWith("java.") || value.getClass().getName().startsWith("javax.")) {
+            throw new IllegalArgumentException("参数类型" + value.getClass().getName() + "不能生成稳定的cache key");
+        } else {
+            putObject(hasher, value, depth);
+        }
+    }
+
+    /**
+     * tk.mybatis的Example只写入影响查询结果的部分，忽略propertyMap、EntityTable等元数据
+     */
+    private void putExample(Hasher hasher, Example example, int depth) {
+        hasher.putByte(TAG_EXAMPLE);
+        putString(hasher, example.getEntityClass() == null ? null : example.getEntityClass().getName());
+        putString(hasher, example.getDynamicTableName());
+        putString(hasher, example.getOrderByClause());
+        hasher.putBoolean(example.isDistinct());
+        putString(hasher, example.getCountColumn());
+        putValue(hasher, example.getSelectColumns(), depth + 1);
+
+        List<Example.Criteria> oredCriteria = example.getOredCriteria();
+        hasher.putInt(oredCriteria.size());
+        for (Example.Criteria criteria : oredCriteria) {
+            putString(hasher, criteria.getAndOr());
+            List<Example.Criterion> criterionList = criteria.getCriteria();
+            hasher.putInt(criterionList.size());
+            for (Example.Criterion criterion : criterionList) {
+                putString(hasher, criterion.getAndOr());
+                putString(hasher, criterion.getCondition());
+                putValue(hasher, criterion.getValue(), depth + 1);
+                putValue(hasher, criterion.getSecondValue(), depth + 1);
+            }
+        }
+    }
+
+    /**
+     * 实体类参数：按字段名写入字段值，匿名子类(如new Product(){{...}})与原类得到相同的结果
+     */
+    private void putObject(Hasher hasher, Object value, int depth) {
+        hasher.putByte(TAG_OBJECT);
+        Field[] fields = fieldCache.computeIfAbsent(value.getClass(), this::resolveFields);
+        hasher.putInt(fields.length);
+        for (Field field : fields) {
+            putString(hasher, field.getName());
+            try {
+                putValue(hasher, field.get(value), depth + 1);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("无法读取字段" + field.getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * 无序的元素：每个元素单独计算哈希，排序后写入，结果与迭代顺序无关
+     */
+    private void putUnordered(Hasher hasher, Collection<?> items, BiConsumer<Hasher, Object> writer) {
+        List<byte[]> hashes = new ArrayList<>(items.size());
+        for (Object item : items) {
+            Hasher itemHasher = HASH_FUNCTION.newHasher();
+            writer.accept(itemHasher, item);
+            hashes.add(itemHasher.hash().asBytes());
+        }
+        hashes.sort(UnsignedBytes.lexicographicalComparator());
+        hashes.forEach(hasher::putBytes);
+    }
+
+    private void putString(Hasher hasher, String value) {
+        if (value == null) {
+            hasher.putInt(-1);
+            return;
+        }
+        hasher.putInt(value.length());
+        hasher.putUnencodedChars(value);
+    }
+
+    private Field[] resolveFields(Class<?> clazz) {
+        List<Field> fieldList = new ArrayList<>();
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fieldList.add(field);
+            }
+        }
+        fieldList.sort(Comparator.comparing(Field::getName));
+        return fieldList.toArray(new Field[0]);
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 实体主键的布隆过滤器：进程内的位图与Redis中的位图布局相同，第i位对应Redis位图的offset i
+ * 布隆过滤器不支持删除，已删除数据的主键在重建之前仍然被判断为可能存在
+ */
+@Getter
+public class PrimaryKeyBloomFilter {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * 实体类完整限定名
+     */
+    private final String entityName;
+    /**
+     * 主键字段名称
+     */
+    private final String primaryKeyName;
+    /**
+     * 位图的位数
+     */
+    private final long numBits;
+    /**
+     * 每个主键对应的位数
+     */
+    private final int numHashes;
+    /**
+     * Redis中的位图，位数与哈希次数不同的位图互不影响
+     */
+    private final String bitsKey;
+    /**
+     * Redis中的位图构建完毕的标记，被删除后所有节点都不再信任位图
+     */
+    private final String readyKey;
+    /**
+     * 构建位图时使用的临时key，与bitsKey位于同一个slot
+     */
+    private final String buildKey;
+    /**
+     * 构建位图时的分布式租约
+     */
+    private final String leaseKey;
+    private final AtomicLongArray bits;
+    private final AtomicBoolean building = new AtomicBoolean();
+    /**
+     * 位图是否已经包含全部数据的主键，未就绪时不拦截任何查询
+     */
+    @Setter
+    private volatile boolean ready;
+
+    PrimaryKeyBloomFilter(String keyPrefix, String entityName, String primaryKeyName, long expectedInsertions, double fpp) {
+        long insertions = Math.max(expectedInsertions, 1);
+        long optimalBits = (long) Math.ceil(-insertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.entityName = entityName;
+        this.primaryKeyName = primaryKeyName;
+        this.numBits = Math.max((optimalBits + 63) / 64, 1) * 64;
+        this.numHashes = Math.max((int) Math.round((double) numBits / insertions * Math.log(2)), 1);
+        this.bitsKey = keyPrefix + "{" + entityName + "}:" + numBits + "x" + numHashes;
+        this.readyKey = bitsKey + ":ready";
+        this.buildKey = bitsKey + ":build";
+        this.leaseKey = bitsKey + ":lease";
+        this.bits = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    /**
+     * 计算主键对应的位，主键统一按字符串计算，与主键的Java类型无关
+     */
+    public long[] offsets(Object primaryKey) {
+        byte[] hash = HASH_FUNCTION.hashUnencodedChars(String.valueOf(primaryKey)).asBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(hash).order(ByteOrder.LITTLE_ENDIAN);
+        long hash1 = buffer.getLong();
+        long hash2 = buffer.getLong();
+        long[] offsets = new long[numHashes];
+        long combinedHash = hash1;
+        for (int i = 0; i < numHashes; i++) {
+            offsets[i] = (combinedHash & Long.MAX_VALUE) % numBits;
+            combinedHash += hash2;
+        }
+        return offsets;
+    }
+
+    public boolean mightContain(long[] offsets) {
+        for (long offset : offsets) {
+            if ((bits.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(long[] offsets) {
+        for (long offset : offsets) {
+            int index = (int) (offset >>> 6);
+            long mask = 1L << offset;
+            long word;
+            do {
+                word = bits.get(index);
+            } while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask));
+        }
+    }
+
+    /**
+     * 转换为Redis位图的字节：Redis位图的offset 0对应第一个字节的最高位
+     */
+    public byte[] toRedisBytes() {
+        byte[] bytes = new byte[(int) (numBits / 8)];
+        for (int index = 0; index < bits.length(); index++) {
+            long word = bits.get(index);
+            for (int bit = 0; word != 0 && bit < 64; bit++) {
+                if ((word & (1L << bit)) != 0) {
+                    long offset = ((long) index << 6) + bit;
+                    bytes[(int) (offset >>> 3)] |= 0x80 >>> (offset & 7);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 将Redis位图合并到本地位图
+     */
+    public void mergeRedisBytes(byte[] bytes) {
+        int length = (int) Math.min(bytes.length, numBits / 8);
+        for (int i = 0; i < length; i++) {
+            for (int bit = 0; bytes[i] != 0 && bit < 8; bit++) {
+                if ((bytes[i] & (0x80 >>> bit)) != 0) {
+                    put(new long[]{((long) i << 3) + bit});
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.backend.dao.base.BaseDao;
+import com.boydguy.generate.utils.ComUtils;
+import com.boydguy.generate.utils.RedisUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import tk.mybatis.mapper.entity.Example;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按实体类管理主键布隆过滤器：
+ * 1、第一次按主键查询时在单独的构建线程中执行：Redis中已有构建完毕的位图时直接加载，否则由拿到租约的节点查询全部主键后写入Redis
+ * 2、BaseDao新增数据后，主键同时写入本地位图与Redis位图
+ * 3、本地位图判断不存在时，再读取Redis位图确认，其它节点新增的主键只写入了Redis位图；一次查询的所有主键在一次管道往返中确认
+ * 4、判断主键不存在的空结果只保存在一级缓存中，按主键登记在本地，新增该主键的数据时(本节点或其它节点广播)清除
+ * 过滤器未就绪或Redis异常时不拦截任何查询
+ */
+@Slf4j
+@Component
+public class PrimaryKeyBloomFilters {
+
+    static final String BLOOM_KEY_PREFIX = "daoBloom:";
+    private static final long BUILD_LEASE_MILLIS = 60000;
+    /**
+     * 本地登记的空结果主键数量上限，随机主键的穿透攻击不会无限占用内存
+     */
+    private static final long NEGATIVE_MAX_ENTRIES = 100000;
+
+    private final ConcurrentHashMap<Class<?>, Optional<PrimaryKeyBloomFilter>> filterMap = new ConcurrentHashMap<>();
+    /**
+     * 实体主键 -> 布隆过滤器判断不存在时保存在一级缓存中的空结果cache key，与一级缓存中的空结果同时过期
+     */
+    private final Cache<String, Set<String>> negatives;
+    private DaoCacheProperties properties;
+    private DaoCacheExecutor executor;
+
+    @Autowired
+    public PrimaryKeyBloomFilters(DaoCacheProperties properties, DaoCacheExecutor executor) {
+        this.properties = properties;
+        this.executor = executor;
+        this.negatives = CacheBuilder.newBuilder()
+                .maximumSize(NEGATIVE_MAX_ENTRIES)
+                .expireAfterAccess(Math.max(properties.getNegativeEhcacheTimeout(), 1), TimeUnit.SECONDS)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return properties.isBloomEnabled();
+    }
+
+    /**
+     * 判断多个主键中是否有可能存在的主键，返回false时所有主键一定都不存在
+     * 本地位图判断不存在的主键在一次管道往返中读取Redis位图，并确认Redis位图是否仍然就绪
+     */
+    public boolean mightContainAny(Object dao, Class<?> entityClass, List<?> primaryKeys) {
+        PrimaryKeyBloomFilter filter = getFilter(entityClass);
+        if (filter == null || primaryKeys.isEmpty()) {
+            return true;
+        }
+        if (!filter.isReady()) {
+            scheduleBuild(filter, dao, entityClass);
+            return true;
+        }
+        List<long[]> absentOffsets = new ArrayList<>(primaryKeys.size());
+        for (Object primaryKey : primaryKeys) {
+            if (primaryKey == null) {
+                return true;
+            }
+            long[] offsets = filter.offsets(primaryKey);
+            if (filter.mightContain(offsets)) {
+                return true;
+            }
+            absentOffsets.add(offsets);
+        }
+        try {
+            long[] redisOffsets = absentOffsets.stream().flatMapToLong(Arrays::stream).toArray();
+            Map.Entry<List<Boolean>, Boolean> redisBits = RedisUtils.getBitsAndExists(filter.getBitsKey(), redisOffsets,
+                    filter.getReadyKey());
+            boolean found = false;
+            int from = 0;
+            for (long[] offsets : absentOffsets) {
+                if (!redisBits.getKey().subList(from, from + offsets.length).contains(false)) {
+                    filter.put(offsets);//其它节点新增的主键
+                    found = true;
+                }
+                from += offsets.length;
+            }
+            if (found) {
+                return true;
+            }
+            if (!redisBits.getValue()) {
+                filter.setReady(false);//其它节点新增数据时未拿到主键
+                return true;
+            }
+            return false;
+        } catch (Exception ex) {
+            log.error(ComUtils.printException(ex));
+            return true;
+        }
+    }
+
+    /**
+     * 新增数据的主键写入布隆过滤器
+     * 主键为空(如未回写自增主键)时位图无法包含该数据：本地过滤器标记为未就绪并删除Redis中的就绪标记，下次按主键查询时重新构建
+     */
+    public void put(Object dao, Collection<?> records) {
+        Class<?> entityClass = entityClassOf(dao);
+        PrimaryKeyBloomFilter filter = getFilter(entityClass);
+        if (filter == null) {
+            return;
+        }
+        boolean unknownPrimaryKey = false;
+        List<Long> redisOffsets = new ArrayList<>();
+        for (Object record : records) {
+            Object primaryKey = PrimaryKeys.of(record);
+            if (primaryKey == null) {
+                unknownPrimaryKey = true;
+                continue;
+            }
+            long[] offsets = filter.offsets(primaryKey);
+            filter.put(offsets);
+            for (long offset : offsets) {
+                redisOffsets.add(offset);
+            }
+        }
+        if (redisOffsets.size() > 0) {
+            RedisUtils.setBits(filter.getBitsKey(), redisOffsets.stream().mapToLong(Long::longValue).toArray());
+        }
+        if (unknownPrimaryKey) {
+            log.warn("{} 新增数据后未获取到主键，布隆过滤器需要重新构建", filter.getEntityName());
+            filter.setReady(false);
+            RedisUtils.removeCache(Collections.singletonList(filter.getReadyKey()));
+        }
+    }
+
+    /**
+     * 登记布隆过滤器判断主键不存在时保存在一级缓存中的空结果
+     */
+    public void registerNegative(String entityName, Collection<?> primaryKeys, String cacheKey) {
+        for (String negativeKey : negativeKeys(entityName, primaryKeys)) {
+            negatives.asMap().computeIfAbsent(negativeKey, key -> ConcurrentHashMap.newKeySet()).add(cacheKey);
+        }
+    }
+
+    /**
+     * 新增了这些主键的数据：取出并删除按这些主键登记的空结果cache key
+     */
+    public Set<String> takeNegatives(Collection<String> negativeKeys) {
+        Set<String> cacheKeys = new HashSet<>();
+        for (String negativeKey : negativeKeys) {
+            Set<String> negativeCacheKeys = negatives.asMap().remove(negativeKey);
+            if (negativeCacheKeys != null) {
+                cacheKeys.addAll(negativeCacheKeys);
+            }
+        }
+        return cacheKeys;
+    }
+
+    /**
+     * 空结果登记使用的实体主键，主键统一按字符串处理，与主键的Java类型无关
+     */
+    public List<String> negativeKeys(String entityName, Collection<?> primaryKeys) {
+        List<String> negativeKeys = new ArrayList<>(primaryKeys.size());
+        for (Object primaryKey : primaryKeys) {
+            negativeKeys.add(entityName + ":" + primaryKey);
+        }
+        return negativeKeys;
+    }
+
+    /**
+     * 获取BaseDao的实体类
+     */
+    public Class<?> entityClassOf(Object dao) {
+        return ResolvableType.forInstance(dao).as(BaseDao.class).getGeneric(0).resolve();
+    }
+
+    private PrimaryKeyBloomFilter getFilter(Class<?> entityClass) {
+        if (entityClass == null) {
+            return null;
+        }
+        return filterMap.computeIfAbsent(entityClass, clazz -> {
+            Field primaryKeyField = PrimaryKeys.field(clazz);
+            if (primaryKeyField == null) {
+                log.warn("{} 没有唯一的@Id主键，不使用布隆过滤器", clazz.getName());
+                return Optional.empty();
+            }
+            return Optional.of(new PrimaryKeyBloomFilter(BLOOM_KEY_PREFIX, clazz.getName(), primaryKeyField.getName(),
+                    properties.getBloomExpectedInsertions(), properties.getBloomFpp()));
+        }).orElse(null);
+    }
+
+    private void scheduleBuild(PrimaryKeyBloomFilter filter, Object dao, Class<?> entityClass) {
+        if (!filter.getBuilding().compareAndSet(false, true)) {
+            return;
+        }
+        boolean submitted = executor.submitBuild(() -> {
+            try {
+                build(filter, dao, entityClass);
+            } catch (Exception ex) {
+                log.error("构建 {} 的布隆过滤器时发生异常：{}", filter.getEntityName(), ComUtils.printException(ex));
+            } finally {
+                filter.getBuilding().set(false);
+            }
+        });
+        if (!submitted) {
+            filter.getBuilding().set(false);
+        }
+    }
+
+    private void build(PrimaryKeyBloomFilter filter, Object dao, Class<?> entityClass) {
+        Boolean redisReady = RedisUtils.exists(filter.getReadyKey());
+        if (redisReady != null && redisReady) {
+            byte[] redisBytes = RedisUtils.getBytes(filter.getBitsKey());
+            if (redisBytes != null) {
+                filter.mergeRedisBytes(redisBytes);
+                filter.setReady(true);
+                log.info("已从Redis加载 {} 的布隆过滤器", filter.getEntityName());
+                return;
+            }
+        }
+
+        String leaseValue = RedisUtils.tryRedisLock(filter.getLeaseKey(), BUILD_LEASE_MILLIS);
+        if (leaseValue == null) {
+            return;//其它节点正在构建，下次按主键查询时再加载
+        }
+        try {
+            // 只查询主键列；dao是被代理的原始对象，查询不经过缓存
+            Example example = new Example(entityClass);
+            example.selectProperties(filter.getPrimaryKeyName());
+            List<?> records = ((BaseDao<?>) dao).selectByExample(example);
+            for (Object record : records) {
+                Object primaryKey = PrimaryKeys.of(record);
+                if (primaryKey != null) {
+                    filter.put(filter.offsets(primaryKey));
+                }
+            }
+            // 与构建期间其它节点写入的位合并，而不是覆盖
+            RedisUtils.putBytes(filter.getBuildKey(), filter.toRedisBytes());
+            RedisUtils.bitOr(filter.getBitsKey(), filter.getBitsKey(), filter.getBuildKey());
+            RedisUtils.removeCache(Collections.singletonList(filter.getBuildKey()));
+            RedisUtils.putValue(filter.getReadyKey(), System.currentTimeMillis());
+
+            byte[] redisBytes = RedisUtils.getBytes(filter.getBitsKey());
+            if (redisBytes != null) {
+                filter.mergeRedisBytes(redisBytes);
+            }
+            filter.setReady(true);
+            log.info("已构建 {} 的布隆过滤器，主键数量：{}", filter.getEntityName(), records.size());
+        } finally {
+            RedisUtils.releaseRedisLock(filter.getLeaseKey(), leaseValue);
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.boydguy.backend.dao.aspect;
+
+import javax.persistence.Id;
+import java.lang.reflect.Field;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体类主键(@Id)的反射工具，只支持单一主键，联合主键按没有主键处理
+ */
+public class PrimaryKeys {
+
+    private static final ConcurrentHashMap<Class<?>, Optional<Field>> PRIMARY_KEY_FIELD_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 查找实体类中唯一的@Id字段，没有或有多个时返回null
+     */
+    public static Field field(Class<?> entityClass) {
+        if (entityClass == null) {
+            return null;
+        }
+        return PRIMARY_KEY_FIELD_MAP.computeIfAbsent(entityClass, clazz -> Optional.ofNullable(resolveField(clazz))).orElse(null);
+    }
+
+    /**
+     * 读取实体的主键值，不是实体类时返回null
+     */
+    public static Object of(Object entity) {
+        Field primaryKeyField = entity == null ? null : field(entity.getClass());
+        if (primaryKeyField == null) {
+            return null;
+        }
+        try {
+            return primaryKeyField.get(entity);
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException("无法读取主键" + primaryKeyField.getName(), ex);
+        }
+    }
+
+    /**
+     * 实体名称：声明@Id字段的类的完整限定名，匿名子类(如new Product(){{...}})与原类得到相同的结果
+     */
+    public static String entityName(Class<?> entityClass) {
+        Field primaryKeyField = field(entityClass);
+        return primaryKeyField == null ? null : primaryKeyField.getDeclaringClass().getName();
+    }
+
+    private static Field resolveField(Class<?> entityClass) {
+        Field primaryKeyField = null;
+        for (Class<?> clazz = entityClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(Id.class)) {
+                    continue;
+                }
+                if (primaryKeyField != null) {
+                    return null;
+                }
+                primaryKeyField = field;
+            }
+        }
+        if (primaryKeyField != null) {
+            primaryKeyField.setAccessible(true);
+        }
+        return primaryKeyField;
+    }
+
+}
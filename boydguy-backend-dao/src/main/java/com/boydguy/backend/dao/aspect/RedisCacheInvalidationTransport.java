@@ -0,0 +1,45 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.RedisUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * 通过Redis发布订阅广播缓存清除消息
+ */
+@Component
+public class RedisCacheInvalidationTransport implements CacheInvalidationTransport {
+
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    private String channel;
+
+    @Autowired
+    public RedisCacheInvalidationTransport(RedisMessageListenerContainer redisMessageListenerContainer,
+                                           DaoCacheProperties properties) {
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+        this.channel = properties.getInvalidationChannel();
+    }
+
+    @Override
+    public String getName() {
+        return "redis";
+    }
+
+    @Override
+    public void publish(String message) {
+        RedisUtils.publish(channel, message);
+    }
+
+    @Override
+    public void subscribe(Consumer<String> consumer) {
+        redisMessageListenerContainer.addMessageListener(
+                (message, pattern) -> consumer.accept(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(channel));
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.boydguy.backend.dao.aspect;
+
+import lombok.Getter;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 登记表中的被代理方法：同一个方法的明文描述只保存一份，所有cache key共享
+ */
+@Getter
+public class RegisteredMethod {
+    /**
+     * 方法签名的64位ID
+     */
+    private final long methodId;
+    /**
+     * 不包含参数值的方法描述，写入Redis的方法表
+     */
+    private final MethodDescription template;
+    /**
+     * 方法的明文描述，例如：BaseDao<Product>.selectByExample(Example)
+     */
+    private final String description;
+    /**
+     * 该方法已登记的cache key
+     */
+    final Set<CacheKeyId> cacheKeys = ConcurrentHashMap.newKeySet();
+
+    RegisteredMethod(long methodId, MethodDescription template) {
+        this.methodId = methodId;
+        this.template = template;
+        this.description = CacheKeyPatternIndex.describe(template);
+    }
+
+    public String getClassFullPath() {
+        return template.getClassFullPath();
+    }
+
+    /**
+     * 方法ID的十六进制形式，作为Redis方法表中的field
+     */
+    public String getMethodIdHex() {
+        return Long.toHexString(methodId);
+    }
+
+    /**
+     * 按照MethodCacheDescriptor的规则根据方法描述计算方法签名
+     */
+    static String signature(MethodDescription methodDesc) {
+        String[] paramTypes = methodDesc.getMethodParams() == null ? new String[0] : methodDesc.getMethodParams().stream()
+                .map(MethodParams::getParamType).toArray(String[]::new);
+        return String.join("$", methodDesc.getModifier(), methodDesc.getReturnType(), methodDesc.getClassFullPath(),
+                methodDesc.getMethodName()) + "(" + String.join(",", paramTypes) + ")";
+    }
+
+}
@@ -68,19 +68,19 @@ public abstract class BaseDao<T extends Serializable> {
     }
 
     // 根据主键进行删除，查询条件使用等号
-    @ClearAppCache(methodName = "selectByPrimaryKey", paramTypes = {"java.lang.Object"})
+    @ClearAppCache(methodName = "selectByPrimaryKey", paramTypes = {"java.lang.Object"}, byPrimaryKey = true)
     public int deleteByPrimaryKey(Object primaryKey) {
         return mapper.deleteByPrimaryKey(primaryKey);
     }
 
     // 根据主键更新属性，null的值也会更新
-    @ClearAppCache(methodName = "select", paramTypes = {"T"})
+    @ClearAppCache(methodName = "select", paramTypes = {"T"}, byPrimaryKey = true)
     public int updateByPrimaryKey(T record) {
         return mapper.updateByPrimaryKey(record);
     }
 
     // 根据主键更新属性不为null的值
-    @ClearAppCache(methodName = "select", paramTypes = {"T"})
+    @ClearAppCache(methodName = "select", paramTypes = {"T"}, byPrimaryKey = true)
     public int updateByPrimaryKeySelective(T record) {
         return mapper.updateByPrimaryKeySelective(record);
     }
@@ -141,7 +141,7 @@ public abstract class BaseDao<T extends Serializable> {
     }
 
     // 根据主键@Id进行删除，多个Id以逗号,分割
-    @ClearAppCache(methodName = "selectByIds", paramTypes = {"java.lang.String"})
+    @ClearAppCache(methodName = "selectByIds", paramTypes = {"java.lang.String"}, byPrimaryKey = true)
     public int deleteByIds(String ids) {
         return idsMapper.deleteByIds(ids);
     }
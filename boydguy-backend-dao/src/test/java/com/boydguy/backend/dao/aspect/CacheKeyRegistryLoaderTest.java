@@ -0,0 +1,113 @@
+package com.boydguy.backend.dao.aspect;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CacheKeyRegistryLoaderTest {
+
+    private static final String APP_CACHE_KEY = CacheKeyRegistry.APP_CACHE_KEY;
+
+    private final DaoCacheProperties properties = new DaoCacheProperties();
+    private final Murmur3CacheKeyEncoder encoder = new Murmur3CacheKeyEncoder();
+    private final MethodCacheDescriptor selectOne = TestDescriptors.of("selectOne");
+    private final Map<String, Long> loaded = new HashMap<>();
+    private FakeRedis redis;
+    private CacheKeyRegistry registry;
+    private CacheKeyRegistryLoader loader;
+    private RegisteredMethod method;
+
+    @Before
+    public void setUp() {
+        properties.setRegistryBuckets(4);
+        properties.setRegistryLoadBatchSize(2);//多于一页
+        redis = new FakeRedis();
+        registry = new CacheKeyRegistry(properties, new CacheKeyPatternIndex(), new DaoCacheExecutor(properties));
+        loader = new CacheKeyRegistryLoader(redis.getStringRedisTemplate(), TestDescriptors.OBJECT_MAPPER, properties, registry);
+        method = registry.method(selectOne);
+    }
+
+    /**
+     * 旧版本未分桶的哈希：缓存仍然存在的登记迁移到各自的分桶哈希，旧哈希中的登记全部删除
+     */
+    @Test
+    public void legacyHashIsMigratedToBuckets() throws IOException {
+        String live1 = cacheKey(1);
+        String live2 = cacheKey(2);
+        String expired = cacheKey(3);
+        redis.set(live1, bytes("value"), 60000);
+        redis.set(live2, bytes("value"), 60000);
+        for (int id = 1; id <= 3; id++) {
+            redis.putHashEntry(APP_CACHE_KEY, cacheKey(id), registryValue(id));
+        }
+
+        assertEquals(2, loader.loadAll(APP_CACHE_KEY, this::register));
+        assertEquals(new HashSet<>(Arrays.asList(live1, live2)), loaded.keySet());
+        assertTrue(loaded.get(live1) > 50000);
+        assertFalse(redis.exists(APP_CACHE_KEY));
+        assertEquals(registryValue(1), redis.hash(registry.bucketKey(APP_CACHE_KEY, live1)).get(live1));
+        assertEquals(registryValue(2), redis.hash(registry.bucketKey(APP_CACHE_KEY, live2)).get(live2));
+        for (String bucketKey : redis.keys(APP_CACHE_KEY + ":")) {
+            assertFalse(redis.hash(bucketKey).containsKey(expired));
+        }
+    }
+
+    /**
+     * 分桶哈希中的登记原地加载，缓存已过期的登记被删除
+     */
+    @Test
+    public void bucketEntriesAreLoadedInPlace() throws IOException {
+        String live = cacheKey(1);
+        String expired = cacheKey(2);
+        redis.set(live, bytes("value"), 60000);
+        redis.putHashEntry(registry.bucketKey(APP_CACHE_KEY, live), live, registryValue(1));
+        redis.putHashEntry(registry.bucketKey(APP_CACHE_KEY, expired), expired, registryValue(2));
+
+        assertEquals(1, loader.loadAll(APP_CACHE_KEY, this::register));
+        assertEquals(Collections.singleton(live), loaded.keySet());
+        assertEquals(registryValue(1), redis.hash(registry.bucketKey(APP_CACHE_KEY, live)).get(live));
+        assertFalse(redis.hash(registry.bucketKey(APP_CACHE_KEY, expired)).containsKey(expired));
+    }
+
+    /**
+     * 方法不在方法表中的登记无法再被清除：缓存与登记一起删除
+     */
+    @Test
+    public void entryOfUnknownMethodIsRemovedWithItsCache() throws IOException {
+        String cacheKey = cacheKey(1);
+        redis.set(cacheKey, bytes("value"), 60000);
+        redis.putHashEntry(registry.bucketKey(APP_CACHE_KEY, cacheKey), cacheKey, "ffff:[1]");
+
+        assertEquals(0, loader.loadAll(APP_CACHE_KEY, this::register));
+        assertTrue(loaded.isEmpty());
+        assertFalse(redis.exists(cacheKey));
+        assertFalse(redis.hash(registry.bucketKey(APP_CACHE_KEY, cacheKey)).containsKey(cacheKey));
+    }
+
+    private void register(String cacheKey, RegisteredMethod registeredMethod, byte[] args, long expireMillis) {
+        assertSame(method, registeredMethod);
+        loaded.put(cacheKey, expireMillis);
+    }
+
+    private String cacheKey(long id) {
+        return encoder.encode(selectOne, args(id));
+    }
+
+    private String registryValue(long id) {
+        return CacheKeyRegistry.registryValue(method, registry.encodeArgs(args(id)));
+    }
+
+    private static Object[] args(long id) {
+        return new Object[]{id, "name"};
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.boydguy.backend.dao.aspect;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class CacheKeyRegistryTest {
+
+    private static final int MAX_ENTRIES = 100;
+
+    private final DaoCacheProperties properties = new DaoCacheProperties();
+    private final Murmur3CacheKeyEncoder encoder = new Murmur3CacheKeyEncoder();
+    private final MethodCacheDescriptor selectOne = TestDescriptors.of("selectOne");
+    private final List<String> evicted = new CopyOnWriteArrayList<>();
+    private final List<String> evictionThreads = new CopyOnWriteArrayList<>();
+    private DaoCacheExecutor executor;
+    private CacheKeyRegistry registry;
+    private RegisteredMethod method;
+
+    @Before
+    public void setUp() {
+        properties.setRegistryMaxEntries(MAX_ENTRIES);
+        new FakeRedis();
+        executor = new DaoCacheExecutor(properties);
+        registry = new CacheKeyRegistry(properties, new CacheKeyPatternIndex(), executor);
+        registry.onOverflow(keys -> {
+            evictionThreads.add(Thread.currentThread().getName());
+            evicted.addAll(keys);
+        });
+        method = registry.method(selectOne);
+    }
+
+    @After
+    public void tearDown() {
+        executor.destroy();
+    }
+
+    /**
+     * 超过上限时在后台线程中淘汰到上限的95%，被淘汰的登记交给overflow处理
+     */
+    @Test
+    public void overflowIsTrimmedInBackground() throws InterruptedException {
+        for (long id = 0; id <= MAX_ENTRIES; id++) {
+            assertTrue(register(id, 60000));
+        }
+
+        awaitCondition(() -> registry.size() <= MAX_ENTRIES * 0.95 && !evictionThreads.isEmpty());
+        assertEquals(registry.size() + evicted.size(), MAX_ENTRIES + 1);
+        for (String threadName : evictionThreads) {
+            assertTrue(threadName, threadName.startsWith("dao-cache-background-"));
+        }
+        for (String cacheKey : evicted) {
+            assertFalse(registry.contains(cacheKey));
+        }
+        assertFalse(method.cacheKeys.isEmpty());
+        assertEquals(registry.size(), method.cacheKeys.size());
+    }
+
+    /**
+     * 每次淘汰从上次停止的位置继续抽样：重新登记的第一次淘汰的登记即使最早过期，也不会在第二次淘汰时被抽样到
+     */
+    @Test
+    public void samplingResumesWhereLastTrimStopped() throws InterruptedException {
+        for (long id = 0; id <= MAX_ENTRIES; id++) {
+            register(id, 60000);
+        }
+        awaitCondition(() -> evictionThreads.size() == 1);
+        List<String> firstVictims = new ArrayList<>(evicted);
+        evicted.clear();
+        for (String cacheKey : firstVictims) {
+            assertTrue(reregister(cacheKey));
+        }
+
+        // 第一次淘汰的任务可能还没有结束，覆盖登记最后一个，直到再次提交淘汰任务
+        String lastVictim = firstVictims.get(firstVictims.size() - 1);
+        awaitCondition(() -> reregister(lastVictim) && evictionThreads.size() == 2);
+        assertEquals(firstVictims.size(), evicted.size());
+        for (String cacheKey : firstVictims) {
+            assertFalse(cacheKey, evicted.contains(cacheKey));
+            assertTrue(registry.contains(cacheKey));
+        }
+    }
+
+    private boolean register(long id, long expireMillis) {
+        Object[] args = {id, "name"};
+        return registry.register(encoder.encode(selectOne, args), method, registry.encodeArgs(args), expireMillis, false);
+    }
+
+    private boolean reregister(String cacheKey) {
+        return registry.register(cacheKey, method, registry.encodeArgs(new Object[]{cacheKey}), 1000, true);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+}
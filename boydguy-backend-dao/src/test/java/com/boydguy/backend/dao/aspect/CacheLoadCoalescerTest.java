@@ -0,0 +1,145 @@
+package com.boydguy.backend.dao.aspect;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class CacheLoadCoalescerTest {
+
+    private static final String CACHE_KEY = "daoCache:0123456789abcdef0123456789abcdef";
+
+    private final CacheLoadCoalescer coalescer = new CacheLoadCoalescer();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 同一个cache key的并发请求只查询一次，等待的线程通过followerView得到自己的返回值
+     */
+    @Test
+    public void concurrentLoadsShareOneQuery() throws Throwable {
+        Future<Object> leader = loadAsync(blockingLoader("leader"), Function.identity());
+        awaitLeader();
+        List<Future<Object>> followers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            followers.add(loadAsync(blockingLoader("follower"), loaded -> "view of " + loaded));
+        }
+        awaitCoalesced(4);
+        release.countDown();
+
+        assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+        for (Future<Object> follower : followers) {
+            assertEquals("view of leader", follower.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, coalescer.getLeaderLoads());
+        assertEquals(4, coalescer.getCoalescedHits());
+        assertEquals(0, coalescer.getWaitTimeouts());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    /**
+     * 等待超过maxWaitMillis的线程不再等待，自行查询
+     */
+    @Test
+    public void followerLoadsItselfAfterTimeout() throws Throwable {
+        Future<Object> leader = loadAsync(blockingLoader("leader"), Function.identity());
+        awaitLeader();
+
+        long start = System.nanoTime();
+        Object follower = coalescer.load(CACHE_KEY, 100, () -> "follower", loaded -> "view of " + loaded);
+        assertEquals("follower", follower);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        assertEquals(1, coalescer.getWaitTimeouts());
+
+        release.countDown();
+        assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 查询线程的异常同样抛给等待的线程，之后的请求重新查询
+     */
+    @Test
+    public void leaderFailureIsRethrownToFollowers() throws Throwable {
+        IllegalStateException failure = new IllegalStateException("db down");
+        Future<Object> leader = loadAsync(() -> {
+            loads.incrementAndGet();
+            release.await();
+            throw failure;
+        }, Function.identity());
+        awaitLeader();
+        Future<Object> follower = loadAsync(() -> "follower", Function.identity());
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertSame(failure, causeOf(leader));
+        assertSame(failure, causeOf(follower));
+        assertEquals(0, coalescer.getInFlight());
+        assertEquals("next", coalescer.load(CACHE_KEY, 5000, () -> "next", Function.identity()));
+        assertEquals(2, coalescer.getLeaderLoads());
+    }
+
+    /**
+     * 在另一个线程中加载，查询的异常通过Future抛出
+     */
+    private Future<Object> loadAsync(CacheLoadCoalescer.Loader loader, Function<Object, Object> followerView) {
+        return executor.submit(() -> {
+            try {
+                return coalescer.load(CACHE_KEY, 5000, loader, followerView);
+            } catch (Exception | Error ex) {
+                throw ex;
+            } catch (Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+        });
+    }
+
+    private CacheLoadCoalescer.Loader blockingLoader(String value) {
+        return () -> {
+            loads.incrementAndGet();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return value;
+        };
+    }
+
+    private void awaitLeader() throws InterruptedException {
+        awaitCondition(() -> coalescer.getInFlight() == 1 && loads.get() == 1);
+    }
+
+    private void awaitCoalesced(int followers) throws InterruptedException {
+        awaitCondition(() -> coalescer.getCoalescedHits() == followers);
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("等待超时", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static Throwable causeOf(Future<Object> future) throws InterruptedException, TimeoutException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("应当抛出查询线程的异常");
+            return null;
+        } catch (ExecutionException ex) {
+            return ex.getCause();
+        }
+    }
+
+}
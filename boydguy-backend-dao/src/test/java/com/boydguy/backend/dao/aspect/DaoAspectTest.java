@@ -0,0 +1,364 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.backend.dao.base.BaseDao;
+import com.boydguy.generate.cache.TinyLfuL1CacheProvider;
+import com.boydguy.generate.utils.SpringContextUtils;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import tk.mybatis.mapper.common.IdsMapper;
+import tk.mybatis.mapper.common.Mapper;
+import tk.mybatis.mapper.common.MySqlMapper;
+
+import javax.persistence.Id;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 通过模拟的切入点调用DaoAspect，数据库为模拟的Mapper，Redis为内存中的FakeRedis
+ */
+public class DaoAspectTest {
+
+    private static final String LEASE_KEY_PREFIX = "daoCacheLease:";
+
+    private final DaoCacheProperties properties = new DaoCacheProperties();
+    @SuppressWarnings("unchecked")
+    private final Mapper<Product> mapper = mock(Mapper.class);
+    private final ProductDao dao = new ProductDao(mapper);
+    private final MethodCacheDescriptorRegistry descriptorRegistry = new MethodCacheDescriptorRegistry(TestDescriptors.OBJECT_MAPPER);
+    private FakeRedis redis;
+    private DaoAspect aspect;
+
+    /**
+     * ComUtils、JsonUtils从Spring容器中获取ObjectMapper
+     */
+    @BeforeClass
+    public static void setUpContext() {
+        StaticApplicationContext context = new StaticApplicationContext();
+        context.getBeanFactory().registerSingleton("objectMapper", TestDescriptors.OBJECT_MAPPER);
+        context.refresh();
+        new SpringContextUtils().setApplicationContext(context);
+    }
+
+    @Before
+    public void setUp() {
+        properties.setL1Provider("tinylfu");
+        redis = new FakeRedis();
+        aspect = newAspect();
+    }
+
+    /**
+     * 参数不能生成cache key时直接查询数据库，结果不缓存
+     */
+    @Test
+    public void unsupportedArgumentQueriesDatabase() throws Throwable {
+        Object primaryKey = new Object();
+        Product product = new Product(1L, "a");
+        when(mapper.selectByPrimaryKey(primaryKey)).thenReturn(product);
+
+        assertSame(product, select(aspect, "selectByPrimaryKey", primaryKey));
+        assertSame(product, select(aspect, "selectByPrimaryKey", primaryKey));
+        verify(mapper, times(2)).selectByPrimaryKey(primaryKey);
+        assertEquals(Collections.emptySet(), redis.keys(CacheKeyEncoder.KEY_NAMESPACE));
+    }
+
+    /**
+     * 修改数据后通过主键的倒排索引清除二级缓存与Redis中的索引，之后的查询重新访问数据库
+     */
+    @Test
+    public void updateEvictsCachedResultThroughPrimaryKeyIndex() throws Throwable {
+        when(mapper.selectByPrimaryKey(1L)).thenReturn(new Product(1L, "a"));
+        assertEquals("a", ((Product) select(aspect, "selectByPrimaryKey", 1L)).getName());
+        assertEquals("a", ((Product) select(aspect, "selectByPrimaryKey", 1L)).getName());
+        verify(mapper, times(1)).selectByPrimaryKey(1L);
+        String cacheKey = cacheKeyOf("selectByPrimaryKey", 1L);
+        assertTrue(redis.exists(cacheKey));
+        assertEquals(Collections.singleton(cacheKey), redis.members(indexKey(1L)));
+
+        modify(aspect, "updateByPrimaryKey", new Product(1L, "b"));
+        verify(mapper).updateByPrimaryKey(any());
+        assertFalse(redis.exists(cacheKey));
+        assertFalse(redis.exists(indexKey(1L)));
+
+        when(mapper.selectByPrimaryKey(1L)).thenReturn(new Product(1L, "b"));
+        assertEquals("b", ((Product) select(aspect, "selectByPrimaryKey", 1L)).getName());
+        verify(mapper, times(2)).selectByPrimaryKey(1L);
+    }
+
+    /**
+     * 其它节点修改数据：它的本地索引中没有这个cache key，通过Redis中的索引找到并清除二级缓存
+     */
+    @Test
+    public void updateOnOtherNodeEvictsThroughRedisIndex() throws Throwable {
+        when(mapper.selectByPrimaryKey(1L)).thenReturn(new Product(1L, "a"));
+        select(aspect, "selectByPrimaryKey", 1L);
+        String cacheKey = cacheKeyOf("selectByPrimaryKey", 1L);
+        assertTrue(redis.exists(cacheKey));
+
+        DaoAspect otherNode = newAspect();
+        modify(otherNode, "updateByPrimaryKey", new Product(1L, "b"));
+        assertFalse(redis.exists(cacheKey));
+        assertFalse(redis.exists(indexKey(1L)));
+
+        when(mapper.selectByPrimaryKey(1L)).thenReturn(new Product(1L, "b"));
+        assertEquals("b", ((Product) select(otherNode, "selectByPrimaryKey", 1L)).getName());
+        verify(mapper, times(2)).selectByPrimaryKey(1L);
+    }
+
+    /**
+     * 修改数据后实体的数据版本号加1，查询类方法使用新的cache key，不再命中旧的缓存
+     */
+    @Test
+    public void updateBumpsGenerationOfQueryMethods() throws Throwable {
+        when(mapper.selectAll()).thenReturn(Collections.singletonList(new Product(1L, "a")));
+        select(aspect, "selectAll");
+        select(aspect, "selectAll");
+        verify(mapper, times(1)).selectAll();
+        String oldCacheKey = cacheKeyOf("selectAll");
+        assertTrue(redis.exists(oldCacheKey));
+        assertFalse("查询类方法不登记倒排索引", redis.exists(indexKey(1L)));
+
+        modify(aspect, "updateByPrimaryKey", new Product(1L, "b"));
+        assertEquals("1", redis.get(generationKey()));
+        assertNotEquals(oldCacheKey, cacheKeyOf("selectAll"));
+
+        select(aspect, "selectAll");
+        verify(mapper, times(2)).selectAll();
+        assertTrue(redis.exists(cacheKeyOf("selectAll")));
+    }
+
+    /**
+     * 新增数据：数据版本号加1，按新增主键查询得到的null结果被清除
+     */
+    @Test
+    public void insertBumpsGenerationAndEvictsNullResult() throws Throwable {
+        when(mapper.selectAll()).thenReturn(Collections.emptyList());
+        select(aspect, "selectAll");
+        assertNull(select(aspect, "selectByPrimaryKey", 2L));
+        assertNull(select(aspect, "selectByPrimaryKey", 2L));
+        verify(mapper, times(1)).selectByPrimaryKey(2L);
+        String nullCacheKey = cacheKeyOf("selectByPrimaryKey", 2L);
+        assertTrue(redis.exists(nullCacheKey));
+
+        Product product = new Product(2L, "new");
+        aspect.insertAdvice(joinPoint("insert", product));
+        assertEquals("1", redis.get(generationKey()));
+        assertFalse(redis.exists(nullCacheKey));
+
+        when(mapper.selectByPrimaryKey(2L)).thenReturn(product);
+        when(mapper.selectAll()).thenReturn(Collections.singletonList(product));
+        assertEquals("new", ((Product) select(aspect, "selectByPrimaryKey", 2L)).getName());
+        assertEquals(1, ((List<?>) select(aspect, "selectAll")).size());
+        verify(mapper, times(2)).selectByPrimaryKey(2L);
+        verify(mapper, times(2)).selectAll();
+    }
+
+    /**
+     * 拿到租约的节点查询数据库，查询期间持有租约，结束后释放
+     */
+    @Test
+    public void leaseHolderLoadsAndReleasesLease() throws Throwable {
+        properties.setLeaseEnabled(true);
+        String leaseKey = LEASE_KEY_PREFIX + cacheKeyOf("selectByPrimaryKey", 1L);
+        AtomicBoolean leaseHeld = new AtomicBoolean();
+        when(mapper.selectByPrimaryKey(1L)).thenAnswer(invocation -> {
+            leaseHeld.set(redis.exists(leaseKey));
+            return new Product(1L, "a");
+        });
+
+        assertEquals("a", ((Product) select(aspect, "selectByPrimaryKey", 1L)).getName());
+        assertTrue(leaseHeld.get());
+        assertFalse(redis.exists(leaseKey));
+    }
+
+    /**
+     * 其它节点持有租约：轮询二级缓存，返回持有租约的节点写入的数据，不查询数据库
+     */
+    @Test
+    public void leaseFollowerReturnsValueLoadedByHolder() throws Throwable {
+        properties.setLeaseEnabled(true);
+        properties.setLeasePollMillis(10);
+        String cacheKey = cacheKeyOf("selectByPrimaryKey", 1L);
+        redis.set(LEASE_KEY_PREFIX + cacheKey, bytes("other-node"), 5000);
+        L2ValueCodec valueCodec = new L2ValueCodec(properties, TestDescriptors.OBJECT_MAPPER);
+        byte[] value = valueCodec.encode(valueCodec.serialize(new Product(1L, "holder"), descriptorOf("selectByPrimaryKey", 1)));
+        ScheduledExecutorService holder = Executors.newSingleThreadScheduledExecutor();
+        try {
+            holder.schedule(() -> redis.set(cacheKey, value, 60000), 100, TimeUnit.MILLISECONDS);
+            assertEquals("holder", ((Product) select(aspect, "selectByPrimaryKey", 1L)).getName());
+        } finally {
+            holder.shutdownNow();
+        }
+        verify(mapper, never()).selectByPrimaryKey(any());
+    }
+
+    /**
+     * 持有租约的节点一直没有写入数据：等待leaseWaitMillis后直接查询数据库，不释放其它节点的租约
+     */
+    @Test
+    public void leaseFollowerQueriesDatabaseAfterWaitTimeout() throws Throwable {
+        properties.setLeaseEnabled(true);
+        properties.setLeaseWaitMillis(200);
+        properties.setLeasePollMillis(10);
+        String leaseKey = LEASE_KEY_PREFIX + cacheKeyOf("selectByPrimaryKey", 1L);
+        redis.set(leaseKey, bytes("other-node"), 5000);
+        when(mapper.selectByPrimaryKey(1L)).thenReturn(new Product(1L, "a"));
+
+        long start = System.currentTimeMillis();
+        assertEquals("a", ((Product) select(aspect, "selectByPrimaryKey", 1L)).getName());
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        verify(mapper).selectByPrimaryKey(1L);
+        assertEquals("other-node", redis.get(leaseKey));
+    }
+
+    /**
+     * 一个应用节点的DaoAspect：每个节点有自己的一级缓存、本地索引与登记表，共享同一个Redis
+     */
+    private DaoAspect newAspect() {
+        DaoCacheExecutor executor = new DaoCacheExecutor(properties);
+        EntityGenerations generations = new EntityGenerations(properties);
+        CacheKeyPatternIndex patternIndex = new CacheKeyPatternIndex();
+        CacheKeyRegistry registry = new CacheKeyRegistry(properties, patternIndex, executor);
+        L2ValueCodec valueCodec = new L2ValueCodec(properties, TestDescriptors.OBJECT_MAPPER);
+        L1OffHeapTier offHeapTier = new L1OffHeapTier(properties);
+        L1WarmSnapshot warmSnapshot = new L1WarmSnapshot(properties);
+        L1Warmup warmup = new L1Warmup(properties);
+        L1CacheRegions l1Regions = new L1CacheRegions(properties, registry,
+                Collections.singletonList(new TinyLfuL1CacheProvider()), offHeapTier, warmSnapshot, warmup, valueCodec);
+        return new DaoAspect(mock(RedisMessageListenerContainer.class),
+                new MethodCacheDescriptorRegistry(TestDescriptors.OBJECT_MAPPER),
+                new Murmur3CacheKeyEncoder(),
+                properties,
+                new CacheLoadCoalescer(),
+                executor,
+                new CacheExpiryPolicy(properties),
+                new PrimaryKeyBloomFilters(properties, executor),
+                new EntityCacheKeyIndex(properties),
+                generations,
+                patternIndex,
+                registry,
+                new CacheInvalidationBus(properties, generations, Collections.emptyList()),
+                new CacheExpiryEventQueue(properties),
+                new CacheKeyRegistryLoader(redis.getStringRedisTemplate(), TestDescriptors.OBJECT_MAPPER, properties, registry),
+                new DaoCacheMetrics(),
+                valueCodec,
+                l1Regions,
+                offHeapTier,
+                warmSnapshot,
+                warmup);
+    }
+
+    private Object select(DaoAspect nodeAspect, String methodName, Object... args) throws Throwable {
+        return nodeAspect.selectAdvice(joinPoint(methodName, args));
+    }
+
+    private void modify(DaoAspect nodeAspect, String methodName, Object... args) throws Throwable {
+        nodeAspect.modifyAdvice(joinPoint(methodName, args));
+    }
+
+    /**
+     * 当前数据版本号下的cache key，与DaoAspect的计算方式相同
+     */
+    private String cacheKeyOf(String methodName, Object... args) {
+        MethodCacheDescriptor descriptor = descriptorOf(methodName, args.length);
+        String generation = redis.get(generationKey());
+        return new Murmur3CacheKeyEncoder().encode(descriptor, args,
+                descriptor.getGenerationName() == null || generation == null ? 0 : Long.parseLong(generation));
+    }
+
+    private MethodCacheDescriptor descriptorOf(String methodName, int parameterCount) {
+        return descriptorRegistry.getDescriptor(ProductDao.class, methodOf(methodName, parameterCount));
+    }
+
+    private static String indexKey(Object primaryKey) {
+        return EntityCacheKeyIndex.INDEX_KEY_PREFIX + Product.class.getName() + ":" + primaryKey;
+    }
+
+    private static String generationKey() {
+        return EntityGenerations.GENERATION_KEY_PREFIX + Product.class.getName();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * BaseDao中指定名称与参数数量的方法
+     */
+    private static Method methodOf(String methodName, int parameterCount) {
+        for (Method method : BaseDao.class.getMethods()) {
+            if (method.getName().equals(methodName) && method.getParameterCount() == parameterCount) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(methodName);
+    }
+
+    /**
+     * 调用BaseDao中指定名称的方法的切入点，proceed通过反射调用dao
+     */
+    private ProceedingJoinPoint joinPoint(String methodName, Object... args) throws Throwable {
+        Method method = methodOf(methodName, args.length);
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getMethod()).thenReturn(method);
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.getTarget()).thenReturn(dao);
+        when(joinPoint.getArgs()).thenReturn(args);
+        when(joinPoint.proceed(any(Object[].class))).thenAnswer(invocation -> method.invoke(dao, (Object[]) invocation.getArgument(0)));
+        return joinPoint;
+    }
+
+    public static class Product implements Serializable {
+        @Id
+        private Long id;
+        private String name;
+
+        public Product() {
+        }
+
+        Product(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    static class ProductDao extends BaseDao<Product> {
+        @SuppressWarnings("unchecked")
+        ProductDao(Mapper<Product> mapper) {
+            super(mapper, mock(MySqlMapper.class), mock(IdsMapper.class));
+        }
+    }
+
+}
@@ -0,0 +1,408 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.utils.RedisUtils;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * 单元测试使用的内存Redis：模拟的StringRedisTemplate、RedisTemplate与RedisConnection在内存中执行缓存用到的命令，
+ * 创建时安装到RedisUtils中；管道中的命令返回null，结果在executePipelined中按StringRedisTemplate的方式反序列化
+ * 未实现的命令抛出UnsupportedOperationException
+ */
+final class FakeRedis {
+
+    /**
+     * key -> 值：字符串为byte[]，哈希为Map，集合为Set
+     */
+    private final Map<String, Object> data = new HashMap<>();
+    private final Map<String, Long> expireAtMap = new HashMap<>();
+    private final ThreadLocal<List<Object>> pipeline = new ThreadLocal<>();
+    private final RedisConnection connection = mock(RedisConnection.class, this::command);
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class, this::template);
+
+    @SuppressWarnings("unchecked")
+    FakeRedis() {
+        new RedisUtils(mock(RedisTemplate.class, this::template), stringRedisTemplate, TestDescriptors.OBJECT_MAPPER);
+    }
+
+    StringRedisTemplate getStringRedisTemplate() {
+        return stringRedisTemplate;
+    }
+
+    synchronized boolean exists(String key) {
+        return live(key) != null;
+    }
+
+    synchronized String get(String key) {
+        byte[] value = (byte[]) live(key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 写入字符串值
+     *
+     * @param ttlMillis 过期时间，单位：毫秒；小于等于0表示不过期
+     */
+    synchronized void set(String key, byte[] value, long ttlMillis) {
+        data.put(key, value);
+        setExpire(key, ttlMillis);
+    }
+
+    synchronized long pTtl(String key) {
+        if (live(key) == null) {
+            return -2;
+        }
+        Long expireAt = expireAtMap.get(key);
+        return expireAt == null ? -1 : Math.max(expireAt - System.currentTimeMillis(), 0);
+    }
+
+    synchronized Set<String> members(String key) {
+        Set<String> set = set(key, false);
+        return set == null ? Collections.emptySet() : new HashSet<>(set);
+    }
+
+    synchronized void addMembers(String key, String... members) {
+        set(key, true).addAll(Arrays.asList(members));
+    }
+
+    synchronized Map<String, String> hash(String key) {
+        Map<String, String> hash = hash(key, false);
+        return hash == null ? Collections.emptyMap() : new HashMap<>(hash);
+    }
+
+    synchronized void putHashEntry(String key, String field, String value) {
+        hash(key, true).put(field, value);
+    }
+
+    /**
+     * 以prefix开头的全部key
+     */
+    synchronized Set<String> keys(String prefix) {
+        Set<String> keys = new TreeSet<>();
+        for (String key : new ArrayList<>(data.keySet())) {
+            if (key.startsWith(prefix) && live(key) != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private Object live(String key) {
+        Long expireAt = expireAtMap.get(key);
+        if (expireAt != null && expireAt <= System.currentTimeMillis()) {
+            delete(key);
+        }
+        return data.get(key);
+    }
+
+    private boolean delete(String key) {
+        expireAtMap.remove(key);
+        return data.remove(key) != null;
+    }
+
+    private void setExpire(String key, long ttlMillis) {
+        if (ttlMillis > 0) {
+            expireAtMap.put(key, System.currentTimeMillis() + ttlMillis);
+        } else {
+            expireAtMap.remove(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hash(String key, boolean create) {
+        Object value = live(key);
+        if (value == null && create) {
+            value = new LinkedHashMap<String, String>();
+            data.put(key, value);
+        }
+        return (Map<String, String>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(String key, boolean create) {
+        Object value = live(key);
+        if (value == null && create) {
+            value = new LinkedHashSet<String>();
+            data.put(key, value);
+        }
+        return (Set<String>) value;
+    }
+
+    /**
+     * StringRedisTemplate与RedisTemplate的方法
+     */
+    @SuppressWarnings("unchecked")
+    private Object template(InvocationOnMock invocation) throws Throwable {
+        Object[] args = invocation.getArguments();
+        switch (invocation.getMethod().getName()) {
+            case "executePipelined":
+                return executePipelined((RedisCallback<?>) args[0], args.length > 1);
+            case "execute":
+                return ((RedisCallback<?>) args[0]).doInRedis(connection);
+            case "hasKey":
+                synchronized (this) {
+                    return live((String) args[0]) != null;
+                }
+            case "delete":
+                synchronized (this) {
+                    if (args[0] instanceof Collection) {
+                        return ((Collection<String>) args[0]).stream().filter(this::delete).count();
+                    }
+                    return delete((String) args[0]);
+                }
+            case "getExpire":
+                long pTtl = pTtl((String) args[0]);
+                return pTtl < 0 ? pTtl : ((TimeUnit) args[1]).convert(pTtl, TimeUnit.MILLISECONDS);
+            case "convertAndSend":
+                return null;
+            case "opsForValue":
+                return mock(ValueOperations.class, this::valueOperation);
+            case "opsForHash":
+                return mock(HashOperations.class, this::hashOperation);
+            case "opsForSet":
+                return mock(SetOperations.class, this::setOperation);
+            default:
+                throw new UnsupportedOperationException(invocation.getMethod().toString());
+        }
+    }
+
+    private synchronized Object valueOperation(InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        String key = (String) args[0];
+        switch (invocation.getMethod().getName()) {
+            case "get":
+                return get(key);
+            case "set":
+                set(key, ((String) args[1]).getBytes(StandardCharsets.UTF_8), 0);
+                return null;
+            case "increment":
+                long value = get(key) == null ? 1 : Long.parseLong(get(key)) + 1;
+                data.put(key, String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                return value;
+            default:
+                throw new UnsupportedOperationException(invocation.getMethod().toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized Object hashOperation(InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        String key = (String) args[0];
+        switch (invocation.getMethod().getName()) {
+            case "entries":
+                return new HashMap<Object, Object>(hash(key));
+            case "scan":
+                return new IteratorCursor<>(new ArrayList<Map.Entry<Object, Object>>(new HashMap<Object, Object>(hash(key)).entrySet()));
+            case "put":
+                putHashEntry(key, (String) args[1], (String) args[2]);
+                return null;
+            case "putAll":
+                hash(key, true).putAll((Map<String, String>) args[1]);
+                return null;
+            default:
+                throw new UnsupportedOperationException(invocation.getMethod().toString());
+        }
+    }
+
+    private synchronized Object setOperation(InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        String key = (String) args[0];
+        switch (invocation.getMethod().getName()) {
+            case "members":
+                return members(key);
+            case "add":
+                Set<String> set = set(key, true);
+                return Arrays.stream(args, 1, args.length).filter(member -> set.add((String) member)).count();
+            default:
+                throw new UnsupportedOperationException(invocation.getMethod().toString());
+        }
+    }
+
+    /**
+     * 在管道模式下执行回调，并按StringRedisTemplate的方式反序列化结果；指定了序列化器时(RedisUtils只传入原样返回的序列化器)不做转换
+     */
+    private List<Object> executePipelined(RedisCallback<?> callback, boolean raw) {
+        List<Object> results = new ArrayList<>();
+        pipeline.set(results);
+        try {
+            callback.doInRedis(connection);
+        } finally {
+            pipeline.remove();
+        }
+        if (raw) {
+            return results;
+        }
+        List<Object> deserialized = new ArrayList<>(results.size());
+        for (Object result : results) {
+            deserialized.add(deserialize(result));
+        }
+        return deserialized;
+    }
+
+    private static Object deserialize(Object result) {
+        if (result instanceof byte[]) {
+            return new String((byte[]) result, StandardCharsets.UTF_8);
+        }
+        if (result instanceof Set) {
+            Set<Object> set = new LinkedHashSet<>();
+            ((Set<?>) result).forEach(item -> set.add(deserialize(item)));
+            return set;
+        }
+        if (result instanceof List) {
+            List<Object> list = new ArrayList<>();
+            ((List<?>) result).forEach(item -> list.add(deserialize(item)));
+            return list;
+        }
+        return result;
+    }
+
+    /**
+     * RedisConnection的命令：keyCommands()等返回连接本身；管道模式下记录结果并返回null
+     */
+    private Object command(InvocationOnMock invocation) {
+        String name = invocation.getMethod().getName();
+        if (name.endsWith("Commands")) {
+            return invocation.getMock();
+        }
+        Object result;
+        synchronized (this) {
+            result = execute(name, invocation);
+        }
+        List<Object> results = pipeline.get();
+        if (results == null) {
+            return result;
+        }
+        results.add(result);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object execute(String name, InvocationOnMock invocation) {
+        Object[] args = invocation.getArguments();
+        String key = args.length == 0 || !(args[0] instanceof byte[]) ? null : str(args[0]);
+        switch (name) {
+            case "isClosed":
+                return false;
+            case "close":
+                return null;
+            case "get":
+                return live(key);
+            case "mGet":
+                List<Object> values = new ArrayList<>();
+                for (Object rawKey : args) {
+                    Object value = live(str(rawKey));
+                    values.add(value instanceof byte[] ? value : null);
+                }
+                return values;
+            case "set":
+                if (args.length > 2 && args[3] == RedisStringCommands.SetOption.SET_IF_ABSENT && live(key) != null) {
+                    return false;
+                }
+                data.put(key, args[1]);
+                Expiration expiration = args.length > 2 ? (Expiration) args[2] : Expiration.persistent();
+                setExpire(key, expiration.isPersistent() ? 0 : expiration.getExpirationTimeInMilliseconds());
+                return true;
+            case "pTtl":
+                return pTtl(key);
+            case "expire":
+                if (live(key) == null) {
+                    return false;
+                }
+                setExpire(key, (Long) args[1] * 1000);
+                return true;
+            case "exists":
+                if (invocation.getMethod().getReturnType() == Boolean.class) {
+                    return live(key) != null;
+                }
+                return Arrays.stream(args).filter(rawKey -> live(str(rawKey)) != null).count();
+            case "del":
+                return Arrays.stream(args).filter(rawKey -> delete(str(rawKey))).count();
+            case "hSet":
+                return hash(key, true).put(str(args[1]), str(args[2])) == null;
+            case "hMSet":
+                Map<String, String> hash = hash(key, true);
+                ((Map<byte[], byte[]>) args[1]).forEach((field, value) -> hash.put(str(field), str(value)));
+                return null;
+            case "hDel":
+                Map<String, String> hashToDelete = hash(key, false);
+                long deleted = hashToDelete == null ? 0
+                        : Arrays.stream(args, 1, args.length).filter(field -> hashToDelete.remove(str(field)) != null).count();
+                if (hashToDelete != null && hashToDelete.isEmpty()) {
+                    delete(key);
+                }
+                return deleted;
+            case "sAdd":
+                Set<String> set = set(key, true);
+                return Arrays.stream(args, 1, args.length).filter(member -> set.add(str(member))).count();
+            case "sMembers":
+                Set<byte[]> members = new LinkedHashSet<>();
+                members(key).forEach(member -> members.add(member.getBytes(StandardCharsets.UTF_8)));
+                return members;
+            default:
+                throw new UnsupportedOperationException(invocation.getMethod().toString());
+        }
+    }
+
+    private static String str(Object raw) {
+        return new String((byte[]) raw, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * HSCAN的游标：一次返回哈希的全部字段
+     */
+    private static final class IteratorCursor<T> implements Cursor<T> {
+        private final Iterator<T> iterator;
+        private long position;
+        private boolean closed;
+
+        private IteratorCursor(List<T> items) {
+            this.iterator = items.iterator();
+        }
+
+        @Override
+        public long getCursorId() {
+            return 0;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public Cursor<T> open() {
+            return this;
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            position++;
+            return iterator.next();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
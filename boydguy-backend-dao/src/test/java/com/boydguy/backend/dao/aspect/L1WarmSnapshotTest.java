@@ -0,0 +1,46 @@
+package com.boydguy.backend.dao.aspect;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class L1WarmSnapshotTest {
+
+    private static final long SAVED_AT = 1_600_000_000_000L;
+
+    @Test
+    public void unchangedExpiryIsValid() {
+        long tag = L1WarmSnapshot.tagOf(60000, SAVED_AT);
+        assertEquals(SAVED_AT + 60000, tag);
+        // 重启后经过了30秒，剩余的过期时间相应减少
+        assertTrue(L1WarmSnapshot.isTagValid(tag, 30000, SAVED_AT + 30000));
+        assertTrue(L1WarmSnapshot.isTagValid(tag, 28000, SAVED_AT + 30000));
+        assertTrue(L1WarmSnapshot.isTagValid(tag, 32000, SAVED_AT + 30000));
+    }
+
+    /**
+     * 停机期间被重新写入或延长了过期时间：过期时间点与保存时相差超过误差
+     */
+    @Test
+    public void rewrittenOrExtendedKeyIsInvalid() {
+        long tag = L1WarmSnapshot.tagOf(60000, SAVED_AT);
+        assertFalse(L1WarmSnapshot.isTagValid(tag, 60000, SAVED_AT + 30000));
+        assertFalse(L1WarmSnapshot.isTagValid(tag, 27999, SAVED_AT + 30000));
+    }
+
+    @Test
+    public void evictedKeyIsInvalid() {
+        long tag = L1WarmSnapshot.tagOf(60000, SAVED_AT);
+        assertFalse(L1WarmSnapshot.isTagValid(tag, -2, SAVED_AT + 1000));
+    }
+
+    @Test
+    public void persistentKeyMustStayPersistent() {
+        long tag = L1WarmSnapshot.tagOf(-1, SAVED_AT);
+        assertEquals(Long.MAX_VALUE, tag);
+        assertTrue(L1WarmSnapshot.isTagValid(tag, -1, SAVED_AT + 1000));
+        assertFalse(L1WarmSnapshot.isTagValid(tag, 60000, SAVED_AT + 1000));
+        assertFalse(L1WarmSnapshot.isTagValid(L1WarmSnapshot.tagOf(60000, SAVED_AT), -1, SAVED_AT + 1000));
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.annotation.ApplyAppCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class L2ValueCodecTest {
+
+    private static final int THRESHOLD = 100;
+
+    private DaoCacheProperties properties;
+    private L2ValueCodec codec;
+
+    @Before
+    public void setUp() {
+        properties = new DaoCacheProperties();
+        properties.setCompressThresholdBytes(THRESHOLD);
+        codec = new L2ValueCodec(properties, TestDescriptors.OBJECT_MAPPER);
+    }
+
+    @Test
+    public void belowThresholdIsNotCompressed() {
+        byte[] raw = repeated(THRESHOLD - 1);
+        assertSame(raw, codec.encode(raw));
+        assertSame(raw, codec.decode(raw));
+    }
+
+    @Test
+    public void atThresholdIsCompressed() {
+        byte[] raw = repeated(THRESHOLD);
+        byte[] encoded = codec.encode(raw);
+        assertEquals(L2ValueCodec.CODEC_DEFLATE, encoded[0]);
+        assertTrue(encoded.length < raw.length);
+        assertArrayEquals(raw, codec.decode(encoded));
+        assertTrue(codec.getCompressionRatio() < 1);
+    }
+
+    @Test
+    public void zeroThresholdDisablesCompression() {
+        properties.setCompressThresholdBytes(0);
+        byte[] raw = repeated(THRESHOLD * 10);
+        assertSame(raw, codec.encode(raw));
+    }
+
+    @Test
+    public void dataThatDoesNotShrinkIsStoredRaw() {
+        byte[] raw = new byte[THRESHOLD * 10];
+        new Random(42).nextBytes(raw);
+        raw[0] = '[';
+        assertSame(raw, codec.encode(raw));
+        assertSame(raw, codec.decode(raw));
+        assertEquals(1, codec.getCompressionRatio(), 0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void truncatedDeflateStreamIsRejected() {
+        byte[] encoded = codec.encode(repeated(THRESHOLD * 10));
+        codec.decode(Arrays.copyOf(encoded, encoded.length / 2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void corruptDeflateStreamIsRejected() {
+        byte[] encoded = new byte[]{L2ValueCodec.CODEC_DEFLATE, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+        codec.decode(encoded);
+    }
+
+    /**
+     * 引入标记字节之前写入Redis的json没有标记，直接按json读取
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void legacyJsonWithoutMarkerIsReadAsIs() throws Exception {
+        byte[] legacy = "{\"a\":1,\"b\":2}".getBytes(StandardCharsets.UTF_8);
+        assertSame(legacy, codec.decode(legacy));
+        Map<String, Integer> value = (Map<String, Integer>) codec.deserialize(codec.decode(legacy), TestDescriptors.of("selectJson"));
+        assertEquals(Integer.valueOf(1), value.get("a"));
+        assertEquals(Integer.valueOf(2), value.get("b"));
+    }
+
+    @Test
+    public void compressedJsonRoundTrip() throws Exception {
+        MethodCacheDescriptor descriptor = TestDescriptors.of("selectList");
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < THRESHOLD; i++) {
+            name.append("name");
+        }
+        Object value = Arrays.asList(new TestDescriptors.Sample(1L, name.toString(), Arrays.asList("a", "b")),
+                new TestDescriptors.Sample(2L, name.toString(), null));
+        byte[] raw = codec.serialize(value, descriptor);
+        byte[] encoded = codec.encode(raw);
+        assertEquals(L2ValueCodec.CODEC_DEFLATE, encoded[0]);
+        assertArrayEquals(raw, codec.decode(encoded));
+        assertEquals(TestDescriptors.OBJECT_MAPPER.writeValueAsString(value),
+                TestDescriptors.OBJECT_MAPPER.writeValueAsString(codec.deserialize(codec.decode(encoded), descriptor)));
+    }
+
+    @Test
+    public void smileRoundTrip() throws Exception {
+        MethodCacheDescriptor descriptor = TestDescriptors.of("selectSmile");
+        Object value = Arrays.asList(new TestDescriptors.Sample(1L, "name", Arrays.asList("a", "b")));
+        byte[] raw = codec.serialize(value, descriptor);
+        assertEquals(L2ValueCodec.FORMAT_SMILE, raw[0]);
+        assertTrue(codec.describe(raw).startsWith("smile("));
+        assertEquals(TestDescriptors.OBJECT_MAPPER.writeValueAsString(value),
+                TestDescriptors.OBJECT_MAPPER.writeValueAsString(codec.deserialize(raw, descriptor)));
+    }
+
+    @Test
+    public void defaultFormatFollowsProperties() throws Exception {
+        MethodCacheDescriptor descriptor = TestDescriptors.of("selectList");
+        assertNotEquals(L2ValueCodec.FORMAT_SMILE, codec.serialize(Arrays.asList(), descriptor)[0]);
+        properties.setValueFormat(ApplyAppCache.ValueFormat.SMILE);
+        assertEquals(L2ValueCodec.FORMAT_SMILE, codec.serialize(Arrays.asList(), descriptor)[0]);
+        assertEquals(ApplyAppCache.ValueFormat.JSON, codec.formatOf(TestDescriptors.of("selectJson")));
+    }
+
+    /**
+     * 方法切换为smile之前写入的json没有标记字节，仍按json读取
+     */
+    @Test
+    public void legacyJsonIsReadBySmileMethod() throws Exception {
+        MethodCacheDescriptor descriptor = TestDescriptors.of("selectSmile");
+        byte[] legacy = "[{\"id\":1,\"name\":\"name\",\"tags\":[\"a\"]}]".getBytes(StandardCharsets.UTF_8);
+        List<?> value = (List<?>) codec.deserialize(codec.decode(legacy), descriptor);
+        TestDescriptors.Sample sample = (TestDescriptors.Sample) value.get(0);
+        assertEquals(Long.valueOf(1), sample.getId());
+        assertEquals(Arrays.asList("a"), sample.getTags());
+    }
+
+    @Test
+    public void compressedSmileRoundTrip() throws Exception {
+        MethodCacheDescriptor descriptor = TestDescriptors.of("selectSmile");
+        List<TestDescriptors.Sample> value = new ArrayList<>();
+        for (long i = 0; i < THRESHOLD; i++) {
+            value.add(new TestDescriptors.Sample(i, "name", Arrays.asList("a", "b")));
+        }
+        byte[] raw = codec.serialize(value, descriptor);
+        byte[] encoded = codec.encode(raw);
+        assertEquals(L2ValueCodec.CODEC_DEFLATE, encoded[0]);
+        byte[] decoded = codec.decode(encoded);
+        assertEquals(L2ValueCodec.FORMAT_SMILE, decoded[0]);
+        assertEquals(TestDescriptors.OBJECT_MAPPER.writeValueAsString(value),
+                TestDescriptors.OBJECT_MAPPER.writeValueAsString(codec.deserialize(decoded, descriptor)));
+    }
+
+    @Test
+    public void nullSentinelIsNeverCompressedOrMistaken() throws Exception {
+        properties.setCompressThresholdBytes(1);
+        byte[] encoded = codec.encode(L2ValueCodec.NULL_VALUE);
+        assertArrayEquals(L2ValueCodec.NULL_VALUE, encoded);
+        assertTrue(codec.isNull(codec.decode(encoded)));
+        assertTrue(codec.isNull("${null}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(codec.isNull("null".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(codec.isNull(codec.serialize(null, TestDescriptors.of("selectSmile"))));
+        assertFalse(codec.isNull(codec.serialize("${null}", TestDescriptors.of("selectJson"))));
+    }
+
+    private static byte[] repeated(int length) {
+        byte[] raw = new byte[length];
+        for (int i = 0; i < length; i++) {
+            raw[i] = (byte) ('a' + i % 4);
+        }
+        return raw;
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.boydguy.backend.dao.aspect;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class Murmur3CacheKeyEncoderTest {
+
+    private final Murmur3CacheKeyEncoder encoder = new Murmur3CacheKeyEncoder();
+    private final MethodCacheDescriptor selectOne = TestDescriptors.of("selectOne");
+    private final MethodCacheDescriptor selectList = TestDescriptors.of("selectList");
+
+    @Test
+    public void keyIsNamespacePlus32Hex() {
+        String cacheKey = encoder.encode(selectOne, new Object[]{1L, "abc"});
+        assertTrue(cacheKey, cacheKey.matches("daoCache:[0-9a-f]{32}"));
+    }
+
+    /**
+     * 固定的输出：修改编码方式会使所有节点上已有的cache key失效，需要同时修改这里的值
+     */
+    @Test
+    public void goldenKeys() {
+        assertEquals("daoCache:dee4c7c24fb1a140109bce42df7fe963", encoder.encode(selectOne, new Object[]{1L, "abc"}));
+        assertEquals("daoCache:a2947b497682851acd3c20b61a13d8a2", encoder.encode(selectOne, new Object[]{1L, "abc"}, 7));
+        assertEquals("daoCache:482ada1605d6d542de4546139a240dec", encoder.encode(selectOne, new Object[]{null, null}));
+        assertEquals("daoCache:abd387be694b78d843ea8af2118fb947", encoder.encode(selectList,
+                new Object[]{new TestDescriptors.Sample(2L, "name", Arrays.asList("a", "b"))}));
+        assertEquals("daoCache:2be84d4758c7a27524ba920ef608a422", encoder.encode(selectList, new Object[]{new TreeSet<>(Arrays.asList(3, 1, 2))}));
+        assertEquals("daoCache:95bc1ec0523cfa1352ce1b7e991fc808", encoder.encode(selectList, new Object[]{new TreeMap<>(Collections.singletonMap("k", 1))}));
+    }
+
+    @Test
+    public void methodArgumentsAndGenerationChangeTheKey() {
+        String cacheKey = encoder.encode(selectOne, new Object[]{1L, "abc"});
+        assertNotEquals(cacheKey, encoder.encode(selectOne, new Object[]{2L, "abc"}));
+        assertNotEquals(cacheKey, encoder.encode(selectOne, new Object[]{1L, "abc"}, 1));
+        assertNotEquals(cacheKey, encoder.encode(selectList, new Object[]{1L}));
+        assertNotEquals(encoder.encode(selectOne, new Object[]{"ab", "c"}), encoder.encode(selectOne, new Object[]{"a", "bc"}));
+    }
+
+    @Test
+    public void setKeyDoesNotDependOnIterationOrder() {
+        Set<String> forward = new LinkedHashSet<>();
+        Set<String> backward = new LinkedHashSet<>();
+        for (int i = 0; i < 100; i++) {
+            forward.add("value" + i);
+            backward.add("value" + (99 - i));
+        }
+        assertEquals(encoder.encode(selectList, new Object[]{forward}), encoder.encode(selectList, new Object[]{backward}));
+        assertEquals(encoder.encode(selectList, new Object[]{forward}), encoder.encode(selectList, new Object[]{new HashSet<>(forward)}));
+        assertNotEquals(encoder.encode(selectList, new Object[]{forward}),
+                encoder.encode(selectList, new Object[]{new ArrayList<>(forward)}));
+    }
+
+    @Test
+    public void mapKeyDoesNotDependOnIterationOrder() {
+        Map<String, Integer> forward = new LinkedHashMap<>();
+        Map<String, Integer> backward = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            forward.put("key" + i, i);
+            backward.put("key" + (99 - i), 99 - i);
+        }
+        assertEquals(encoder.encode(selectList, new Object[]{forward}), encoder.encode(selectList, new Object[]{backward}));
+        assertEquals(encoder.encode(selectList, new Object[]{forward}), encoder.encode(selectList, new Object[]{new HashMap<>(forward)}));
+
+        Map<String, Integer> swapped = new HashMap<>(forward);
+        swapped.put("key0", 1);
+        swapped.put("key1", 0);
+        assertNotEquals(encoder.encode(selectList, new Object[]{forward}), encoder.encode(selectList, new Object[]{swapped}));
+    }
+
+    @Test
+    public void entityKeyIgnoresAnonymousSubclass() {
+        TestDescriptors.Sample sample = new TestDescriptors.Sample(2L, "name", Arrays.asList("a", "b"));
+        TestDescriptors.Sample anonymous = new TestDescriptors.Sample() {{
+            setId(2L);
+            setName("name");
+            setTags(Arrays.asList("a", "b"));
+        }};
+        assertEquals(encoder.encode(selectList, new Object[]{sample}), encoder.encode(selectList, new Object[]{anonymous}));
+    }
+
+    @Test
+    public void stableJdkValueTypesAreAccepted() {
+        assertEquals(encoder.encode(selectList, new Object[]{LocalDate.of(2020, 1, 2)}),
+                encoder.encode(selectList, new Object[]{LocalDate.parse("2020-01-02")}));
+        assertEquals(encoder.encode(selectList, new Object[]{UUID.fromString("00000000-0000-0000-0000-000000000001")}),
+                encoder.encode(selectList, new Object[]{new UUID(0, 1)}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedJdkTypeIsRejected() {
+        encoder.encode(selectList, new Object[]{new Object()});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedJdkTypeInsideCollectionIsRejected() {
+        encoder.encode(selectList, new Object[]{Collections.singletonList(Thread.currentThread())});
+    }
+
+}
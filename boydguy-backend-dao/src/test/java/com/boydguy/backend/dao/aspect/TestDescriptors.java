@@ -0,0 +1,99 @@
+package com.boydguy.backend.dao.aspect;
+
+import com.boydguy.generate.annotation.ApplyAppCache;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单元测试使用的MethodCacheDescriptor：由SampleDao中带@ApplyAppCache的方法构建
+ */
+final class TestDescriptors {
+
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private TestDescriptors() {
+    }
+
+    static MethodCacheDescriptor of(String methodName) {
+        Method method = Arrays.stream(SampleDao.class.getDeclaredMethods())
+                .filter(item -> item.getName().equals(methodName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(methodName));
+        Type returnType = method.getGenericReturnType();
+        String[] paramTypeNames = Arrays.stream(method.getGenericParameterTypes()).map(Type::getTypeName).toArray(String[]::new);
+        JavaType returnJavaType = OBJECT_MAPPER.constructType(returnType);
+        return new MethodCacheDescriptor(SampleDao.class, method, "public", SampleDao.class.getName(), returnType,
+                paramTypeNames, returnJavaType, OBJECT_MAPPER.readerFor(returnJavaType), method.getAnnotation(ApplyAppCache.class),
+                null, MethodCacheDescriptor.PrimaryKeyQuery.NONE, null);
+    }
+
+    @SuppressWarnings("unused")
+    static class SampleDao {
+
+        @ApplyAppCache
+        public Sample selectOne(Long id, String name) {
+            return null;
+        }
+
+        @ApplyAppCache
+        public List<Sample> selectList(Object condition) {
+            return null;
+        }
+
+        @ApplyAppCache(valueFormat = ApplyAppCache.ValueFormat.JSON)
+        public Map<String, Integer> selectJson(Object condition) {
+            return null;
+        }
+
+        @ApplyAppCache(valueFormat = ApplyAppCache.ValueFormat.SMILE)
+        public List<Sample> selectSmile(Object condition) {
+            return null;
+        }
+    }
+
+    static class Sample {
+        private Long id;
+        private String name;
+        private List<String> tags;
+
+        Sample() {
+        }
+
+        Sample(Long id, String name, List<String> tags) {
+            this.id = id;
+            this.name = name;
+            this.tags = tags;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+    }
+
+}
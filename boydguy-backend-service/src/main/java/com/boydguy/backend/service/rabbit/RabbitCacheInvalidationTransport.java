@@ -0,0 +1,78 @@
+package com.boydguy.backend.service.rabbit;
+
+import com.boydguy.backend.dao.aspect.CacheInvalidationTransport;
+import com.boydguy.backend.dao.aspect.DaoCacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * 通过RabbitMQ扇形交换机广播缓存清除消息：每个节点声明一个自动删除的匿名队列绑定到交换机，
+ * 消息不持久化、自动签收，节点下线后队列随之删除
+ */
+@Slf4j
+@Component
+public class RabbitCacheInvalidationTransport implements CacheInvalidationTransport, DisposableBean {
+
+    private ConnectionFactory connectionFactory;
+    private RabbitAdmin rabbitAdmin;
+    private RabbitTemplate rabbitTemplate;
+    private FanoutExchange exchange;
+    private SimpleMessageListenerContainer listenerContainer;
+
+    @Autowired
+    public RabbitCacheInvalidationTransport(ConnectionFactory connectionFactory,
+                                            RabbitAdmin rabbitAdmin,
+                                            DaoCacheProperties properties) {
+        this.connectionFactory = connectionFactory;
+        this.rabbitAdmin = rabbitAdmin;
+        // 不使用全局的RabbitTemplate：广播消息不需要mandatory与发送确认回调
+        this.rabbitTemplate = new RabbitTemplate(connectionFactory);
+        this.exchange = new FanoutExchange(properties.getInvalidationChannel(), false, false);
+    }
+
+    @Override
+    public String getName() {
+        return "rabbit";
+    }
+
+    @Override
+    public void publish(String message) {
+        MessageProperties msgProp = new MessageProperties();
+        msgProp.setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        msgProp.setDeliveryMode(MessageDeliveryMode.NON_PERSISTENT);
+        rabbitTemplate.send(exchange.getName(), "", new Message(message.getBytes(StandardCharsets.UTF_8), msgProp));
+    }
+
+    @Override
+    public void subscribe(Consumer<String> consumer) {
+        Queue queue = new AnonymousQueue();
+        rabbitAdmin.declareExchange(exchange);
+        rabbitAdmin.declareQueue(queue);
+        rabbitAdmin.declareBinding(BindingBuilder.bind(queue).to(exchange));
+
+        listenerContainer = new SimpleMessageListenerContainer(connectionFactory);
+        listenerContainer.setQueues(queue);
+        listenerContainer.setAcknowledgeMode(AcknowledgeMode.NONE);
+        listenerContainer.setMessageListener(message -> consumer.accept(new String(message.getBody(), StandardCharsets.UTF_8)));
+        listenerContainer.start();
+        log.info("已订阅缓存清除交换机 {}，队列：{}", exchange.getName(), queue.getName());
+    }
+
+    @Override
+    public void destroy() {
+        if (listenerContainer != null) {
+            listenerContainer.stop();
+        }
+    }
+
+}
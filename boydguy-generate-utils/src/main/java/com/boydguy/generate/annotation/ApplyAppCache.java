@@ -23,4 +23,60 @@ public @interface ApplyAppCache {
      */
     int redisTimeout() default 300;
 
+    /**
+     * 软过期时间，单位：秒；默认0表示与redisTimeout相同
+     * 超过软过期时间的数据视为陈旧数据，仍然直接返回，同时在后台异步刷新
+     */
+    int softTimeout() default 0;
+
+    /**
+     * 宽限时间，单位：秒；默认0表示不启用
+     * 一级缓存与二级缓存的数据在过期时间之后再保留graceTimeout秒，在此期间返回陈旧数据并异步刷新
+     */
+    int graceTimeout() default 0;
+
+    /**
+     * XFetch提前刷新系数；默认0表示不启用，通常取值1.0
+     * 数据临近软过期时按概率提前异步刷新，查询越慢、系数越大，越早刷新
+     */
+    double earlyRefreshBeta() default 0;
+
+    /**
+     * 过期时间的随机抖动比例，实际过期时间在[timeout, timeout * (1 + jitterRatio)]之间
+     * 默认-1表示使用全局配置boydguy.dao-cache.jitter-ratio，0表示不抖动
+     */
+    double jitterRatio() default -1;
+
+    /**
+     * 滑动过期的命中率阈值，单位：次/分钟；默认0表示不启用
+     * 一级缓存中的数据每分钟命中次数达到阈值时，在过期前延长一级缓存与二级缓存的过期时间
+     */
+    int slidingHitsPerMinute() default 0;
+
+    /**
+     * 该方法的一级缓存分区占用堆内存的上限，例如：64M、512K；默认空字符串表示使用全局配置boydguy.dao-cache.l1-region-max-bytes
+     * 每个方法使用单独的分区，大的列表查询不会挤出热点的主键查询
+     */
+    String ehcacheMaxBytes() default "";
+
+    /**
+     * 二级缓存数据的序列化格式；默认DEFAULT表示使用全局配置boydguy.dao-cache.value-format
+     */
+    ValueFormat valueFormat() default ValueFormat.DEFAULT;
+
+    enum ValueFormat {
+        /**
+         * 使用全局配置
+         */
+        DEFAULT,
+        /**
+         * json文本
+         */
+        JSON,
+        /**
+         * Jackson Smile二进制格式：重复的字段名只写入一次，体积更小，序列化与反序列化更快
+         */
+        SMILE
+    }
+
 }
@@ -24,8 +24,15 @@ public @interface ClearAppCache {
      */
     int[] index() default {0};
 
+    /**
+     * 被修改数据的主键是否可以直接从参数中获取：参数为主键、逗号分隔的多个主键或含有主键的实体
+     * 为true时不再通过methodName查询被修改的数据
+     */
+    boolean byPrimaryKey() default false;
+
     /**
      * 根据指定的通配符匹配到符合条件的cache key，清除缓存
+     * 通配符匹配方法的明文描述，*匹配任意字符，例如：BaseDao<Product>.selectByExample*
      */
     String[] patterns() default {};
 
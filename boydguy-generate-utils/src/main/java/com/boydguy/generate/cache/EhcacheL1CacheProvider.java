@@ -0,0 +1,141 @@
+package com.boydguy.generate.cache;
+
+import com.boydguy.generate.utils.EhcacheDynamicUtils;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * 基于Ehcache 2的一级缓存：分区通过EhcacheDynamicUtils创建，内存占用由Ehcache的SizeOf计算
+ */
+@Component
+public class EhcacheL1CacheProvider implements L1CacheProvider {
+
+    @Override
+    public String getName() {
+        return "ehcache";
+    }
+
+    @Override
+    public L1Cache getOrAddCache(String cacheName, int timeToLiveSeconds, String maxBytes) {
+        return new EhcacheL1Cache(EhcacheDynamicUtils.getOrAddCache(cacheName, timeToLiveSeconds, maxBytes));
+    }
+
+    private static class EhcacheL1Cache implements L1Cache {
+
+        private final Cache cache;
+
+        EhcacheL1Cache(Cache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public String getName() {
+            return cache.getName();
+        }
+
+        @Override
+        public L1CacheEntry get(Object key) {
+            Element element = cache.get(key);
+            return element == null ? null : new EhcacheL1CacheEntry(element);
+        }
+
+        @Override
+        public L1CacheEntry getQuiet(Object key) {
+            Element element = cache.getQuiet(key);
+            return element == null ? null : new EhcacheL1CacheEntry(element);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Collection<Object> getKeys() {
+            return cache.getKeys();
+        }
+
+        @Override
+        public void put(Object key, Object value, int timeToLiveSeconds, long weight) {
+            Element element = new Element(key, value);
+            element.setTimeToLive(timeToLiveSeconds);
+            cache.put(element);
+        }
+
+        @Override
+        public void remove(Object key) {
+            cache.remove(key);
+        }
+
+        @Override
+        public void removeAll(Collection<?> keys) {
+            cache.removeAll(keys);
+        }
+
+        @Override
+        public long size() {
+            return cache.getSize();
+        }
+
+        @Override
+        public long getWeightedSize() {
+            return cache.getStatistics().getLocalHeapSizeInBytes();
+        }
+
+        @Override
+        public long getHitCount() {
+            return cache.getStatistics().cacheHitCount();
+        }
+
+        @Override
+        public long getMissCount() {
+            return cache.getStatistics().cacheMissCount();
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return cache.getStatistics().cacheEvictedCount();
+        }
+
+    }
+
+    private static class EhcacheL1CacheEntry implements L1CacheEntry {
+
+        private final Element element;
+
+        EhcacheL1CacheEntry(Element element) {
+            this.element = element;
+        }
+
+        @Override
+        public Object getValue() {
+            return element.getObjectValue();
+        }
+
+        @Override
+        public long getCreationTime() {
+            return element.getCreationTime();
+        }
+
+        @Override
+        public long getExpirationTime() {
+            return element.getExpirationTime();
+        }
+
+        @Override
+        public int getTimeToLive() {
+            return element.getTimeToLive();
+        }
+
+        @Override
+        public void setTimeToLive(int timeToLiveSeconds) {
+            element.setTimeToLive(timeToLiveSeconds);
+        }
+
+        @Override
+        public long getHitCount() {
+            return element.getHitCount();
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.boydguy.generate.cache;
+
+import java.util.Collection;
+
+/**
+ * 一级缓存的分区：按堆内存占用限制容量，每条数据可以单独设置过期时间
+ */
+public interface L1Cache {
+
+    String getName();
+
+    /**
+     * 读取数据，统计命中次数与未命中次数；数据已过期时返回null
+     */
+    L1CacheEntry get(Object key);
+
+    /**
+     * 读取数据，不更新任何统计
+     */
+    L1CacheEntry getQuiet(Object key);
+
+    /**
+     * 分区中所有数据的key(可能包含尚未清理的过期数据)
+     */
+    Collection<Object> getKeys();
+
+    /**
+     * 存放数据
+     *
+     * @param timeToLiveSeconds 过期时间，单位：秒
+     * @param weight            数据的大小，单位：字节；由实现自行计算内存占用时忽略该值
+     */
+    void put(Object key, Object value, int timeToLiveSeconds, long weight);
+
+    void remove(Object key);
+
+    void removeAll(Collection<?> keys);
+
+    /**
+     * 分区中数据的数量(可能包含尚未清理的过期数据)
+     */
+    long size();
+
+    /**
+     * 分区占用的内存，单位：字节
+     */
+    long getWeightedSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * 因容量不足被淘汰的次数
+     */
+    long getEvictionCount();
+
+}
@@ -0,0 +1,35 @@
+package com.boydguy.generate.cache;
+
+/**
+ * 一级缓存中的一条数据
+ */
+public interface L1CacheEntry {
+
+    Object getValue();
+
+    /**
+     * 写入缓存的时间点，单位：毫秒
+     */
+    long getCreationTime();
+
+    /**
+     * 过期的时间点，单位：毫秒
+     */
+    long getExpirationTime();
+
+    /**
+     * 过期时间，单位：秒
+     */
+    int getTimeToLive();
+
+    /**
+     * 修改过期时间，从写入缓存的时间点开始计算，单位：秒
+     */
+    void setTimeToLive(int timeToLiveSeconds);
+
+    /**
+     * 通过get读取的次数
+     */
+    long getHitCount();
+
+}
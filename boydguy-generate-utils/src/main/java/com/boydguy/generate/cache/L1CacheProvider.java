@@ -0,0 +1,22 @@
+package com.boydguy.generate.cache;
+
+/**
+ * 一级缓存(本地内存)的实现：ehcache(Ehcache 2，LRU)或tinylfu(内置的W-TinyLFU)，通过boydguy.dao-cache.l1-provider选择
+ */
+public interface L1CacheProvider {
+
+    /**
+     * 实现的名称，与配置项的取值对应
+     */
+    String getName();
+
+    /**
+     * 获取或创建分区
+     *
+     * @param cacheName         分区名称
+     * @param timeToLiveSeconds 分区中数据默认的过期时间，单位：秒
+     * @param maxBytes          分区占用内存的上限，例如：16M、512K
+     */
+    L1Cache getOrAddCache(String cacheName, int timeToLiveSeconds, String maxBytes);
+
+}
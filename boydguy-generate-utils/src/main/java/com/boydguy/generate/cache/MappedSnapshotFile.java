@@ -0,0 +1,209 @@
+package com.boydguy.generate.cache;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存映射的缓存快照文件：写入时先写临时文件再替换，读取时只建立key到文件位置的索引，数据在取出时才从映射中复制
+ * 文件格式：魔数、版本、创建时间、数据数量，之后每条数据依次为key、过期时间、附加值、校验标记、数据
+ */
+public class MappedSnapshotFile {
+
+    private static final int MAGIC = 0x44435331;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final int ENTRY_FIXED_BYTES = 4 + 8 + 8 + 8 + 4;
+
+    private final ByteBuffer buffer;
+    /**
+     * 快照的创建时间，单位：毫秒
+     */
+    @Getter
+    private final long createdAt;
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+
+    private MappedSnapshotFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("不是有效的缓存快照文件");
+            }
+            this.createdAt = buffer.getLong();
+            int count = buffer.getInt();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[readLength(buffer)];
+                buffer.get(key);
+                long expireAt = buffer.getLong();
+                long attachment = buffer.getLong();
+                long tag = buffer.getLong();
+                int length = readLength(buffer);
+                int offset = buffer.position();
+                buffer.position(offset + length);
+                if (expireAt > now) {
+                    index.put(new String(key, StandardCharsets.UTF_8),
+                            new Location(offset, length, expireAt, attachment, tag));
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException ex) {
+            throw new IOException("缓存快照文件不完整", ex);
+        }
+    }
+
+    /**
+     * 读取key或数据的长度：文件被截断或损坏时长度可能为负数或超过剩余的字节数
+     */
+    private static int readLength(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("缓存快照文件已损坏，长度：" + length);
+        }
+        return length;
+    }
+
+    /**
+     * 将数据写入快照文件，超过maxBytes的数据不写入
+     *
+     * @return 写入的数据数量
+     */
+    public static int write(Path path, Collection<Entry> entries, long maxBytes) throws IOException {
+        long limit = Math.min(maxBytes, Integer.MAX_VALUE);
+        long size = HEADER_BYTES;
+        List<byte[]> keys = new ArrayList<>(entries.size());
+        List<Entry> written = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            long entryBytes = ENTRY_FIXED_BYTES + key.length + entry.getValue().length;
+            if (size + entryBytes > limit) {
+                continue;
+            }
+            size += entryBytes;
+            keys.add(key);
+            written.add(entry);
+        }
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(written.size());
+            for (int i = 0; i < written.size(); i++) {
+                Entry entry = written.get(i);
+                mapped.putInt(keys.get(i).length).put(keys.get(i))
+                        .putLong(entry.getExpireAt()).putLong(entry.getAttachment()).putLong(entry.getTag())
+                        .putInt(entry.getValue().length).put(entry.getValue());
+            }
+            mapped.force();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written.size();
+    }
+
+    /**
+     * 映射快照文件并建立索引，已过期的数据不进入索引；关闭文件后映射仍然有效
+     */
+    public static MappedSnapshotFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("缓存快照文件过大");
+            }
+            return new MappedSnapshotFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * 取出数据并从索引中删除，每条数据只能取出一次；没有数据或已过期时返回null
+     */
+    public Entry take(String key) {
+        Location location = index.remove(key);
+        if (location == null || location.expireAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        byte[] value = new byte[location.length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(location.offset);
+        view.get(value);
+        return new Entry(key, value, location.expireAt, location.attachment, location.tag);
+    }
+
+    /**
+     * 读取数据的过期时间与标记，不复制数据
+     */
+    public Entry peek(String key) {
+        Location location = index.get(key);
+        return location == null ? null : new Entry(key, null, location.expireAt, location.attachment, location.tag);
+    }
+
+    public List<String> keys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    public void remove(String key) {
+        index.remove(key);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    @Getter
+    public static class Entry {
+        private final String key;
+        private final byte[] value;
+        /**
+         * 过期的时间点，单位：毫秒
+         */
+        private final long expireAt;
+        /**
+         * 与数据一起保存的附加值
+         */
+        private final long attachment;
+        /**
+         * 读取快照时用于校验数据是否仍然有效的标记
+         */
+        private final long tag;
+
+        public Entry(String key, byte[] value, long expireAt, long attachment, long tag) {
+            this.key = key;
+            this.value = value;
+            this.expireAt = expireAt;
+            this.attachment = attachment;
+            this.tag = tag;
+        }
+    }
+
+    private static class Location {
+        final int offset;
+        final int length;
+        final long expireAt;
+        final long attachment;
+        final long tag;
+
+        Location(int offset, int length, long expireAt, long attachment, long tag) {
+            this.offset = offset;
+            this.length = length;
+            this.expireAt = expireAt;
+            this.attachment = attachment;
+            this.tag = tag;
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.boydguy.generate.cache;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 堆外缓存：数据按写入顺序追加到固定大小的直接内存段(slab)中，所有段写满后整段回收最早写入的段(FIFO)
+ * 堆内只保存key到位置的索引，数据本身不占用堆内存，不增加GC的扫描与复制
+ * 写入在锁中进行；读取不加锁：通过段的StampedLock乐观读复制数据，回收段时持有段的写锁，读取期间段被回收时视为未命中
+ * 直接内存的总量受-XX:MaxDirectMemorySize限制
+ */
+public class OffHeapSlabStore {
+
+    private final int slabBytes;
+    private final Slab[] slabs;
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    /**
+     * 当前写入的段，由写锁保护
+     */
+    private int current;
+
+    /**
+     * @param maxBytes  直接内存的总量，至少为两个段
+     * @param slabBytes 每个段的大小，超过该大小的数据不能写入
+     */
+    public OffHeapSlabStore(long maxBytes, int slabBytes) {
+        this.slabBytes = slabBytes;
+        int slabCount = (int) Math.max(maxBytes / slabBytes, 2);
+        this.slabs = new Slab[slabCount];
+        for (int i = 0; i < slabCount; i++) {
+            slabs[i] = new Slab();
+        }
+    }
+
+    /**
+     * 写入数据，数据超过段的大小时不写入并删除旧数据
+     *
+     * @param expireAt   过期的时间点，单位：毫秒
+     * @param attachment 与数据一起保存在堆内索引中的附加值
+     * @return 是否写入
+     */
+    public boolean put(String key, byte[] value, long expireAt, long attachment) {
+        if (value.length > slabBytes) {
+            remove(key);
+            return false;
+        }
+        writeLock.lock();
+        try {
+            Slab slab = slabs[current];
+            if (slab.buffer == null) {
+                slab.buffer = ByteBuffer.allocateDirect(slabBytes);//第一次使用时才分配直接内存
+            } else if (slab.writeOffset + value.length > slabBytes) {
+                current = (current + 1) % slabs.length;
+                slab = slabs[current];
+                if (slab.buffer == null) {
+                    slab.buffer = ByteBuffer.allocateDirect(slabBytes);
+                } else {
+                    recycle(current, slab);
+                }
+            }
+            ByteBuffer target = slab.buffer.duplicate();
+            target.position(slab.writeOffset);
+            target.put(value);
+            Location location = new Location(current, slab.generation, slab.writeOffset, value.length, expireAt, attachment);
+            slab.writeOffset += value.length;
+            slab.keys.add(key);
+            usedBytes.addAndGet(value.length);
+            Location prior = index.put(key, location);
+            if (prior != null) {
+                usedBytes.addAndGet(-prior.length);
+            }
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 读取数据，统计命中次数与未命中次数
+     */
+    public Entry get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            missCount.increment();
+            return null;
+        }
+        if (location.expireAt <= System.currentTimeMillis()) {
+            missCount.increment();
+            remove(key, location);
+            return null;
+        }
+        Slab slab = slabs[location.slab];
+        // 乐观读：段正在被回收(stamp为0)、已被回收(代数不同)或复制期间被回收(validate失败)时，复制的数据不可信
+        long stamp = slab.lock.tryOptimisticRead();
+        byte[] value = null;
+        if (stamp != 0 && slab.generation == location.generation) {
+            value = new byte[location.length];
+            ByteBuffer source = slab.buffer.duplicate();
+            source.position(location.offset);
+            source.get(value);
+        }
+        if (value == null || !slab.lock.validate(stamp)) {
+            missCount.increment();
+            remove(key, location);
+            return null;
+        }
+        int hits = ++location.hits;
+        hitCount.increment();
+        return new Entry(value, location.attachment, location.expireAt, hits);
+    }
+
+    /**
+     * 读取数据的附加值与过期时间，不复制数据，不更新统计
+     *
+     * @return 不存在或已过期时返回null；返回的Entry中value为null
+     */
+    public Entry peek(String key) {
+        Location location = index.get(key);
+        if (location == null || location.expireAt <= System.currentTimeMillis()
+                || slabs[location.slab].generation != location.generation) {
+            return null;
+        }
+        return new Entry(null, location.attachment, location.expireAt, location.hits);
+    }
+
+    public void remove(String key) {
+        Location location = index.remove(key);
+        if (location != null) {
+            usedBytes.addAndGet(-location.length);
+        }
+    }
+
+    public void removeAll(Collection<String> keys) {
+        keys.forEach(this::remove);
+    }
+
+    private void remove(String key, Location location) {
+        if (index.remove(key, location)) {
+            usedBytes.addAndGet(-location.length);
+        }
+    }
+
+    /**
+     * 回收段：在段的写锁中增加代数，使正在乐观读取该段的线程放弃读取的数据，之后的读取在复制前发现代数不同；
+     * 再删除仍然指向该段的索引
+     */
+    private void recycle(int slabIndex, Slab slab) {
+        int generation;
+        long stamp = slab.lock.writeLock();
+        try {
+            generation = slab.generation++;
+        } finally {
+            slab.lock.unlockWrite(stamp);
+        }
+        long now = System.currentTimeMillis();
+        for (String key : slab.keys) {
+            Location location = index.get(key);
+            if (location != null && location.slab == slabIndex && location.generation == generation
+                    && index.remove(key, location)) {
+                usedBytes.addAndGet(-location.length);
+                if (location.expireAt > now) {
+                    evictionCount.increment();
+                }
+            }
+        }
+        slab.keys = new ArrayList<>();
+        slab.writeOffset = 0;
+    }
+
+    /**
+     * 所有数据的key(可能包含已过期或所在段已被回收的数据)
+     */
+    public List<String> keys() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    public long size() {
+        return index.size();
+    }
+
+    /**
+     * 有效数据占用的直接内存，单位：字节
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * 已分配的直接内存，单位：字节
+     */
+    public long getAllocatedBytes() {
+        long allocated = 0;
+        for (Slab slab : slabs) {
+            if (slab.buffer != null) {
+                allocated += slabBytes;
+            }
+        }
+        return allocated;
+    }
+
+    public int getSlabBytes() {
+        return slabBytes;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 未过期的数据因段被回收而淘汰的次数
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 读取的结果
+     */
+    @Getter
+    public static class Entry {
+        private final byte[] value;
+        private final long attachment;
+        private final long expireAt;
+        /**
+         * 包括本次在内的命中次数，并发读取时可能丢失个别计数
+         */
+        private final int hits;
+
+        Entry(byte[] value, long attachment, long expireAt, int hits) {
+            this.value = value;
+            this.attachment = attachment;
+            this.expireAt = expireAt;
+            this.hits = hits;
+        }
+    }
+
+    private static final class Slab {
+        final StampedLock lock = new StampedLock();
+        volatile ByteBuffer buffer;
+        volatile int generation;
+        /**
+         * 以下字段由写锁保护
+         */
+        int writeOffset;
+        List<String> keys = new ArrayList<>();
+    }
+
+    private static final class Location {
+        final int slab;
+        final int generation;
+        final int offset;
+        final int length;
+        final long expireAt;
+        final long attachment;
+        volatile int hits;
+
+        Location(int slab, int generation, int offset, int length, long expireAt, long attachment) {
+            this.slab = slab;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+            this.expireAt = expireAt;
+            this.attachment = attachment;
+        }
+    }
+
+}
@@ -0,0 +1,503 @@
+package com.boydguy.generate.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * W-TinyLFU一级缓存分区：
+ * 新数据进入窗口(1%容量的LRU)，窗口溢出的数据作为候选者，与主区probation段最久未访问的数据比较访问频率，频率高的留下；
+ * 主区为分段LRU：probation段中再次被访问的数据晋升到protected段(主区的80%)
+ * 只访问一次的数据(例如翻页扫描)很难进入主区，不会挤出热点数据
+ * 读取不加锁：访问记录写入按线程分段的有损缓冲区，由持有淘汰锁的线程批量处理；写入与删除在淘汰锁中维护队列
+ * 容量按数据的weight(序列化后的字节数)计算
+ */
+public class TinyLfuCache implements L1Cache {
+
+    private static final int READ_BUFFER_SIZE = 32;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    /**
+     * 每次维护时从每个队列头部检查的过期数据的最大数量
+     */
+    private static final int EXPIRE_SCAN_LIMIT = 16;
+    /**
+     * 候选者频率不超过该值时不参与随机准入，防止利用哈希冲突抬高频率挤出热点数据
+     */
+    private static final int ADMIT_MIN_FREQUENCY = 5;
+
+    private final String name;
+    private final int defaultTimeToLive;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final ConcurrentHashMap<Object, Node> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final AccessOrderQueue window = new AccessOrderQueue();
+    private final AccessOrderQueue probation = new AccessOrderQueue();
+    private final AccessOrderQueue protectedQueue = new AccessOrderQueue();
+    private final ReadBuffer[] readBuffers;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private long windowWeight;
+    private long protectedWeight;
+    private volatile long weightedSize;
+
+    public TinyLfuCache(String name, int defaultTimeToLive, long maximumWeight) {
+        this.name = name;
+        this.defaultTimeToLive = defaultTimeToLive;
+        this.maximumWeight = Math.max(maximumWeight, 1);
+        this.windowMaximum = Math.max(this.maximumWeight / 100, 1);
+        this.protectedMaximum = (this.maximumWeight - windowMaximum) * 8 / 10;
+        this.sketch = new FrequencySketch((int) Math.min(this.maximumWeight / 4096, Integer.MAX_VALUE));
+        int stripes = Integer.highestOneBit(Math.max(Runtime.getRuntime().availableProcessors(), 1) * 2);
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public L1CacheEntry get(Object key) {
+        Node node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        if (node.isExpired(System.currentTimeMillis())) {
+            missCount.increment();
+            if (data.remove(key, node)) {
+                unlinkLocked(node);
+            }
+            return null;
+        }
+        node.hitCount++;
+        hitCount.increment();
+        ReadBuffer readBuffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+        if (readBuffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                maintenance();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return node;
+    }
+
+    @Override
+    public L1CacheEntry getQuiet(Object key) {
+        Node node = data.get(key);
+        return node == null || node.isExpired(System.currentTimeMillis()) ? null : node;
+    }
+
+    @Override
+    public Collection<Object> getKeys() {
+        return new ArrayList<>(data.keySet());
+    }
+
+    @Override
+    public void put(Object key, Object value, int timeToLiveSeconds, long weight) {
+        Node node = new Node(key, value, Math.max(weight, 1), System.currentTimeMillis(),
+                timeToLiveSeconds > 0 ? timeToLiveSeconds : defaultTimeToLive);
+        if (node.weight > maximumWeight) {
+            remove(key);//超过分区容量的数据不缓存
+            return;
+        }
+        Node prior = data.put(key, node);
+        evictionLock.lock();
+        try {
+            if (prior != null) {
+                unlink(prior);
+            }
+            // 并发的put或remove已经替换了该数据时不再加入队列
+            if (data.get(key) == node) {
+                node.queue = window;
+                window.addLast(node);
+                windowWeight += node.weight;
+                weightedSize += node.weight;
+                sketch.increment(key);
+            }
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void remove(Object key) {
+        Node node = data.remove(key);
+        if (node != null) {
+            unlinkLocked(node);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<?> keys) {
+        List<Node> removed = new ArrayList<>();
+        for (Object key : keys) {
+            Node node = data.remove(key);
+            if (node != null) {
+                removed.add(node);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        evictionLock.lock();
+        try {
+            removed.forEach(this::unlink);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        return data.size();
+    }
+
+    @Override
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 立即处理缓冲的访问记录，并清理过期数据、淘汰超出容量的数据
+     */
+    void cleanUp() {
+        evictionLock.lock();
+        try {
+            maintenance();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 数据所在的队列：window、probation或protected，未缓存时返回null；用于单元测试
+     */
+    String queueOf(Object key) {
+        evictionLock.lock();
+        try {
+            Node node = data.get(key);
+            if (node == null || node.queue == null) {
+                return null;
+            }
+            return node.queue == window ? "window" : node.queue == probation ? "probation" : "protected";
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 遍历队列重新计算weight，与维护的windowWeight、protectedWeight、weightedSize以及数据数量一致时返回true；用于单元测试
+     */
+    boolean isWeightConsistent() {
+        evictionLock.lock();
+        try {
+            long windowSum = sum(window);
+            long protectedSum = sum(protectedQueue);
+            long total = windowSum + sum(probation) + protectedSum;
+            return windowSum == windowWeight && protectedSum == protectedWeight && total == weightedSize
+                    && count(window) + count(probation) + count(protectedQueue) == data.size();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static long sum(AccessOrderQueue queue) {
+        long sum = 0;
+        for (Node node = queue.first; node != null; node = node.next) {
+            sum += node.weight;
+        }
+        return sum;
+    }
+
+    private static int count(AccessOrderQueue queue) {
+        int count = 0;
+        for (Node node = queue.first; node != null; node = node.next) {
+            count++;
+        }
+        return count;
+    }
+
+    private void unlinkLocked(Node node) {
+        evictionLock.lock();
+        try {
+            unlink(node);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * 处理访问记录、清理过期数据、淘汰超出容量的数据，必须持有淘汰锁
+     */
+    private void maintenance() {
+        for (ReadBuffer readBuffer : readBuffers) {
+            readBuffer.drain(this);
+        }
+        if (data.size() > sketch.capacity()) {
+            sketch.ensureCapacity(data.size());
+        }
+        long now = System.currentTimeMillis();
+        expire(window, now);
+        expire(probation, now);
+        expire(protectedQueue, now);
+        evict();
+    }
+
+    /**
+     * 处理一次访问：窗口与protected段中移到队尾，probation段中晋升到protected段
+     */
+    private void onAccess(Node node) {
+        if (node.queue == null) {
+            return;//已被删除
+        }
+        sketch.increment(node.key);
+        if (node.queue == window || node.queue == protectedQueue) {
+            node.queue.moveToLast(node);
+            return;
+        }
+        probation.remove(node);
+        node.queue = protectedQueue;
+        protectedQueue.addLast(node);
+        protectedWeight += node.weight;
+        while (protectedWeight > protectedMaximum) {
+            Node demoted = protectedQueue.first;
+            protectedQueue.remove(demoted);
+            protectedWeight -= demoted.weight;
+            demoted.queue = probation;
+            probation.addLast(demoted);
+        }
+    }
+
+    private void expire(AccessOrderQueue queue, long now) {
+        for (int i = 0; i < EXPIRE_SCAN_LIMIT; i++) {
+            Node node = queue.first;
+            if (node == null || !node.isExpired(now)) {
+                return;
+            }
+            data.remove(node.key, node);
+            unlink(node);
+        }
+    }
+
+    private void evict() {
+        // 窗口溢出的数据进入probation段的队尾，成为候选者
+        while (windowWeight > windowMaximum) {
+            Node node = window.first;
+            window.remove(node);
+            windowWeight -= node.weight;
+            node.queue = probation;
+            probation.addLast(node);
+        }
+        while (weightedSize > maximumWeight) {
+            Node victim = probation.first;
+            if (victim == null) {
+                victim = protectedQueue.first != null ? protectedQueue.first : window.first;
+                if (victim == null) {
+                    return;
+                }
+                evictNode(victim);
+                continue;
+            }
+            Node candidate = probation.last;
+            evictNode(candidate == victim || admit(candidate, victim) ? victim : candidate);
+        }
+    }
+
+    /**
+     * 候选者的访问频率高于probation段最久未访问的数据时准入
+     */
+    private boolean admit(Node candidate, Node victim) {
+        int candidateFrequency = sketch.frequency(candidate.key);
+        int victimFrequency = sketch.frequency(victim.key);
+        if (candidateFrequency > victimFrequency) {
+            return true;
+        }
+        if (candidateFrequency <= ADMIT_MIN_FREQUENCY) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextInt(128) == 0;
+    }
+
+    private void evictNode(Node node) {
+        data.remove(node.key, node);
+        unlink(node);
+        evictionCount.increment();
+    }
+
+    /**
+     * 从所在队列中移除，必须持有淘汰锁
+     */
+    private void unlink(Node node) {
+        AccessOrderQueue queue = node.queue;
+        if (queue == null) {
+            return;
+        }
+        queue.remove(node);
+        node.queue = null;
+        if (queue == window) {
+            windowWeight -= node.weight;
+        } else if (queue == protectedQueue) {
+            protectedWeight -= node.weight;
+        }
+        weightedSize -= node.weight;
+    }
+
+    static final class Node implements L1CacheEntry {
+        final Object key;
+        final Object value;
+        final long weight;
+        final long creationTime;
+        volatile int timeToLive;
+        /**
+         * 并发读取时可能丢失个别计数
+         */
+        volatile long hitCount;
+        /**
+         * 以下字段由淘汰锁保护
+         */
+        Node prev;
+        Node next;
+        AccessOrderQueue queue;
+
+        Node(Object key, Object value, long weight, long creationTime, int timeToLive) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.creationTime = creationTime;
+            this.timeToLive = timeToLive;
+        }
+
+        boolean isExpired(long now) {
+            return now >= getExpirationTime();
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        @Override
+        public long getExpirationTime() {
+            return creationTime + timeToLive * 1000L;
+        }
+
+        @Override
+        public int getTimeToLive() {
+            return timeToLive;
+        }
+
+        @Override
+        public void setTimeToLive(int timeToLiveSeconds) {
+            this.timeToLive = timeToLiveSeconds;
+        }
+
+        @Override
+        public long getHitCount() {
+            return hitCount;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，队头是最久未访问的数据
+     */
+    static final class AccessOrderQueue {
+        Node first;
+        Node last;
+
+        void addLast(Node node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * 有损的访问记录缓冲区：写满一轮后覆盖旧记录，丢失个别访问记录只影响LRU顺序与频率的精度
+     */
+    static final class ReadBuffer {
+        private final AtomicReferenceArray<Node> slots = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicInteger writeIndex = new AtomicInteger();
+
+        /**
+         * @return 是否写满了一轮，需要处理
+         */
+        boolean offer(Node node) {
+            int index = writeIndex.getAndIncrement() & READ_BUFFER_MASK;
+            slots.lazySet(index, node);
+            return index == READ_BUFFER_MASK;
+        }
+
+        void drain(TinyLfuCache cache) {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                Node node = slots.getAndSet(i, null);
+                if (node != null) {
+                    cache.onAccess(node);
+                }
+            }
+        }
+    }
+
+}
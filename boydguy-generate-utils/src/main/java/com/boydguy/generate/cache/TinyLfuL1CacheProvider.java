@@ -0,0 +1,27 @@
+package com.boydguy.generate.cache;
+
+import net.sf.ehcache.config.MemoryUnit;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内置的W-TinyLFU一级缓存：分区的容量按存放数据时传入的weight计算
+ */
+@Component
+public class TinyLfuL1CacheProvider implements L1CacheProvider {
+
+    private final ConcurrentHashMap<String, TinyLfuCache> cacheMap = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return "tinylfu";
+    }
+
+    @Override
+    public L1Cache getOrAddCache(String cacheName, int timeToLiveSeconds, String maxBytes) {
+        return cacheMap.computeIfAbsent(cacheName,
+                name -> new TinyLfuCache(name, timeToLiveSeconds, MemoryUnit.parseSizeInBytes(maxBytes)));
+    }
+
+}
@@ -8,6 +8,8 @@ import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.Configuration;
 import net.sf.ehcache.config.DiskStoreConfiguration;
 import net.sf.ehcache.config.PersistenceConfiguration;
+import net.sf.ehcache.config.SizeOfPolicyConfiguration;
+import net.sf.ehcache.store.MemoryStoreEvictionPolicy;
 import org.springframework.util.Assert;
 
 @Slf4j
@@ -39,6 +41,33 @@ public class EhcacheDynamicUtils {
         return cache;
     }
 
+    /**
+     * 获取或创建按堆内存占用限制容量的分区：超过maxBytesLocalHeap(例如：16M)时按LRU淘汰，不溢出到磁盘
+     */
+    public static Cache getOrAddCache(String cacheName, int expire, String maxBytesLocalHeap) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache == null) {
+            synchronized (EhcacheDynamicUtils.class) {
+                cache = cacheManager.getCache(cacheName);
+                if (cache == null) {
+                    CacheConfiguration cacheCFG = new CacheConfiguration()
+                            .name(cacheName)
+                            .eternal(false)
+                            .timeToIdleSeconds(expire)
+                            .timeToLiveSeconds(expire)
+                            .memoryStoreEvictionPolicy(MemoryStoreEvictionPolicy.LRU)
+                            .sizeOfPolicy(new SizeOfPolicyConfiguration()
+                                    .maxDepth(100000)
+                                    .maxDepthExceededBehavior(SizeOfPolicyConfiguration.MaxDepthExceededBehavior.ABORT.name()));
+                    cacheCFG.setMaxBytesLocalHeap(maxBytesLocalHeap);
+                    cacheManager.addCache(new Cache(cacheCFG));
+                    cache = cacheManager.getCache(cacheName);
+                }
+            }
+        }
+        return cache;
+    }
+
     /**
      * 判断ehcache缓存cacheName分区中是否存在key
      */
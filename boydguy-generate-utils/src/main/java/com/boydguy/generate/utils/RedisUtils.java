@@ -7,7 +7,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
@@ -35,6 +38,20 @@ public class RedisUtils {
      * 通过setnx命令在redis中存放的全局唯一的锁名称
      */
     private static final String REDIS_LOCK = "GLOBAL_LOCK";
+    /**
+     * 管道读取二进制值时不做反序列化
+     */
+    private static final RedisSerializer<byte[]> RAW_SERIALIZER = new RedisSerializer<byte[]>() {
+        @Override
+        public byte[] serialize(byte[] bytes) {
+            return bytes;
+        }
+
+        @Override
+        public byte[] deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
 
     @Autowired
     public RedisUtils(RedisTemplate<Object, Object> redisTemplate,
@@ -108,9 +125,7 @@ public class RedisUtils {
         try {
             AtomicInteger counter = new AtomicInteger(0);
 
-            final String uniqueValue = DigestUtils.md5DigestAsHex(
-                    String.format("%s_%s_%s", UUID.randomUUID().toString(), String.valueOf(System.currentTimeMillis()), String.valueOf(Math.random()))
-                            .getBytes(StandardCharsets.UTF_8));
+            final String uniqueValue = newLockValue();
             byte[] lockKey = REDIS_LOCK.getBytes(StandardCharsets.UTF_8);
             byte[] lockValue = uniqueValue.getBytes(StandardCharsets.UTF_8);
 
@@ -143,16 +158,49 @@ public class RedisUtils {
         return null;
     }
 
+    /**
+     * Redis实现分布式锁：在指定名称的锁上只尝试一次，不做重试
+     * 使用SET NX PX命令，获取锁与设置过期时间在同一个命令中完成
+     *
+     * @param lockName      锁名称，即Redis中的key
+     * @param expireTimeout 在获取锁之后的超时时间；单位：毫秒
+     * @return 获取成功时返回锁的值（释放锁时使用），获取失败时返回null
+     */
+    public static String tryRedisLock(String lockName, long expireTimeout) {
+        try {
+            final String uniqueValue = newLockValue();
+            byte[] lockKey = lockName.getBytes(StandardCharsets.UTF_8);
+            byte[] lockValue = uniqueValue.getBytes(StandardCharsets.UTF_8);
+            Boolean isSuccess = redisTemplate.execute((RedisConnection redisConnection) ->
+                    redisConnection.stringCommands().set(lockKey, lockValue,
+                            Expiration.milliseconds(expireTimeout), RedisStringCommands.SetOption.SET_IF_ABSENT));
+            if (isSuccess != null && isSuccess) {
+                log.debug("线程{} 拿到分布式锁 {}", Thread.currentThread().getName(), lockName);
+                return uniqueValue;
+            }
+        } catch (Exception ex) {
+            log.error(ComUtils.printException(ex));
+        }
+        return null;
+    }
+
     /**
      * Redis实现分布式锁核心方法：释放锁
      * 1、key在redis中超时失效
      * 2、业务执行完毕，删除key
      */
     public static void releaseRedisLock(String redisLockValue) {
+        releaseRedisLock(REDIS_LOCK, redisLockValue);
+    }
+
+    /**
+     * 释放指定名称的分布式锁：只有锁的值与获取锁时返回的值一致时才删除
+     */
+    public static void releaseRedisLock(String lockName, String redisLockValue) {
         Assert.notNull(redisLockValue, "分布式锁的ID为空");
         try {
             redisTemplate.execute((RedisConnection redisConnection) -> {
-                byte[] lockKey = REDIS_LOCK.getBytes(StandardCharsets.UTF_8);
+                byte[] lockKey = lockName.getBytes(StandardCharsets.UTF_8);
                 byte[] lockValue = redisConnection.stringCommands().get(lockKey);
 
                 String strLockValue = lockValue == null ? "" : new String(lockValue, StandardCharsets.UTF_8);
@@ -173,6 +221,15 @@ public class RedisUtils {
         }
     }
 
+    /**
+     * 生成全局唯一的锁的值
+     */
+    private static String newLockValue() {
+        return DigestUtils.md5DigestAsHex(
+                String.format("%s_%s_%s", UUID.randomUUID().toString(), String.valueOf(System.currentTimeMillis()), String.valueOf(Math.random()))
+                        .getBytes(StandardCharsets.UTF_8));
+    }
+
     /**
      * 设置过期时间
      */
@@ -186,6 +243,27 @@ public class RedisUtils {
         }
     }
 
+    /**
+     * 延长缓存的过期时间，并在同一个管道中延长包含该key的Set集合的过期时间：Set集合只延长不缩短，已不存在或永不过期的Set集合不处理
+     */
+    public static void extendExpire(String key, long seconds, Collection<String> setKeys) {
+        if (seconds <= 0) {
+            return;
+        }
+        List<String> setKeyList = new ArrayList<>(setKeys);
+        List<Long> expires = getExpires(setKeyList);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            redisConnection.keyCommands().expire(key.getBytes(StandardCharsets.UTF_8), seconds);
+            for (int i = 0; i < setKeyList.size(); i++) {
+                long expireMillis = expires.get(i);
+                if (expireMillis >= 0 && expireMillis < seconds * 1000) {
+                    redisConnection.keyCommands().expire(setKeyList.get(i).getBytes(StandardCharsets.UTF_8), seconds);
+                }
+            }
+            return null;
+        });
+    }
+
     /**
      * 获取过期时间
      */
@@ -214,6 +292,38 @@ public class RedisUtils {
         }
     }
 
+    /**
+     * 在一次管道往返中读取多个key的剩余过期时间，单位：毫秒；-1表示永不过期，-2表示key不存在
+     */
+    public static List<Long> getExpires(List<String> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.pTtl(key.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        return results.stream().map(result -> result == null ? -2L : (Long) result).collect(Collectors.toList());
+    }
+
+    /**
+     * 向频道发布消息
+     */
+    public static void publish(String channel, String message) {
+        stringRedisTemplate.convertAndSend(channel, message);
+    }
+
+    /**
+     * 在一条DEL命令中删除多个缓存
+     */
+    public static void removeCaches(Collection<String> keys) {
+        if (!keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+    }
+
     /**
      * 缓存String值
      */
@@ -228,6 +338,192 @@ public class RedisUtils {
         return stringRedisTemplate.opsForValue().get(key);
     }
 
+    /**
+     * 在同一个管道中读取二进制值(GET)与剩余过期时间(PTTL)，只有一次网络往返
+     *
+     * @return key为值，不存在时为null；value为剩余过期时间，单位：毫秒
+     */
+    public static Map.Entry<byte[], Long> getBytesAndExpire(String key) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            redisConnection.stringCommands().get(rawKey);
+            redisConnection.keyCommands().pTtl(rawKey);
+            return null;
+        }, RAW_SERIALIZER);
+        Long expire = results.get(1) == null ? -2L : (Long) results.get(1);
+        return new AbstractMap.SimpleImmutableEntry<>((byte[]) results.get(0), expire);
+    }
+
+    /**
+     * 在一次管道往返中批量读取多个key的值(MGET)与剩余过期时间，单位：毫秒；key不存在时值为null、过期时间为-2
+     */
+    public static List<Map.Entry<byte[], Long>> getBytesAndExpires(List<String> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        byte[][] rawKeys = keys.stream().map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            redisConnection.stringCommands().mGet(rawKeys);
+            for (byte[] rawKey : rawKeys) {
+                redisConnection.keyCommands().pTtl(rawKey);
+            }
+            return null;
+        }, RAW_SERIALIZER);
+        List<?> values = (List<?>) results.get(0);
+        List<Map.Entry<byte[], Long>> entries = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            Long expire = results.get(i + 1) == null ? -2L : (Long) results.get(i + 1);
+            entries.add(new AbstractMap.SimpleImmutableEntry<>((byte[]) values.get(i), expire));
+        }
+        return entries;
+    }
+
+    /**
+     * 在同一个管道中缓存二进制值(SET EX)、写入Hash表的一个字段，并将key添加到多个Set集合中(SADD + EXPIRE)
+     * Set集合中的其它key可能有更长的过期时间，所以先在一次管道往返中读取Set集合的剩余过期时间，Set集合只延长不缩短(与putSetMember相同)
+     * cluster mode不支持MULTI，管道中的命令不保证原子性
+     *
+     * @param seconds 过期时间，单位：秒；小于等于0表示不过期
+     * @param setKeys 需要添加key的Set集合，过期时间至少与key相同
+     */
+    public static void putBytesAndHashEntry(String key, byte[] rawValue, long seconds, String hashKey, Object field, Object hashValue,
+                                            Collection<String> setKeys) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawHashKey = hashKey.getBytes(StandardCharsets.UTF_8);
+        byte[] rawField = str(field).getBytes(StandardCharsets.UTF_8);
+        byte[] rawHashValue = str(hashValue).getBytes(StandardCharsets.UTF_8);
+        Expiration expiration = seconds > 0 ? Expiration.seconds(seconds) : Expiration.persistent();
+        List<String> setKeyList = new ArrayList<>(setKeys);
+        List<Long> expires = seconds > 0 ? getExpires(setKeyList) : Collections.emptyList();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            redisConnection.stringCommands().set(rawKey, rawValue, expiration, RedisStringCommands.SetOption.UPSERT);
+            redisConnection.hashCommands().hSet(rawHashKey, rawField, rawHashValue);
+            for (int i = 0; i < setKeyList.size(); i++) {
+                byte[] rawSetKey = setKeyList.get(i).getBytes(StandardCharsets.UTF_8);
+                redisConnection.setCommands().sAdd(rawSetKey, rawKey);
+                if (seconds > 0 && isShorterExpire(expires.get(i), seconds)) {
+                    redisConnection.keyCommands().expire(rawSetKey, seconds);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 在多个Set集合中添加同一个元素，并保证Set集合至少在seconds秒后才过期：已有更长过期时间或永不过期的Set集合不缩短
+     */
+    public static void putSetMember(Collection<String> keys, String member, long seconds) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String> keyList = new ArrayList<>(keys);
+        List<Long> expires = getExpires(keyList);
+        byte[] rawMember = member.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            for (int i = 0; i < keyList.size(); i++) {
+                byte[] rawSetKey = keyList.get(i).getBytes(StandardCharsets.UTF_8);
+                long expireMillis = expires.get(i);
+                redisConnection.setCommands().sAdd(rawSetKey, rawMember);
+                if (seconds > 0 && isShorterExpire(expireMillis, seconds)) {
+                    redisConnection.keyCommands().expire(rawSetKey, seconds);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 添加元素之前Set集合的剩余过期时间是否短于seconds秒：不存在(-2，添加元素后新建)或更早过期时需要设置过期时间，永不过期(-1)的不处理
+     */
+    private static boolean isShorterExpire(long expireMillis, long seconds) {
+        return expireMillis == -2 || (expireMillis >= 0 && expireMillis < seconds * 1000);
+    }
+
+    /**
+     * 在同一个管道中读取多个Set集合，返回它们的并集；集群模式下各个key可以位于不同的slot
+     */
+    public static Set<String> getSetsUnion(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return new HashSet<>();
+        }
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            for (String key : keys) {
+                redisConnection.setCommands().sMembers(key.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        Set<String> union = new HashSet<>();
+        for (Object result : results) {
+            if (result instanceof Collection) {
+                ((Collection<?>) result).forEach(member -> union.add(String.valueOf(member)));
+            }
+        }
+        return union;
+    }
+
+    /**
+     * 在同一个管道中设置位图的多个位
+     */
+    public static void setBits(String key, long... offsets) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            for (long offset : offsets) {
+                redisConnection.stringCommands().setBit(rawKey, offset, true);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 在同一个管道中读取位图的多个位(GETBIT)，并判断另一个key是否存在(EXISTS)，只有一次网络往返
+     *
+     * @return key为各个位的值，value为existsKey是否存在
+     */
+    public static Map.Entry<List<Boolean>, Boolean> getBitsAndExists(String key, long[] offsets, String existsKey) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) redisConnection -> {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            for (long offset : offsets) {
+                redisConnection.stringCommands().getBit(rawKey, offset);
+            }
+            redisConnection.keyCommands().exists(existsKey.getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+        List<Boolean> bits = results.subList(0, offsets.length).stream().map(Boolean.TRUE::equals).collect(Collectors.toList());
+        return new AbstractMap.SimpleImmutableEntry<>(bits, Boolean.TRUE.equals(results.get(offsets.length)));
+    }
+
+    /**
+     * 缓存二进制数据(如位图)
+     */
+    public static void putBytes(String key, byte[] value) {
+        stringRedisTemplate.execute((RedisCallback<Boolean>) redisConnection ->
+                redisConnection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), value));
+    }
+
+    /**
+     * 读取二进制数据(如位图)
+     */
+    public static byte[] getBytes(String key) {
+        return stringRedisTemplate.execute((RedisCallback<byte[]>) redisConnection ->
+                redisConnection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 将多个位图按位或运算后保存到destKey；集群模式下所有key必须位于同一个slot
+     */
+    public static void bitOr(String destKey, String... keys) {
+        stringRedisTemplate.execute((RedisCallback<Long>) redisConnection -> redisConnection.stringCommands().bitOp(
+                RedisStringCommands.BitOperation.OR, destKey.getBytes(StandardCharsets.UTF_8),
+                Arrays.stream(keys).map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new)));
+    }
+
+    /**
+     * 计数器加1，key不存在时从0开始
+     */
+    public static Long increment(String key) {
+        return stringRedisTemplate.opsForValue().increment(key);
+    }
+
     /**
      * 缓存Set集合
      */
@@ -350,6 +646,54 @@ public class RedisUtils {
         stringRedisTemplate.opsForHash().delete(key, arrays);
     }
 
+    /**
+     * 在一次管道往返中从多个哈希中删除相同的字段
+     */
+    public static void removeHashEntries(Collection<String> keys, Collection<String> fields) {
+        if (fields.isEmpty()) {
+            return;
+        }
+        byte[][] rawFields = fields.stream().map(field -> field.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.hDel(key.getBytes(StandardCharsets.UTF_8), rawFields);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 在一次管道往返中从多个哈希中删除各自的字段
+     */
+    public static void removeHashEntries(Map<String, ? extends Collection<String>> fieldsByKey) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, ? extends Collection<String>> entry : fieldsByKey.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    connection.hDel(entry.getKey().getBytes(StandardCharsets.UTF_8),
+                            entry.getValue().stream().map(field -> field.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 在一次管道往返中向多个哈希写入各自的字段
+     */
+    public static void putHashEntries(Map<String, Map<String, String>> entriesByKey) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, Map<String, String>> entry : entriesByKey.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    Map<byte[], byte[]> rawHash = new HashMap<>();
+                    entry.getValue().forEach((field, value) ->
+                            rawHash.put(field.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8)));
+                    connection.hMSet(entry.getKey().getBytes(StandardCharsets.UTF_8), rawHash);
+                }
+            }
+            return null;
+        });
+    }
+
     /**
      * 缓存ZSet有序集合：如果元素存在，会用新的score来替换原来的，返回0；如果元素不存在，则会新增一个
      */
@@ -393,6 +737,31 @@ public class RedisUtils {
         return stringRedisTemplate.opsForZSet().rangeByScore(key, minScore, maxScore);
     }
 
+    /**
+     * 按score从高到低获取ZSet有序集合中指定顺序的值，范围是：闭区间[start,end]
+     */
+    public static Set<String> getZSetReverse(String key, long start, long end) {
+        return stringRedisTemplate.opsForZSet().reverseRange(key, start, end);
+    }
+
+    /**
+     * 在一次管道往返中写入ZSet的多个元素，只保留score最高的maxSize个元素，并设置过期时间
+     *
+     * @param seconds 过期时间，单位：秒
+     */
+    public static void putZSetAndTrim(String key, Map<String, Double> scores, long maxSize, long seconds) {
+        if (scores.isEmpty()) {
+            return;
+        }
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            scores.forEach((value, score) -> connection.zAdd(rawKey, score, value.getBytes(StandardCharsets.UTF_8)));
+            connection.zRemRange(rawKey, 0, -maxSize - 1);
+            connection.expire(rawKey, seconds);
+            return null;
+        });
+    }
+
     /**
      * 获取value对应的score
      */
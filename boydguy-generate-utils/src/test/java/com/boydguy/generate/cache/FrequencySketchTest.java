@@ -0,0 +1,64 @@
+package com.boydguy.generate.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void frequencyCountsIncrements() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        assertEquals(0, sketch.frequency("a"));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("a");
+        }
+        assertEquals(5, sketch.frequency("a"));
+    }
+
+    @Test
+    public void frequencySaturatesAtFifteen() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("a");
+        }
+        assertEquals(15, sketch.frequency("a"));
+    }
+
+    /**
+     * 累计的增加次数达到样本数量(10倍容量)时所有计数器减半
+     */
+    @Test
+    public void resetHalvesCounters() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 12; i++) {
+            sketch.increment("hot");
+        }
+        int before = sketch.frequency("hot");
+        assertTrue(before >= 12);
+
+        int after = before;
+        for (int i = 0; i < 16 * 10 && after >= before; i++) {
+            before = sketch.frequency("hot");
+            sketch.increment("key" + i);
+            after = sketch.frequency("hot");
+        }
+        assertTrue("计数器没有减半", after < before);
+        // 触发减半的那次增加可能与hot共用计数器
+        assertTrue(after >= before / 2 && after <= (before + 1) / 2);
+    }
+
+    @Test
+    public void ensureCapacityGrowsAndClears() {
+        FrequencySketch sketch = new FrequencySketch(16);
+        sketch.increment("a");
+        sketch.ensureCapacity(8);
+        assertEquals(16, sketch.capacity());
+        assertEquals(1, sketch.frequency("a"));
+
+        sketch.ensureCapacity(1000);
+        assertEquals(1024, sketch.capacity());
+        assertEquals(0, sketch.frequency("a"));
+    }
+
+}
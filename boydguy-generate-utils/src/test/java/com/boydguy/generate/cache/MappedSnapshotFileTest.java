@@ -0,0 +1,157 @@
+package com.boydguy.generate.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedSnapshotFileTest {
+
+    /**
+     * 文件头：魔数、版本、创建时间、数据数量
+     */
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final long future = System.currentTimeMillis() + 600000;
+
+    @Test
+    public void writeAndOpenRoundTrip() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("l1.snapshot");
+        List<MappedSnapshotFile.Entry> entries = Arrays.asList(
+                new MappedSnapshotFile.Entry("a", bytes("value-a"), future, 1, 100),
+                new MappedSnapshotFile.Entry("缓存b", bytes("value-b"), future + 1, 2, Long.MAX_VALUE),
+                new MappedSnapshotFile.Entry("empty", new byte[0], future, 3, 300));
+        long before = System.currentTimeMillis();
+        assertEquals(3, MappedSnapshotFile.write(path, entries, Long.MAX_VALUE));
+        assertFalse(Files.exists(path.resolveSibling("l1.snapshot.tmp")));
+
+        MappedSnapshotFile snapshot = MappedSnapshotFile.open(path);
+        assertTrue(snapshot.getCreatedAt() >= before);
+        assertEquals(3, snapshot.size());
+
+        MappedSnapshotFile.Entry peeked = snapshot.peek("缓存b");
+        assertNull(peeked.getValue());
+        assertEquals(Long.MAX_VALUE, peeked.getTag());
+
+        MappedSnapshotFile.Entry taken = snapshot.take("缓存b");
+        assertArrayEquals(bytes("value-b"), taken.getValue());
+        assertEquals(future + 1, taken.getExpireAt());
+        assertEquals(2, taken.getAttachment());
+        assertEquals(Long.MAX_VALUE, taken.getTag());
+        assertNull("每条数据只能取出一次", snapshot.take("缓存b"));
+
+        assertArrayEquals(bytes("value-a"), snapshot.take("a").getValue());
+        assertArrayEquals(new byte[0], snapshot.take("empty").getValue());
+        assertEquals(0, snapshot.size());
+    }
+
+    @Test
+    public void entriesOverMaxBytesAreSkipped() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("l1.snapshot");
+        byte[] large = new byte[1000];
+        List<MappedSnapshotFile.Entry> entries = Arrays.asList(
+                new MappedSnapshotFile.Entry("large", large, future, 0, 0),
+                new MappedSnapshotFile.Entry("small", bytes("small"), future, 0, 0));
+        assertEquals(1, MappedSnapshotFile.write(path, entries, 200));
+
+        MappedSnapshotFile snapshot = MappedSnapshotFile.open(path);
+        assertEquals(Arrays.asList("small"), snapshot.keys());
+    }
+
+    @Test
+    public void expiredEntriesAreSkipped() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("l1.snapshot");
+        List<MappedSnapshotFile.Entry> entries = Arrays.asList(
+                new MappedSnapshotFile.Entry("expired", bytes("x"), System.currentTimeMillis() - 1, 0, 0),
+                new MappedSnapshotFile.Entry("valid", bytes("y"), future, 0, 0));
+        assertEquals(2, MappedSnapshotFile.write(path, entries, Long.MAX_VALUE));
+
+        MappedSnapshotFile snapshot = MappedSnapshotFile.open(path);
+        assertEquals(Arrays.asList("valid"), snapshot.keys());
+        assertNull(snapshot.peek("expired"));
+        assertNull(snapshot.take("expired"));
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        Path path = writeTwoEntries();
+        long length = Files.size(path);
+        for (long truncated : new long[]{0, 6, HEADER_BYTES + 3, length - 1}) {
+            Path copy = folder.getRoot().toPath().resolve("truncated-" + truncated);
+            Files.write(copy, Arrays.copyOf(Files.readAllBytes(path), (int) truncated));
+            assertOpenFails(copy);
+        }
+    }
+
+    @Test
+    public void negativeKeyLengthIsRejected() throws IOException {
+        Path path = writeTwoEntries();
+        overwriteInt(path, HEADER_BYTES, -1);
+        assertOpenFails(path);
+    }
+
+    @Test
+    public void oversizedValueLengthIsRejected() throws IOException {
+        Path path = writeTwoEntries();
+        // 第一条数据的长度字段：key长度(4) + key("a") + 过期时间、附加值、标记(24)
+        overwriteInt(path, HEADER_BYTES + 4 + 1 + 24, Integer.MAX_VALUE);
+        assertOpenFails(path);
+    }
+
+    @Test
+    public void negativeValueLengthIsRejected() throws IOException {
+        Path path = writeTwoEntries();
+        overwriteInt(path, HEADER_BYTES + 4 + 1 + 24, -8);
+        assertOpenFails(path);
+    }
+
+    @Test
+    public void wrongMagicIsRejected() throws IOException {
+        Path path = writeTwoEntries();
+        overwriteInt(path, 0, 0x12345678);
+        assertOpenFails(path);
+    }
+
+    private Path writeTwoEntries() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("l1.snapshot");
+        List<MappedSnapshotFile.Entry> entries = new ArrayList<>();
+        entries.add(new MappedSnapshotFile.Entry("a", bytes("value-a"), future, 0, 0));
+        entries.add(new MappedSnapshotFile.Entry("b", bytes("value-b"), future, 0, 0));
+        MappedSnapshotFile.write(path, entries, Long.MAX_VALUE);
+        return path;
+    }
+
+    private static void overwriteInt(Path path, long position, int value) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(position);
+            file.writeInt(value);
+        }
+    }
+
+    private static void assertOpenFails(Path path) {
+        try {
+            MappedSnapshotFile.open(path);
+            fail("损坏的快照文件应当抛出IOException：" + path);
+        } catch (IOException expected) {
+            // 调用方记录日志后不使用快照
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
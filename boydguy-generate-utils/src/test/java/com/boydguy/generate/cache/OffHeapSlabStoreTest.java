@@ -0,0 +1,169 @@
+package com.boydguy.generate.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class OffHeapSlabStoreTest {
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * 两个100字节的段
+     */
+    private final OffHeapSlabStore store = new OffHeapSlabStore(200, 100);
+
+    @Test
+    public void putAndGet() {
+        assertTrue(store.put("a", value(1, 60), NEVER, 42));
+        OffHeapSlabStore.Entry entry = store.get("a");
+        assertArrayEquals(value(1, 60), entry.getValue());
+        assertEquals(42, entry.getAttachment());
+        assertEquals(1, entry.getHits());
+        assertEquals(2, store.get("a").getHits());
+        assertEquals(2, store.getHitCount());
+        assertEquals(60, store.getUsedBytes());
+        assertEquals(100, store.getAllocatedBytes());
+
+        OffHeapSlabStore.Entry peeked = store.peek("a");
+        assertNull(peeked.getValue());
+        assertEquals(42, peeked.getAttachment());
+        assertEquals(2, store.getHitCount());
+    }
+
+    @Test
+    public void oversizedValueRemovesPriorValue() {
+        store.put("a", value(1, 60), NEVER, 0);
+        assertFalse(store.put("a", value(2, 101), NEVER, 0));
+        assertNull(store.get("a"));
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    @Test
+    public void expiredEntryIsRemovedByGet() {
+        store.put("a", value(1, 10), System.currentTimeMillis() - 1, 0);
+        assertNull(store.peek("a"));
+        assertNull(store.get("a"));
+        assertEquals(1, store.getMissCount());
+        assertEquals(0, store.size());
+        assertEquals(0, store.getUsedBytes());
+    }
+
+    /**
+     * 所有段写满后回收最早写入的段，段中仍然有效的数据被淘汰
+     */
+    @Test
+    public void oldestSlabIsRecycled() {
+        store.put("a", value(1, 60), NEVER, 0);//段0
+        store.put("b", value(2, 60), NEVER, 0);//段1
+        store.put("c", value(3, 60), NEVER, 0);//回收段0
+        assertNull(store.get("a"));
+        assertArrayEquals(value(2, 60), store.get("b").getValue());
+        assertArrayEquals(value(3, 60), store.get("c").getValue());
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(120, store.getUsedBytes());
+        assertEquals(Arrays.asList("b", "c"), sorted(store.keys()));
+        assertEquals(200, store.getAllocatedBytes());
+    }
+
+    /**
+     * 被回收的段中的key已经写入其它段，或者是回收之后重新写入的同一个段(代数不同)时，不会被回收删除
+     */
+    @Test
+    public void recycleOnlyRemovesLocationsOfThatGeneration() {
+        store.put("a", value(1, 60), NEVER, 0);//段0，代数0
+        store.put("a", value(2, 60), NEVER, 0);//段1
+        store.put("b", value(3, 60), NEVER, 0);//回收段0：a已经在段1中
+        assertArrayEquals(value(2, 60), store.get("a").getValue());
+        assertEquals(0, store.getEvictionCount());
+
+        store.put("c", value(4, 30), NEVER, 0);//段0，代数1
+        store.put("a", value(5, 60), NEVER, 0);//回收段1(a的旧位置被淘汰)，a写入段1，代数1
+        assertArrayEquals(value(5, 60), store.get("a").getValue());
+        assertNull(store.get("x"));
+        store.put("d", value(6, 60), NEVER, 0);//回收段0(代数1)：b、c被淘汰
+        assertNull(store.get("b"));
+        assertNull(store.get("c"));
+        assertArrayEquals(value(5, 60), store.get("a").getValue());
+        assertArrayEquals(value(6, 60), store.get("d").getValue());
+        assertEquals(3, store.getEvictionCount());
+        assertEquals(120, store.getUsedBytes());
+    }
+
+    /**
+     * 写入线程不断回收段的同时并发读取：返回的数据必须完整属于同一次写入，被覆盖的数据视为未命中
+     */
+    @Test
+    public void concurrentReadsNeverReturnOverwrittenData() throws Exception {
+        OffHeapSlabStore concurrentStore = new OffHeapSlabStore(4 * 1024, 1024);
+        int keys = 64;
+        int valueLength = 200;
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong hits = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            readers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    int id = random.nextInt(keys);
+                    OffHeapSlabStore.Entry entry = concurrentStore.get("k" + id);
+                    if (entry == null) {
+                        continue;
+                    }
+                    hits.incrementAndGet();
+                    byte[] value = entry.getValue();
+                    byte expected = (byte) entry.getAttachment();
+                    for (byte b : value) {
+                        if (b != expected) {
+                            throw new AssertionError("读取到被覆盖的数据：k" + id);
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        Future<?> writer = executor.submit(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long deadline = System.currentTimeMillis() + 500;
+            while (System.currentTimeMillis() < deadline) {
+                int id = random.nextInt(keys);
+                byte version = (byte) random.nextInt(256);
+                concurrentStore.put("k" + id, value(version, valueLength), NEVER, version);
+            }
+            return null;
+        });
+        writer.get(10, TimeUnit.SECONDS);
+        running.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertTrue(hits.get() > 0);
+        assertTrue(concurrentStore.getEvictionCount() > 0);
+    }
+
+    private static byte[] value(int fill, int length) {
+        byte[] value = new byte[length];
+        Arrays.fill(value, (byte) fill);
+        return value;
+    }
+
+    private static List<String> sorted(List<String> keys) {
+        List<String> sorted = new ArrayList<>(keys);
+        sorted.sort(null);
+        return sorted;
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.boydguy.generate.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TinyLfuCacheTest {
+
+    private static final int TTL = 600;
+
+    /**
+     * 容量1000：窗口10，protected段(1000 - 10) * 80% = 792
+     */
+    private final TinyLfuCache cache = new TinyLfuCache("test", TTL, 1000);
+
+    @Test
+    public void windowOverflowMovesToProbation() {
+        cache.put("a", "a", TTL, 10);
+        cache.cleanUp();
+        assertEquals("window", cache.queueOf("a"));
+
+        cache.put("b", "b", TTL, 10);
+        assertEquals("probation", cache.queueOf("a"));
+        assertEquals("window", cache.queueOf("b"));
+    }
+
+    @Test
+    public void probationHitIsPromotedToProtected() {
+        cache.put("a", "a", TTL, 10);
+        cache.put("b", "b", TTL, 10);
+        assertEquals("probation", cache.queueOf("a"));
+
+        assertNotNull(cache.get("a"));
+        cache.cleanUp();
+        assertEquals("protected", cache.queueOf("a"));
+        assertTrue(cache.isWeightConsistent());
+    }
+
+    @Test
+    public void protectedOverflowIsDemotedToProbation() {
+        for (int i = 1; i <= 8; i++) {
+            cache.put("p" + i, i, TTL, 100);
+            assertEquals("probation", cache.queueOf("p" + i));
+            cache.get("p" + i);
+            cache.cleanUp();
+            assertEquals("protected", cache.queueOf("p" + i));
+        }
+        // 800 > 792：protected段最久未访问的数据降级
+        assertEquals("probation", cache.queueOf("p1"));
+        for (int i = 2; i <= 8; i++) {
+            assertEquals("protected", cache.queueOf("p" + i));
+        }
+        assertTrue(cache.isWeightConsistent());
+        assertEquals(800, cache.getWeightedSize());
+    }
+
+    @Test
+    public void coldCandidateIsRejected() {
+        fillWithHotEntries();
+        cache.put("cold", "cold", TTL, 100);
+        assertNull(cache.getQuiet("cold"));
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.getQuiet("h" + i));
+        }
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1000, cache.getWeightedSize());
+        assertTrue(cache.isWeightConsistent());
+    }
+
+    @Test
+    public void frequentCandidateIsAdmitted() {
+        fillWithHotEntries();
+        int attempts = 0;
+        while (cache.getQuiet("new") == null && attempts < 15) {
+            cache.put("new", "new", TTL, 100);
+            attempts++;
+        }
+        assertNotNull("访问频率超过probation段的数据后应当准入", cache.getQuiet("new"));
+        assertTrue(attempts > 1);
+        int remaining = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cache.getQuiet("h" + i) != null) {
+                remaining++;
+            }
+        }
+        assertEquals(9, remaining);
+        assertEquals(1000, cache.getWeightedSize());
+        assertTrue(cache.isWeightConsistent());
+    }
+
+    @Test
+    public void oversizedEntryIsNotCached() {
+        cache.put("big", "big", TTL, 1001);
+        assertNull(cache.getQuiet("big"));
+        assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test
+    public void expiredEntryIsRemovedByGet() {
+        cache.put("a", "a", TTL, 10);
+        L1CacheEntry entry = cache.get("a");
+        assertNotNull(entry);
+        assertEquals(1, cache.getHitCount());
+
+        entry.setTimeToLive(0);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightedSize());
+        assertTrue(cache.isWeightConsistent());
+    }
+
+    @Test
+    public void replacingEntryUpdatesWeight() {
+        cache.put("a", "a", TTL, 10);
+        cache.put("a", "b", TTL, 30);
+        assertEquals("b", cache.getQuiet("a").getValue());
+        assertEquals(30, cache.getWeightedSize());
+        cache.remove("a");
+        assertEquals(0, cache.getWeightedSize());
+        assertTrue(cache.isWeightConsistent());
+    }
+
+    @Test
+    public void weightIsConsistentAfterConcurrentPutAndRemove() throws Exception {
+        TinyLfuCache concurrentCache = new TinyLfuCache("concurrent", TTL, 20000);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20000; i++) {
+                    String key = "k" + random.nextInt(500);
+                    int operation = random.nextInt(10);
+                    if (operation < 4) {
+                        concurrentCache.put(key, key, TTL, 1 + random.nextInt(200));
+                    } else if (operation < 6) {
+                        concurrentCache.remove(key);
+                    } else {
+                        concurrentCache.get(key);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        concurrentCache.cleanUp();
+        assertTrue(concurrentCache.isWeightConsistent());
+        assertTrue(concurrentCache.getWeightedSize() <= 20000);
+        long sum = 0;
+        for (Object key : concurrentCache.getKeys()) {
+            L1CacheEntry entry = concurrentCache.getQuiet(key);
+            sum += ((TinyLfuCache.Node) entry).weight;
+        }
+        assertEquals(sum, concurrentCache.getWeightedSize());
+
+        concurrentCache.removeAll(concurrentCache.getKeys());
+        assertEquals(0, concurrentCache.size());
+        assertEquals(0, concurrentCache.getWeightedSize());
+        assertTrue(concurrentCache.isWeightConsistent());
+    }
+
+    /**
+     * 10条数据正好占满容量，每条访问3次
+     */
+    private void fillWithHotEntries() {
+        for (int i = 0; i < 10; i++) {
+            cache.put("h" + i, i, TTL, 100);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 10; i++) {
+                cache.get("h" + i);
+            }
+            cache.cleanUp();
+        }
+        assertEquals(1000, cache.getWeightedSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.boydguy.generate.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisSetCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 管道中的命令记录在模拟的RedisConnection上，第一次管道往返返回预设的剩余过期时间
+ */
+public class RedisUtilsTest {
+
+    private static final String KEY = "daoCache:key";
+    private static final String SET_KEY = "daoCacheIndex:Product:1";
+
+    private final StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+    private final RedisConnection connection = mock(RedisConnection.class);
+    private final RedisKeyCommands keyCommands = mock(RedisKeyCommands.class);
+    private final RedisSetCommands setCommands = mock(RedisSetCommands.class);
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        new RedisUtils(mock(RedisTemplate.class), stringRedisTemplate, new ObjectMapper());
+        when(connection.keyCommands()).thenReturn(keyCommands);
+        when(connection.setCommands()).thenReturn(setCommands);
+        when(connection.stringCommands()).thenReturn(mock(RedisStringCommands.class));
+        when(connection.hashCommands()).thenReturn(mock(RedisHashCommands.class));
+    }
+
+    /**
+     * Set集合中还有过期时间更长的cache key：较短的写入只添加成员，不缩短Set集合的过期时间
+     */
+    @Test
+    public void shorterPopulateDoesNotTruncateSet() {
+        givenSetExpires(3600_000L);
+        populate(60);
+        verify(setCommands).sAdd(aryEq(raw(SET_KEY)), aryEq(raw(KEY)));
+        verify(keyCommands, never()).expire(aryEq(raw(SET_KEY)), anyLong());
+    }
+
+    @Test
+    public void longerPopulateExtendsSet() {
+        givenSetExpires(30_000L);
+        populate(60);
+        verify(keyCommands).expire(aryEq(raw(SET_KEY)), eq(60L));
+    }
+
+    @Test
+    public void newSetGetsExpire() {
+        givenSetExpires(-2L);
+        populate(60);
+        verify(keyCommands).expire(aryEq(raw(SET_KEY)), eq(60L));
+    }
+
+    @Test
+    public void persistentSetStaysPersistent() {
+        givenSetExpires(-1L);
+        populate(60);
+        verify(keyCommands, never()).expire(aryEq(raw(SET_KEY)), anyLong());
+    }
+
+    @Test
+    public void putSetMemberDoesNotTruncateSet() {
+        givenSetExpires(3600_000L);
+        RedisUtils.putSetMember(Collections.singletonList(SET_KEY), KEY, 60);
+        verify(setCommands).sAdd(aryEq(raw(SET_KEY)), aryEq(raw(KEY)));
+        verify(keyCommands, never()).expire(aryEq(raw(SET_KEY)), anyLong());
+    }
+
+    @Test
+    public void extendExpireSkipsMissingAndLongerSets() {
+        String missing = "daoCacheIndex:Product:2";
+        String shorter = "daoCacheIndex:Product:3";
+        givenSetExpires(3600_000L, -2L, 1000L);
+        RedisUtils.extendExpire(KEY, 60, Arrays.asList(SET_KEY, missing, shorter));
+        verify(keyCommands).expire(aryEq(raw(KEY)), eq(60L));
+        verify(keyCommands, never()).expire(aryEq(raw(SET_KEY)), anyLong());
+        verify(keyCommands, never()).expire(aryEq(raw(missing)), anyLong());
+        verify(keyCommands).expire(aryEq(raw(shorter)), eq(60L));
+    }
+
+    private void populate(long seconds) {
+        RedisUtils.putBytesAndHashEntry(KEY, raw("value"), seconds, "daoCacheKeys", "field", "value",
+                Collections.singletonList(SET_KEY));
+    }
+
+    /**
+     * 第一次管道往返(PTTL)返回预设的剩余过期时间，之后的管道在模拟的连接上执行
+     */
+    @SuppressWarnings("unchecked")
+    private void givenSetExpires(Long... expires) {
+        List<Object> pTtls = Arrays.asList((Object[]) expires);
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class)))
+                .thenReturn(pTtls)
+                .thenAnswer(invocation -> {
+                    ((RedisCallback<Object>) invocation.getArgument(0)).doInRedis(connection);
+                    return Collections.emptyList();
+                });
+    }
+
+    private static byte[] raw(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}